@@ -0,0 +1,74 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame.benchmarks;
+
+import isolationgame.BoardVals;
+import isolationgame.GameBoard;
+import isolationgame.MobilityEvaluator;
+import isolationgame.PositionEvaluator;
+import isolationgame.TerritoryEvaluator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+//Benchmarks for the cost of scoring one leaf with each PositionEvaluator, including counting both players moves the way the search does before it
+//calls the evaluator. Results are reported per position, over the whole corpus for the selected game phase.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluatorBenchmark {
+    private static final int CORPUS_SIZE = 64;
+    
+    @Param({"OPENING", "MIDGAME", "ENDGAME"})
+    public PositionCorpus.Phase phase;
+    
+    @Param({"mobility", "territory"})
+    public String evaluator;
+    
+    private GameBoard[] boards;
+    private BoardVals[] players;
+    private PositionEvaluator positionEvaluator;
+    
+    
+    @Setup
+    public void buildCorpus(){
+        List<PositionCorpus.Position> positions = PositionCorpus.build(phase, CORPUS_SIZE);
+        boards = new GameBoard[CORPUS_SIZE];
+        players = new BoardVals[CORPUS_SIZE];
+        for(int i = 0; i < CORPUS_SIZE; i++){
+            boards[i] = positions.get(i).getBoard();
+            players[i] = positions.get(i).getPlayerToMove();
+        }
+        positionEvaluator = evaluator.equals("territory") ? new TerritoryEvaluator() : new MobilityEvaluator();
+    }
+    
+    
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public void evaluateLeaf(Blackhole blackhole){
+        for(int i = 0; i < CORPUS_SIZE; i++){
+            BoardVals opponent = PositionCorpus.opponentOf(players[i]);
+            int playerMoves = boards[i].countPossibleMoves(players[i]);
+            int opponentMoves = boards[i].countPossibleMoves(opponent);
+            blackhole.consume(positionEvaluator.evaluate(boards[i], players[i], playerMoves, opponentMoves));
+        }
+    }
+    
+}
@@ -0,0 +1,90 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame.benchmarks;
+
+import isolationgame.BoardVals;
+import isolationgame.GameBoard;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+//Benchmarks for the GameBoard methods the search calls at every node. Each operation runs over the whole corpus for the selected game phase (so the
+//numbers aren't tuned to one lucky position), and results are reported per position. Run with "-prof gc" to see the allocation rate as well.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBoardBenchmark {
+    private static final int CORPUS_SIZE = 64;
+    
+    @Param({"OPENING", "MIDGAME", "ENDGAME"})
+    public PositionCorpus.Phase phase;
+    
+    private GameBoard[] boards;
+    private BoardVals[] players;
+    
+    
+    @Setup
+    public void buildCorpus(){
+        List<PositionCorpus.Position> positions = PositionCorpus.build(phase, CORPUS_SIZE);
+        boards = new GameBoard[CORPUS_SIZE];
+        players = new BoardVals[CORPUS_SIZE];
+        for(int i = 0; i < CORPUS_SIZE; i++){
+            boards[i] = positions.get(i).getBoard();
+            players[i] = positions.get(i).getPlayerToMove();
+        }
+    }
+    
+    
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public void getPossibleMoves(Blackhole blackhole){
+        for(int i = 0; i < CORPUS_SIZE; i++){
+            blackhole.consume(boards[i].getPossibleMoves(players[i]));
+        }
+    }
+    
+    
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public void evaluatePlayerPosition(Blackhole blackhole){
+        for(int i = 0; i < CORPUS_SIZE; i++){
+            blackhole.consume(boards[i].evaluatePlayerPosition(players[i]));
+        }
+    }
+    
+    
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public void checkIfPlayerLose(Blackhole blackhole){
+        for(int i = 0; i < CORPUS_SIZE; i++){
+            blackhole.consume(boards[i].checkIfPlayerLose(players[i]));
+        }
+    }
+    
+    
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public void copyConstructor(Blackhole blackhole){
+        for(int i = 0; i < CORPUS_SIZE; i++){
+            blackhole.consume(new GameBoard(boards[i]));
+        }
+    }
+    
+}
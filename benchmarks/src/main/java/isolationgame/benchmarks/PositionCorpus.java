@@ -0,0 +1,99 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame.benchmarks;
+
+import isolationgame.BoardVals;
+import isolationgame.GameBoard;
+import isolationgame.GameMove;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+//Builds the positions the benchmarks run on. Games are replayed from the standard starting position with random (but seeded, so always the same) moves,
+//and positions are taken from the opening, middle or end of those games. Every position in the corpus has the side to move still able to move.
+public class PositionCorpus {
+    private static final long CORPUS_SEED = 420L;
+    private static final int MAX_ATTEMPTS = 10000; //games to try before giving up on filling a corpus
+    
+    //the stages of a game positions can be drawn from - plies played from the start (inclusive)
+    public enum Phase {
+        OPENING(2, 6), MIDGAME(14, 20), ENDGAME(28, 36);
+        
+        private final int firstPly;
+        private final int lastPly;
+        
+        Phase(int firstPly, int lastPly){
+            this.firstPly = firstPly;
+            this.lastPly = lastPly;
+        }
+    }
+    
+    
+    //one corpus position - the board and which player is to move on it
+    public static class Position {
+        private final GameBoard board;
+        private final BoardVals playerToMove;
+        
+        public Position(GameBoard board, BoardVals playerToMove){
+            this.board = board;
+            this.playerToMove = playerToMove;
+        }
+        
+        //getter for the board
+        public GameBoard getBoard(){
+            return board;
+        }
+        
+        //getter for the player to move
+        public BoardVals getPlayerToMove(){
+            return playerToMove;
+        }
+    }
+    
+    
+    //static helpers only - never instantiated
+    private PositionCorpus(){
+    }
+    
+    
+    //Builds the indicated number of positions from the indicated phase of the game. The same arguments always give the same positions.
+    public static List<Position> build(Phase phase, int numPositions){
+        Random random = new Random(CORPUS_SEED + phase.ordinal());
+        List<Position> positions = new ArrayList<>();
+        
+        for(int attempt = 0; (attempt < MAX_ATTEMPTS) && (positions.size() < numPositions); attempt++){
+            BoardVals playerToMove = random.nextBoolean() ? BoardVals.PLAYER_X : BoardVals.PLAYER_O;
+            GameBoard board = new GameBoard(playerToMove);
+            int targetPly = phase.firstPly + random.nextInt(phase.lastPly - phase.firstPly + 1);
+            boolean gameOver = false;
+            
+            for(int ply = 0; (ply < targetPly) && !gameOver; ply++){
+                List<GameMove> moves = board.getPossibleMoves(playerToMove);
+                if(moves.isEmpty()){
+                    gameOver = true;
+                }else{
+                    board = new GameBoard(board, playerToMove, moves.get(random.nextInt(moves.size())));
+                    playerToMove = opponentOf(playerToMove);
+                }
+            }
+            
+            if(!gameOver && !board.checkIfPlayerLose(playerToMove)){
+                positions.add(new Position(board, playerToMove));
+            }
+        }
+        
+        if(positions.size() < numPositions){
+            throw new IllegalStateException("Could only build " + positions.size() + " " + phase + " positions");
+        }
+        return positions;
+    }
+    
+    
+    //Helper giving the other player
+    public static BoardVals opponentOf(BoardVals player){
+        return (player == BoardVals.PLAYER_X) ? BoardVals.PLAYER_O : BoardVals.PLAYER_X;
+    }
+    
+}
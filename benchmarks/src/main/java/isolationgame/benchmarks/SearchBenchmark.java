@@ -0,0 +1,76 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame.benchmarks;
+
+import isolationgame.AIPlayer;
+import isolationgame.GameMove;
+import isolationgame.TerritoryEvaluator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//Benchmarks for complete fixed-depth searches (a time limit would make the amount of work depend on the machine, so the depth is fixed instead). Each
+//invocation searches the next position of the corpus from an empty transposition table, so every invocation does the same work no matter how many
+//searches ran before it. Comparing the evaluators at the same depth shows what a stronger evaluation costs in search time.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+    private static final int CORPUS_SIZE = 16;
+    private static final int TABLE_SIZE_MB = 16;
+    
+    @Param({"OPENING", "MIDGAME", "ENDGAME"})
+    public PositionCorpus.Phase phase;
+    
+    @Param({"6", "8"})
+    public int depth;
+    
+    @Param({"mobility", "territory"})
+    public String evaluator;
+    
+    private List<PositionCorpus.Position> positions;
+    private AIPlayer aiPlayer;
+    private int nextPosition;
+    
+    
+    @Setup(Level.Trial)
+    public void buildCorpus(){
+        positions = PositionCorpus.build(phase, CORPUS_SIZE);
+        aiPlayer = new AIPlayer(TABLE_SIZE_MB);
+        if(evaluator.equals("territory")){
+            aiPlayer.setEvaluator(new TerritoryEvaluator());
+        }
+        nextPosition = 0;
+    }
+    
+    
+    @Setup(Level.Invocation)
+    public void clearTable(){
+        aiPlayer.newGame();
+    }
+    
+    
+    @Benchmark
+    public GameMove fixedDepthSearch(){
+        PositionCorpus.Position position = positions.get(nextPosition);
+        nextPosition = (nextPosition + 1) % CORPUS_SIZE;
+        return aiPlayer.getAIMoveToDepth(position.getBoard(), position.getPlayerToMove(), depth);
+    }
+    
+}
@@ -4,161 +4,296 @@
 
 package isolationgame;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 //Class implementing the AI player - this includes the minimax algorithm implementation with alpha-beta pruning and iterative deepening. It includes methods both
 //to simply find the next best move, and to implement that move in the current game.
+//The search remembers positions it has already searched in a transposition table which is kept between iterations and between moves, so positions reached
+//again by a different move order (or again in a deeper iteration) don't have to be searched from scratch. Moves are tried in the order given by the
+//MoveOrderer (previous best move first, then killer moves, then by history score) so that alpha-beta can prune as much of the tree as possible.
+//The search itself lives in SearchWorker - this class owns the shared table and the workers, and can run several workers in parallel on a multi-core machine.
 public class AIPlayer {
+    private static final int DEFAULT_TABLE_SIZE_MB = 16;
+    private static final long DEFAULT_SAFETY_MARGIN_MILLIS = 10;
+    private TranspositionTable transpositionTable;
+    private BoardVals tablePlayer; //the player whose searches filled the table - scores are only meaningful for that players searches
+    private SearchWorker[] workers; //workers[0] runs on the calling thread, the rest are helpers run on the thread pool
+    private ExecutorService helperPool; //only created when more than one search thread is used
+    private long safetyMarginMillis; //taken off every time limit, leaving time to hand the move back before the limit is reached
+    private OpeningBook openingBook; //consulted before searching, if one has been set
+    private SearchStats lastSearchStats; //statistics of the most recent move
+    private PositionEvaluator evaluator; //heuristic the search scores its leaves with
     
-    //This method implements the minimax algorithm. The initial call to this state builds a list of all the possible moves from the provided (current)
-    //game state, and manages the timer which will force a return when it runs out. The list of possible moves are iterated through with calls to "maxValue", which
-    //is the jumping off point into the minimax algorithm methods (maxValue and minValue). Further, a max-depth value is maintained and iterated on by this method
-    //call in order to implement iterative deepening. The move with the highest value seen so far is maintained at all times until this method returns, at which
-    //time that highest value move is returned. By maintaining this value across depth iterations, the best move seen so far can always be returned whenever the
-    //timer happens to expire.
+    
+    //Default constructor - uses a transposition table of the default size and a single search thread
+    public AIPlayer(){
+        this(DEFAULT_TABLE_SIZE_MB);
+    }
+    
+    
+    //Constructor which sets the size of the transposition table in megabytes
+    public AIPlayer(int tableSizeMB){
+        this(tableSizeMB, 1);
+    }
+    
+    
+    //Constructor which sets the size of the transposition table in megabytes and the number of threads to search with (at least 1)
+    public AIPlayer(int tableSizeMB, int numThreads){
+        transpositionTable = new TranspositionTable(tableSizeMB);
+        safetyMarginMillis = DEFAULT_SAFETY_MARGIN_MILLIS;
+        evaluator = new MobilityEvaluator();
+        workers = new SearchWorker[Math.max(numThreads, 1)];
+        for(int i = 0; i < workers.length; i++){
+            workers[i] = new SearchWorker(transpositionTable);
+            workers[i].setEvaluator(evaluator);
+        }
+        if(workers.length > 1){
+            helperPool = Executors.newFixedThreadPool(workers.length - 1, new ThreadFactory(){
+                @Override
+                public Thread newThread(Runnable task){
+                    Thread helper = new Thread(task, "AIPlayer-search-helper");
+                    helper.setDaemon(true); //helpers must never keep the program running
+                    return helper;
+                }
+            });
+        }
+    }
+    
+    
+    //This method implements the minimax algorithm. It builds a timer which will force the search to return when it runs out, and then runs the
+    //iterative deepening search (see SearchWorker) on the current game state. The best move seen so far is maintained at all times, so a move can
+    //always be returned whenever the timer happens to expire.
+    //The time limit is a maximum rather than a target - a TimeManager watches how long each iteration takes and doesn't start one that can't finish in
+    //time, and ends the search early when the move is forced, proven, or has stopped changing.
+    //With more than one search thread this is a "Lazy SMP" search - every worker searches the same position at the same time, with the helpers starting
+    //at alternating depths. The workers only communicate through the shared transposition table, so the helpers fill it with results that let the main
+    //worker skip whole subtrees. Once the timer expires the move from whichever worker completed the deepest iteration is returned.
+    //Throws an IllegalArgumentException if the player has no legal moves, since the game is already over.
     public GameMove getAIMove(GameBoard theBoard, BoardVals player, long timeLimit){
-        MoveTimer timer = new MoveTimer(timeLimit); //timer starts the instant it's instantiated
-        List<GameMove> possibleMoves = theBoard.getPossibleMoves(player); //get all possible moves for player from current state
-        GameMove bestMove = possibleMoves.get(0); //default value - pick the first move available
-        int maxDepth = 1; //to be iterated as the tree is searched
-        int currentScore = Integer.MIN_VALUE;
+        MoveTimer timer = new MoveTimer(timeLimit, safetyMarginMillis); //timer starts the instant it's instantiated
+        return getAIMove(theBoard, player, timer);
+    }
+    
+    
+    //Version of getAIMove which searches until the passed timer runs out - the timer can be stopped or restarted from another thread while the search is
+    //running (this is how pondering is controlled). If the position is in the opening book the book move is returned straight away.
+    public GameMove getAIMove(GameBoard theBoard, BoardVals player, MoveTimer timer){
+        long startTime = System.nanoTime();
+        GameMove bestMove = getBookMove(theBoard, player);
+        if(bestMove == null){
+            bestMove = runSearch(theBoard, player, timer, SearchWorker.MAX_DEPTH);
+        }else{
+            recordStats(SearchStats.forBookMove(player, System.nanoTime() - startTime));
+        }
+        return bestMove;
+    }
+    
+    
+    //Searches the position to exactly the indicated depth, however long that takes - the opening book is not consulted (this is what the book is
+    //generated with)
+    public GameMove getAIMoveToDepth(GameBoard theBoard, BoardVals player, int depth){
+        MoveTimer timer = new MoveTimer(Long.MAX_VALUE); //only the depth limit ends this search
+        return runSearch(theBoard, player, timer, Math.max(depth, 1));
+    }
+    
+    
+    //Helper which runs the search on every worker until the timer runs out or an iteration to depthLimit is complete, and returns the move from the
+    //deepest completed iteration. Throws an IllegalArgumentException if the player has no legal moves (checked before any helper is started).
+    private GameMove runSearch(final GameBoard theBoard, final BoardVals player, final MoveTimer timer, final int depthLimit){
+        if(theBoard.checkIfPlayerLose(player)){
+            throw new IllegalArgumentException("Player " + ((player == BoardVals.PLAYER_X) ? "X" : "O") + " has no legal moves to search");
+        }
+        long startTime = System.nanoTime();
+        if(tablePlayer != player){ //scores are stored from the searching players point of view, so start over if this player is someone else
+            transpositionTable.clear();
+            tablePlayer = player;
+        }
+        transpositionTable.newSearch();
         
-        while(!timer.isTimeElapsed()){ //search for the best move until time expires
-            int alpha = Integer.MIN_VALUE;
-            int beta = Integer.MAX_VALUE;
-            
-            for(GameMove move : possibleMoves){
-                if(!timer.isTimeElapsed()){
-                    int moveScore = minValue(new GameBoard(theBoard, player, move), player, (maxDepth - 1), alpha, beta, timer);
-                    if(currentScore < moveScore){
-                        bestMove = move;
-                        currentScore = moveScore;
-                    }else if(currentScore == moveScore){
-                        Random rand = new Random();
-                        if(rand.nextDouble() > 0.75){ //injecting randomness into move selection - if a move has an equal score to the current score, there is a 25% chance to accept the new move
-                            bestMove = move;
-                        }
-                    }
-                    
-                    //pruning
-                    if(currentScore >= beta){
-                        break;
-                    }
-                    alpha = Math.max(alpha, currentScore);
-                    //System.out.println("bestMove score is " + currentScore);
-                }else{
-                    break;
+        List<Future<GameMove>> helperResults = new ArrayList<>();
+        for(int i = 1; i < workers.length; i++){
+            final SearchWorker helper = workers[i];
+            final int startDepth = Math.min(1 + (i % 2), depthLimit);
+            helperResults.add(helperPool.submit(new Callable<GameMove>(){
+                @Override
+                public GameMove call(){
+                    return helper.search(theBoard, player, timer, startDepth, depthLimit);
                 }
-            }
+            }));
+        }
             
-            maxDepth++; //increment depth with every search iteration
-            //System.out.println("Deepening search to depth " + maxDepth);
-            if(maxDepth > 200){
-                break; //stop iterating on depth after 200 - mainly for ending the search quickly in late-game circumstances with few possible moves
+        GameMove bestMove = workers[0].search(theBoard, player, timer, 1, depthLimit, new TimeManager(timer));
+        if(!helperResults.isEmpty()){
+            timer.stop(); //the main worker can finish before time runs out - the helpers only stop on the timer
+        }
+        int bestDepth = workers[0].getCompletedDepth();
+        int bestScore = workers[0].getCompletedScore();
+        for(int i = 0; i < helperResults.size(); i++){
+            GameMove helperMove = waitForHelper(helperResults.get(i));
+            int helperDepth = workers[i + 1].getCompletedDepth();
+            if((helperMove != null) && (helperDepth > bestDepth)){
+                bestMove = helperMove;
+                bestDepth = helperDepth;
+                bestScore = workers[i + 1].getCompletedScore();
             }
         }
         
-        //System.out.println("final accepted score was " + currentScore);
-        //System.out.println("Time elapsed was " + timer.getElapsedTime());
-        //System.out.println("Final depth reached was " + maxDepth);
+        long nodes = 0;
+        long betaCutoffs = 0;
+        long firstMoveCutoffs = 0;
+        for(SearchWorker worker : workers){
+            nodes += worker.getNodes();
+            betaCutoffs += worker.getBetaCutoffs();
+            firstMoveCutoffs += worker.getFirstMoveCutoffs();
+        }
+        recordStats(new SearchStats(player, false, bestDepth, bestScore, nodes, System.nanoTime() - startTime, betaCutoffs, firstMoveCutoffs,
+                workers[0].getIterationNanos(), workers[0].getAbortPly(), workers.length));
+                    
         return bestMove;
     }
+            
     
-    
-    //Method to actually make a move on the indicated board - the passed GameMove should be generated by the getAIMove algorithm
-    public boolean makeAIMove(GameBoard board, GameMove aiMove){
-        boolean moveMade;
-        String aiRow = board.getInverseRowMap().get(aiMove.getRow());
-        int aiCol = aiMove.getColumn() + 1;
-        moveMade = board.attemptToMove(aiMove.getPlayer(), aiRow, aiCol);
-        
-        return moveMade;
+    //Method which guesses the opponents reply to the move just made - the position after our move was searched as part of our own search, so the
+    //transposition table usually holds the opponents best move there. Returns null if there's no stored move (or the stored move isn't legal, which can
+    //happen if two positions share a table slot).
+    public GameMove getPredictedReply(GameBoard theBoard, BoardVals opponent){
+        GameMove predictedMove = null;
+        long entry = transpositionTable.probe(theBoard.getZobristKey(opponent));
+        if(entry != 0L){
+            predictedMove = toLegalMove(theBoard, opponent, TranspositionTable.getBestMove(entry));
+        }
+        return predictedMove;
     }
     
     
-    //Method which implementats the "max" part of the minimax algorithm - checks if the current state passed to it is a leaf state (either max depth
-    //has been reached or it's a win/lose state) and evaluates its value if it is.
+    //Helper which looks the position up in the opening book - returns null if there's no book, the position isn't in it, or the book move isn't legal
+    //here (which would mean two positions share a key)
+    private GameMove getBookMove(GameBoard theBoard, BoardVals player){
+        GameMove bookMove = null;
+        if(openingBook != null){
+            bookMove = toLegalMove(theBoard, player, openingBook.probe(theBoard.getZobristKey(player)));
+        }
+        return bookMove;
+    }
     
-    //Accepts a game board representing the current state 
-    private int maxValue(GameBoard theBoard, BoardVals player, int depth, int alpha, int beta, MoveTimer timer){
-        int currentScore = Integer.MIN_VALUE;
-        BoardVals opponent;
-        if(player == BoardVals.PLAYER_O){
-            opponent = BoardVals.PLAYER_X;
-        }else{
-            opponent = BoardVals.PLAYER_O;
+    
+    //Helper which builds the GameMove for the player moving to the indicated square, or returns null if there is no square (NO_MOVE) or the move isn't legal
+    private GameMove toLegalMove(GameBoard theBoard, BoardVals player, int square){
+        GameMove move = null;
+        if((square != TranspositionTable.NO_MOVE) && theBoard.isLegalMove(player, square)){
+            move = new GameMove(theBoard.getGeometry().squareRow(square), theBoard.getGeometry().squareColumn(square), player);
         }
-        //"opponent" is THIS nodes mover - in other words, if Player X moved to get to "theBoard", now generate all possible moves for player O
-        
-        if(checkIfTerminalState(theBoard, depth) || timer.isTimeElapsed()){
-            currentScore = theBoard.evaluatePlayerPosition(player);
-        }else{
-            List<GameMove> possibleMoves = theBoard.getPossibleMoves(opponent);
-            for(GameMove move : possibleMoves){
-                if(!timer.isTimeElapsed()){
-                    int minScore = minValue(new GameBoard(theBoard, opponent, move), opponent, (depth - 1), alpha, beta, timer);
-                    currentScore = Math.max(currentScore, minScore);
-
-                    //pruning
-                    if(currentScore >= beta){
-                        break;
-                    }
-                    alpha = Math.max(alpha, currentScore);
-                }else{
-                    break; //stop searching when time is elapsed
-                }
-            }
+        return move;
+    }
+    
+    
+    //Helper which keeps the statistics of the move just found and passes them on to the process-wide SearchStatsMonitor
+    private void recordStats(SearchStats stats){
+        lastSearchStats = stats;
+        SearchStatsMonitor.getInstance().record(stats);
+    }
+    
+    
+    //getter for the statistics of the most recent move found by getAIMove or getAIMoveToDepth (null before the first move)
+    public SearchStats getLastSearchStats(){
+        return lastSearchStats;
+    }
+    
+    
+    //Helper which waits for a helper worker to finish (they all stop on the same timer as the main worker) and returns its move, or null if it failed
+    private GameMove waitForHelper(Future<GameMove> helperResult){
+        GameMove helperMove = null;
+        try{
+            helperMove = helperResult.get();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }catch(ExecutionException e){
+            System.out.println("A search helper thread failed: " + e.getCause());
         }
-        
-        //System.out.println("maxValue is returning score of " + currentScore);
-        return currentScore;
+        return helperMove;
     }
     
     
-    //theBoard passed is generated by moving "player" to this location
-    private int minValue(GameBoard theBoard, BoardVals player, int depth, int alpha, int beta, MoveTimer timer){
-        int currentScore = Integer.MAX_VALUE;
-        BoardVals opponent;
-        if(player == BoardVals.PLAYER_O){
-            opponent = BoardVals.PLAYER_X;
-        }else{
-            opponent = BoardVals.PLAYER_O;
+    //Sets the most nodes each search thread may visit per move, on top of the time limit - a search stops at whichever comes first. Node limits make
+    //the amount of work per move the same on any machine and under any load (used for engine-vs-engine testing). 0 or less removes the limit.
+    public void setNodeLimit(long nodeLimit){
+        for(SearchWorker worker : workers){
+            worker.setNodeLimit((nodeLimit > 0) ? nodeLimit : Long.MAX_VALUE);
         }
-        //"opponent" is THIS nodes mover - in other words, if Player X moved to get to "theBoard", now generate all possible moves for player O
-        
-        if(checkIfTerminalState(theBoard, depth) || timer.isTimeElapsed()){
-            currentScore = theBoard.evaluatePlayerPosition(player);
-        }else{
-            List<GameMove> possibleMoves = theBoard.getPossibleMoves(opponent);
-            for(GameMove move : possibleMoves){
-                if(!timer.isTimeElapsed()){
-                    int maxScore = maxValue(new GameBoard(theBoard, opponent, move), opponent, (depth - 1), alpha, beta, timer);
-                    currentScore = Math.min(currentScore, maxScore);
-
-                    //pruning
-                    if(currentScore <= alpha){
-                        break;
-                    }
-                    beta = Math.min(beta, currentScore);
-                }else{
-                    break;
-                }
+    }
+    
+    
+    //Sets the heuristic the search scores positions with (MobilityEvaluator unless set). Scores from different evaluators can't be compared, so the
+    //transposition table is emptied when the evaluator changes.
+    public void setEvaluator(PositionEvaluator evaluator){
+        if(evaluator != this.evaluator){
+            this.evaluator = evaluator;
+            for(SearchWorker worker : workers){
+                worker.setEvaluator(evaluator);
             }
+            newGame();
         }
-        
-        //System.out.println("minValue is returning score of " + currentScore);
-        return currentScore;
     }
     
-    //checks if a game board state is terminal - state is terminal if the associated depth is 0, or if one of the players has lost the game
-    //returns true if a terminal state, false otherwise
-    private boolean checkIfTerminalState(GameBoard theBoard, int depth){
-        boolean terminal = false;
-        if(theBoard.checkIfPlayerLose(BoardVals.PLAYER_X) || theBoard.checkIfPlayerLose(BoardVals.PLAYER_O) || (depth == 0)){
-            terminal = true;
+    
+    //getter for the heuristic the search scores positions with
+    public PositionEvaluator getEvaluator(){
+        return evaluator;
+    }
+    
+    
+    //Forgets everything learned from earlier searches (the transposition table and every worker's move ordering are emptied), so the next search starts
+    //from scratch as in a new game - searching the same position again then gives exactly the same result
+    public void newGame(){
+        transpositionTable.clear();
+        tablePlayer = null;
+        for(SearchWorker worker : workers){
+            worker.newGame();
         }
-        return terminal;
+    }
+    
+    
+    //setter for the opening book to play from (null to always search)
+    public void setOpeningBook(OpeningBook openingBook){
+        this.openingBook = openingBook;
+    }
+    
+    
+    //Gives every search worker an endgame tablebase to look up positions with few squares left in (null to always search)
+    public void setTablebase(EndgameTablebase tablebase){
+        for(SearchWorker worker : workers){
+            worker.setTablebase(tablebase);
+        }
+    }
+    
+    
+    //setter for the safety margin (in milliseconds) taken off the time limit of each search
+    public void setSafetyMarginMillis(long safetyMarginMillis){
+        this.safetyMarginMillis = Math.max(safetyMarginMillis, 0);
+    }
+    
+    
+    //getter for the safety margin (in milliseconds) taken off the time limit of each search - callers building their own MoveTimer should use it too
+    public long getSafetyMarginMillis(){
+        return safetyMarginMillis;
+    }
+    
+    
+    //Method to actually make a move on the indicated board - the passed GameMove should be generated by the getAIMove algorithm
+    public boolean makeAIMove(GameBoard board, GameMove aiMove){
+        boolean moveMade;
+        String aiRow = board.getInverseRowMap().get(aiMove.getRow());
+        int aiCol = aiMove.getColumn() + 1;
+        moveMade = board.attemptToMove(aiMove.getPlayer(), aiRow, aiCol);
+        
+        return moveMade;
     }
     
 }
@@ -0,0 +1,284 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+//Batch analysis of positions - reads positions one line at a time, searches each one to a fixed depth or node budget on every core, and writes the best
+//move, score and search statistics of each one back out in the same order as the input.
+//The input is streamed: only a bounded window of positions is ever held in memory (being searched, or searched and waiting for the positions before them
+//to finish), so files of any length can be analyzed. The window is several times the number of threads, so the threads keep busy even when one position
+//takes much longer than its neighbours.
+//Every thread has its own AIPlayer, and its transposition table is emptied before each position - so every position is searched from scratch and the
+//results don't depend on the number of threads or the order positions happen to be searched in.
+//Input: one position per line, either in PositionCodec's text notation (e.g. "X7/8/8/8/8/8/8/7O x") or as the moves played so far - the board size
+//(optional, default 8x8), the player who moved first, then the moves alternating from that player, e.g. "8x8 X D4 E5 C3". Blank lines and comment
+//lines starting with # are skipped (a position in notation can start with # too - it's told apart by the / in its first field).
+//Output: one tab separated line per position - the input line number, the best move (- if the player to move has already lost), the score for the
+//player to move, the completed depth, the nodes searched, the search time in milliseconds and the position itself. A position that can't be read gives
+//the line number, ERROR and the reason.
+//Usage: BatchAnalyzer [options] INPUT [OUTPUT]     (INPUT and OUTPUT can be - for standard input and output, OUTPUT defaults to standard output)
+//  -depth N       search every position to this depth (default 8)
+//  -nodes N       search every position until this many nodes have been visited instead of to a fixed depth
+//  -threads N     positions searched at once (default: number of processors)
+//  -window N      most positions held in memory at once (default 8 per thread)
+//  -hash MB       transposition table size of each thread (default 4)
+//  -eval NAME     evaluator - mobility or territory (default mobility)
+public class BatchAnalyzer {
+    private static final int WINDOW_PER_THREAD = 8;
+    private static final int PROGRESS_INTERVAL = 10000; //positions between progress reports
+    private final int depth; //0 when searching to a node budget
+    private final long nodeLimit;
+    private final int tableSizeMB;
+    private final PositionEvaluator evaluator;
+    private final ThreadLocal<AIPlayer> threadPlayers; //the AI player of each analysis thread
+    
+    
+    //Constructor - searches every position to the indicated depth, or if depth is 0 or less until nodeLimit nodes have been visited
+    public BatchAnalyzer(int depth, long nodeLimit, int tableSizeMB, PositionEvaluator evaluator){
+        this.depth = Math.max(depth, 0);
+        this.nodeLimit = nodeLimit;
+        this.tableSizeMB = tableSizeMB;
+        this.evaluator = evaluator;
+        threadPlayers = new ThreadLocal<AIPlayer>(){
+            @Override
+            protected AIPlayer initialValue(){
+                return createPlayer();
+            }
+        };
+    }
+    
+    
+    public static void main(String[] args) throws IOException{
+        int depth = 8;
+        long nodeLimit = 0;
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        int windowSize = 0;
+        int tableSizeMB = 4;
+        PositionEvaluator evaluator = new MobilityEvaluator();
+        String inputName = null;
+        String outputName = "-";
+        for(int i = 0; i < args.length; i++){
+            String option = args[i];
+            String value = (i + 1 < args.length) ? args[i + 1] : "";
+            if(option.equals("-depth")){
+                depth = Integer.parseInt(value);
+                i++;
+            }else if(option.equals("-nodes")){
+                nodeLimit = Long.parseLong(value);
+                depth = 0;
+                i++;
+            }else if(option.equals("-threads")){
+                numThreads = Integer.parseInt(value);
+                i++;
+            }else if(option.equals("-window")){
+                windowSize = Integer.parseInt(value);
+                i++;
+            }else if(option.equals("-hash")){
+                tableSizeMB = Integer.parseInt(value);
+                i++;
+            }else if(option.equals("-eval")){
+                evaluator = value.equalsIgnoreCase("territory") ? new TerritoryEvaluator() : new MobilityEvaluator();
+                i++;
+            }else if(option.startsWith("-") && !option.equals("-")){
+                System.err.println("Unknown option: " + option);
+                System.exit(2);
+            }else if(inputName == null){
+                inputName = option;
+            }else{
+                outputName = option;
+            }
+        }
+        if(inputName == null){
+            System.err.println("Usage: BatchAnalyzer [-depth N | -nodes N] [-threads N] [-window N] [-hash MB] [-eval mobility|territory] INPUT [OUTPUT]");
+            System.exit(2);
+        }
+        if(windowSize <= 0){
+            windowSize = WINDOW_PER_THREAD * Math.max(numThreads, 1);
+        }
+        
+        BatchAnalyzer analyzer = new BatchAnalyzer(depth, nodeLimit, tableSizeMB, evaluator);
+        BufferedReader input = new BufferedReader(new InputStreamReader(inputName.equals("-") ? System.in : new FileInputStream(inputName),
+                StandardCharsets.UTF_8));
+        Writer output = new BufferedWriter(new OutputStreamWriter(outputName.equals("-") ? System.out : new FileOutputStream(outputName),
+                StandardCharsets.UTF_8));
+        try{
+            long startTime = System.nanoTime();
+            long numPositions = analyzer.analyze(input, output, numThreads, windowSize);
+            double seconds = (System.nanoTime() - startTime) / 1.0e9;
+            System.err.println(String.format("Analyzed %d positions in %.1f s (%.1f positions/s) on %d threads", numPositions, seconds,
+                    numPositions / seconds, numThreads));
+        }finally{
+            input.close();
+            output.close();
+        }
+    }
+    
+    
+    //Analyzes every position read from input and writes the results to output in input order, with numThreads positions searched at once and at most
+    //windowSize positions in memory. Returns the number of positions analyzed (including ones that couldn't be read).
+    public long analyze(BufferedReader input, Writer output, int numThreads, int windowSize) throws IOException{
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(numThreads, 1), new ThreadFactory(){
+            @Override
+            public Thread newThread(Runnable task){
+                Thread analysisThread = new Thread(task, "BatchAnalyzer-search");
+                analysisThread.setDaemon(true);
+                return analysisThread;
+            }
+        });
+        ArrayDeque<Future<String>> window = new ArrayDeque<>();
+        long numPositions = 0;
+        long lineNumber = 0;
+        try{
+            output.write("#line\tbest\tscore\tdepth\tnodes\tms\tposition\n");
+            String line = input.readLine();
+            while(line != null){
+                lineNumber++;
+                final String position = line.trim();
+                final long positionLine = lineNumber;
+                if(!position.isEmpty() && (!position.startsWith("#") || PositionCodec.isNotation(position))){
+                    if(window.size() >= Math.max(windowSize, 1)){ //the window is full - wait for the oldest position and write it out first
+                        output.write(waitForResult(window.poll()));
+                    }
+                    window.add(pool.submit(new Callable<String>(){
+                        @Override
+                        public String call(){
+                            return analyzePosition(positionLine, position);
+                        }
+                    }));
+                    numPositions++;
+                    if((numPositions % PROGRESS_INTERVAL) == 0){
+                        System.err.println(numPositions + " positions read");
+                    }
+                }
+                line = input.readLine();
+            }
+            while(!window.isEmpty()){
+                output.write(waitForResult(window.poll()));
+            }
+            output.flush();
+        }finally{
+            pool.shutdownNow();
+        }
+        return numPositions;
+    }
+    
+    
+    //Analyzes one position on the calling thread and returns its output line (or its ERROR line if it can't be read)
+    public String analyzePosition(long lineNumber, String position){
+        StringBuilder result = new StringBuilder().append(lineNumber).append('\t');
+        try{
+            GameBoard board;
+            BoardVals playerToMove;
+            if(PositionCodec.isNotation(position)){
+                board = PositionCodec.parse(position);
+                playerToMove = PositionCodec.parsePlayerToMove(position);
+            }else{
+                board = parseMoveList(position);
+                playerToMove = getPlayerToMove(position);
+            }
+            if(board.checkIfPlayerLose(playerToMove)){
+                result.append("-\t").append(-GameBoard.WIN_SCORE).append("\t0\t0\t0");
+            }else{
+                AIPlayer analysisPlayer = threadPlayers.get();
+                analysisPlayer.newGame(); //search every position from scratch - results mustn't depend on what this thread searched before
+                GameMove bestMove;
+                if(depth > 0){
+                    bestMove = analysisPlayer.getAIMoveToDepth(board, playerToMove, depth);
+                }else{
+                    bestMove = analysisPlayer.getAIMove(board, playerToMove, new MoveTimer(Long.MAX_VALUE));
+                }
+                SearchStats stats = analysisPlayer.getLastSearchStats();
+                result.append(board.getGeometry().getSquareName(board.getGeometry().toSquare(bestMove.getRow(), bestMove.getColumn())));
+                result.append('\t').append(stats.getScore()).append('\t').append(stats.getCompletedDepth()).append('\t').append(stats.getNodes());
+                result.append('\t').append(stats.getElapsedNanos() / 1000000);
+            }
+            result.append('\t').append(position);
+        }catch(IllegalArgumentException e){
+            result.append("ERROR\t").append(e.getMessage());
+        }
+        return result.append('\n').toString();
+    }
+    
+    
+    //Helper which builds the AI player for one analysis thread
+    private AIPlayer createPlayer(){
+        AIPlayer analysisPlayer = new AIPlayer(tableSizeMB);
+        analysisPlayer.setEvaluator(evaluator);
+        analysisPlayer.setNodeLimit((depth > 0) ? 0 : nodeLimit);
+        return analysisPlayer;
+    }
+    
+    
+    //Builds the board for a position given as a move list: optional board size, the player who moved first, then the moves played alternately starting
+    //with that player. Throws an IllegalArgumentException if the position can't be read or a move isn't legal.
+    public static GameBoard parseMoveList(String position){
+        String[] parts = position.trim().split("\\s+");
+        int index = 0;
+        BoardGeometry geometry = BoardGeometry.STANDARD;
+        if((parts.length > 0) && parts[0].matches("\\d+[xX]\\d+")){
+            String[] dimensions = parts[0].split("[xX]");
+            geometry = BoardGeometry.get(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]));
+            index++;
+        }
+        if((index >= parts.length) || !parts[index].matches("[xXoO]")){
+            throw new IllegalArgumentException("Expected X or O (the player who moved first) in: " + position);
+        }
+        BoardVals player = parts[index].equalsIgnoreCase("X") ? BoardVals.PLAYER_X : BoardVals.PLAYER_O;
+        index++;
+        
+        GameBoard board = new GameBoard(player, geometry);
+        for(int i = index; i < parts.length; i++){
+            int square = geometry.parseSquare(parts[i]);
+            if((square < 0) || !board.isLegalMove(player, square)){
+                throw new IllegalArgumentException("Move " + (i - index + 1) + " (" + parts[i] + ") is not legal in: " + position);
+            }
+            board.makeMove(player, square);
+            player = (player == BoardVals.PLAYER_X) ? BoardVals.PLAYER_O : BoardVals.PLAYER_X;
+        }
+        return board;
+    }
+    
+    
+    //Returns the player to move in a position given as a move list (see parseMoveList) - the first player after an even number of moves
+    public static BoardVals getPlayerToMove(String position){
+        String[] parts = position.trim().split("\\s+");
+        int index = ((parts.length > 0) && parts[0].matches("\\d+[xX]\\d+")) ? 1 : 0;
+        boolean firstIsX = (index < parts.length) && parts[index].equalsIgnoreCase("X");
+        boolean evenMoves = ((parts.length - index - 1) % 2) == 0;
+        return (firstIsX == evenMoves) ? BoardVals.PLAYER_X : BoardVals.PLAYER_O;
+    }
+    
+    
+    //Helper which waits for a position's analysis and returns its output line - a search that failed outright gives an ERROR line
+    private static String waitForResult(Future<String> result){
+        String line;
+        try{
+            line = result.get();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            line = "?\tERROR\tinterrupted\n";
+        }catch(ExecutionException e){
+            line = "?\tERROR\t" + e.getCause() + "\n";
+        }
+        return line;
+    }
+    
+}
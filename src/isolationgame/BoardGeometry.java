@@ -0,0 +1,407 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+//Class describing the shape of a game board - its number of rows and columns, and everything that follows from them: square numbering (square index =
+//row * columns + column), row labels (A, B, ... Z, AA, AB, ...) and column labels (1, 2, ...), and the precomputed tables the GameBoard moves with.
+//Boards of up to 64 squares fit in a single long, so for those the table holds the shift amount and wrap-around mask for each direction, which lets the
+//board keep doing all of its work with shifts and masks. Larger boards are stored as several longs, and for those the board walks precomputed rays
+//instead - a list of the squares in each direction from every square - so they never fall back to computing coordinates square by square. Whole sets
+//of squares on larger boards can still be shifted a step at a time with expandWords (used by flood fills), which shifts across the word boundaries.
+//Geometries are immutable and shared - use get() rather than building a new one for every board.
+public final class BoardGeometry {
+    //direction indexes used for the queen rays - the order matches the order moves have always been generated in
+    public static final int UP = 0;
+    public static final int DOWN = 1;
+    public static final int LEFT = 2;
+    public static final int RIGHT = 3;
+    public static final int UP_LEFT = 4;
+    public static final int UP_RIGHT = 5;
+    public static final int DOWN_RIGHT = 6;
+    public static final int DOWN_LEFT = 7;
+    public static final int NUM_DIRECTIONS = 8;
+    private static final int[] ROW_STEPS = {-1, 1, 0, 0, -1, -1, 1, 1};
+    private static final int[] COLUMN_STEPS = {0, 0, -1, 1, -1, 1, 1, -1};
+    
+    public static final int SINGLE_WORD_SQUARES = 64; //boards up to this size are stored in one long
+    public static final int MAX_SQUARES = 1023; //square indexes must fit in the 10 bits moves are packed into, with 1023 kept free for "no move"
+    public static final int MIN_DIMENSION = 2;
+    private static final ConcurrentMap<Integer, BoardGeometry> GEOMETRIES = new ConcurrentHashMap<>();
+    public static final BoardGeometry STANDARD = get(8, 8); //the original 8x8 board
+    
+    private final int rows;
+    private final int columns;
+    private final int numSquares;
+    private final boolean singleWord;
+    private final int maxMoves;
+    private final long shapeKey; //mixed into the Zobrist key of every board of this shape (see getShapeKey)
+    private final long boardMask; //single word boards only - a bit for every square on the board
+    private final int[] shiftAmounts; //per direction, positive to shift left, negative to shift right
+    private final long[] shiftMasks; //single word boards only - per direction, the squares a shifted bit may land on without having wrapped a row edge
+    private final long[] adjacentMasks; //single word boards only - mask of the squares adjacent to each square
+    private final long[] wordMasks; //larger boards only - a bit for every square on the board, for each word
+    private final long[][] wordShiftMasks; //larger boards only - per direction, the squares a shifted bit may land on without wrapping, for each word
+    private final int[][] adjacentSquares; //the squares adjacent to each square
+    private final int[][][] rays; //[square][direction] -> the squares along that ray, nearest first
+    private final String[] rowLabels;
+    private final Map<String, Integer> rowMap; //row label -> row index
+    private final Map<Integer, String> inverseRowMap; //row index -> row label
+    
+    
+    //Constructor - use get() to obtain a geometry
+    private BoardGeometry(int rows, int columns){
+        this.rows = rows;
+        this.columns = columns;
+        numSquares = rows * columns;
+        singleWord = (numSquares <= SINGLE_WORD_SQUARES);
+        maxMoves = (rows - 1) + (columns - 1) + (2 * (Math.min(rows, columns) - 1)); //a queen's four lines, at their longest
+        shapeKey = ((rows == 8) && (columns == 8)) ? 0L : mixShapeKey(((long)rows << 32) | columns);
+        
+        rowLabels = new String[rows];
+        Map<String, Integer> labelToRow = new HashMap<>();
+        Map<Integer, String> rowToLabel = new HashMap<>();
+        for(int row = 0; row < rows; row++){
+            rowLabels[row] = buildRowLabel(row);
+            labelToRow.put(rowLabels[row], row);
+            rowToLabel.put(row, rowLabels[row]);
+        }
+        rowMap = Collections.unmodifiableMap(labelToRow);
+        inverseRowMap = Collections.unmodifiableMap(rowToLabel);
+        
+        rays = new int[numSquares][NUM_DIRECTIONS][];
+        adjacentSquares = new int[numSquares][];
+        int[] rayBuffer = new int[Math.max(rows, columns)];
+        int[] adjacentBuffer = new int[NUM_DIRECTIONS];
+        for(int square = 0; square < numSquares; square++){
+            int numAdjacent = 0;
+            for(int direction = 0; direction < NUM_DIRECTIONS; direction++){
+                int rayLength = 0;
+                int next = stepSquare(square, direction);
+                while(next >= 0){
+                    rayBuffer[rayLength] = next;
+                    rayLength++;
+                    next = stepSquare(next, direction);
+                }
+                int[] ray = new int[rayLength];
+                System.arraycopy(rayBuffer, 0, ray, 0, rayLength);
+                rays[square][direction] = ray;
+                if(rayLength > 0){
+                    adjacentBuffer[numAdjacent] = ray[0];
+                    numAdjacent++;
+                }
+            }
+            adjacentSquares[square] = new int[numAdjacent];
+            System.arraycopy(adjacentBuffer, 0, adjacentSquares[square], 0, numAdjacent);
+        }
+        
+        shiftAmounts = new int[NUM_DIRECTIONS];
+        for(int direction = 0; direction < NUM_DIRECTIONS; direction++){
+            shiftAmounts[direction] = (ROW_STEPS[direction] * columns) + COLUMN_STEPS[direction];
+        }
+        
+        if(singleWord){
+            boardMask = (numSquares == 64) ? -1L : ((1L << numSquares) - 1);
+            long firstColumn = 0L;
+            long lastColumn = 0L;
+            for(int row = 0; row < rows; row++){
+                firstColumn |= 1L << toSquare(row, 0);
+                lastColumn |= 1L << toSquare(row, columns - 1);
+            }
+            shiftMasks = new long[NUM_DIRECTIONS];
+            for(int direction = 0; direction < NUM_DIRECTIONS; direction++){
+                shiftMasks[direction] = boardMask;
+                if(COLUMN_STEPS[direction] > 0){
+                    shiftMasks[direction] &= ~firstColumn; //moving right, anything landing in the first column wrapped around from the row above
+                }else if(COLUMN_STEPS[direction] < 0){
+                    shiftMasks[direction] &= ~lastColumn;
+                }
+            }
+            adjacentMasks = new long[numSquares];
+            for(int square = 0; square < numSquares; square++){
+                for(int adjacent : adjacentSquares[square]){
+                    adjacentMasks[square] |= 1L << adjacent;
+                }
+            }
+            wordMasks = null;
+            wordShiftMasks = null;
+        }else{
+            boardMask = 0L;
+            shiftMasks = null;
+            adjacentMasks = null;
+            wordMasks = new long[getNumWords()];
+            wordShiftMasks = new long[NUM_DIRECTIONS][getNumWords()];
+            for(int square = 0; square < numSquares; square++){
+                wordMasks[square >>> 6] |= 1L << square;
+                for(int direction = 0; direction < NUM_DIRECTIONS; direction++){
+                    //moving right, anything landing in the first column wrapped around from the row above (and the same for moving left)
+                    boolean wrapped = ((COLUMN_STEPS[direction] > 0) && (squareColumn(square) == 0))
+                            || ((COLUMN_STEPS[direction] < 0) && (squareColumn(square) == (columns - 1)));
+                    if(!wrapped){
+                        wordShiftMasks[direction][square >>> 6] |= 1L << square;
+                    }
+                }
+            }
+        }
+    }
+    
+    
+    //Returns the geometry for a board of the indicated size. Both dimensions must be at least 2, and the board can have at most MAX_SQUARES squares.
+    public static BoardGeometry get(int rows, int columns){
+        if((rows < MIN_DIMENSION) || (columns < MIN_DIMENSION) || ((long)rows * columns > MAX_SQUARES)){
+            throw new IllegalArgumentException("Unsupported board size " + rows + "x" + columns + " - both sides must be at least " + MIN_DIMENSION
+                    + " and the board can have at most " + MAX_SQUARES + " squares");
+        }
+        Integer sizeKey = (rows << 16) | columns;
+        BoardGeometry geometry = GEOMETRIES.get(sizeKey);
+        if(geometry == null){
+            GEOMETRIES.putIfAbsent(sizeKey, new BoardGeometry(rows, columns));
+            geometry = GEOMETRIES.get(sizeKey);
+        }
+        return geometry;
+    }
+    
+    
+    //Helper which builds the label for a row - A to Z, then AA, AB and so on (like spreadsheet columns)
+    private static String buildRowLabel(int row){
+        StringBuilder label = new StringBuilder();
+        int remaining = row + 1;
+        while(remaining > 0){
+            remaining--;
+            label.insert(0, (char)('A' + (remaining % 26)));
+            remaining /= 26;
+        }
+        return label.toString();
+    }
+    
+    
+    //Single word boards only - shifts every set bit one step in the indicated direction. Bits shifted off the board (including wrapping around a row
+    //edge) are dropped.
+    public long shift(long squares, int direction){
+        int amount = shiftAmounts[direction];
+        long shifted;
+        if(amount > 0){
+            shifted = squares << amount;
+        }else{
+            shifted = squares >>> -amount;
+        }
+        return shifted & shiftMasks[direction];
+    }
+    
+    
+    //Single word boards only - shifts every set bit one step in all eight directions at once (one "ring" of a flood fill). The step is taken
+    //sideways first and then up and down from that, which covers the diagonals too - four shifts instead of eight.
+    public long expand(long squares){
+        long horizontal = squares | shift(squares, LEFT) | shift(squares, RIGHT);
+        return horizontal | shift(horizontal, UP) | shift(horizontal, DOWN);
+    }
+    
+    
+    //Larger boards only - writes the squares plus every square one step away from them in any direction (one "ring" of a flood fill) into result,
+    //shifting across word boundaries. As with expand the step is taken sideways and then up and down. Both arrays must hold getNumWords() longs.
+    public void expandWords(long[] squares, long[] result){
+        System.arraycopy(squares, 0, result, 0, wordMasks.length);
+        addShiftedWords(result, LEFT);
+        addShiftedWords(result, RIGHT);
+        addShiftedWords(result, UP);
+        addShiftedWords(result, DOWN);
+    }
+    
+    
+    //Helper for expandWords which adds the squares one step in the indicated direction to the set, in place. The words are worked through in the
+    //opposite order to the way the bits move, so every word read hasn't been added to yet.
+    private void addShiftedWords(long[] words, int direction){
+        int amount = shiftAmounts[direction];
+        int wordShift = Math.abs(amount) >>> 6;
+        int bitShift = Math.abs(amount) & 63;
+        long[] landingMasks = wordShiftMasks[direction];
+        if(amount > 0){ //bits move up to higher squares - each word takes its bits from the word(s) below it
+            for(int i = words.length - 1; i >= 0; i--){
+                long shifted = getWord(words, i - wordShift) << bitShift;
+                if(bitShift != 0){
+                    shifted |= getWord(words, i - wordShift - 1) >>> (64 - bitShift);
+                }
+                words[i] |= shifted & landingMasks[i];
+            }
+        }else{
+            for(int i = 0; i < words.length; i++){
+                long shifted = getWord(words, i + wordShift) >>> bitShift;
+                if(bitShift != 0){
+                    shifted |= getWord(words, i + wordShift + 1) << (64 - bitShift);
+                }
+                words[i] |= shifted & landingMasks[i];
+            }
+        }
+    }
+    
+    
+    //Helper for addShiftedWords - the word at the index, or 0 for indexes off either end
+    private static long getWord(long[] words, int index){
+        long word = 0L;
+        if((index >= 0) && (index < words.length)){
+            word = words[index];
+        }
+        return word;
+    }
+    
+    
+    //Returns the square one step from the indicated square in the indicated direction, or -1 if that step leaves the board
+    public int stepSquare(int square, int direction){
+        int row = squareRow(square) + ROW_STEPS[direction];
+        int column = squareColumn(square) + COLUMN_STEPS[direction];
+        int stepped = -1;
+        if(isInBounds(row, column)){
+            stepped = toSquare(row, column);
+        }
+        return stepped;
+    }
+    
+    
+    //Returns true if the coordinates are on the board
+    public boolean isInBounds(int row, int column){
+        return (row >= 0) && (row < rows) && (column >= 0) && (column < columns);
+    }
+    
+    
+    //Helpers for converting between (row, column) coordinates and square indexes
+    public int toSquare(int row, int column){
+        return (row * columns) + column;
+    }
+    
+    //row of a square index
+    public int squareRow(int square){
+        return square / columns;
+    }
+    
+    //column of a square index
+    public int squareColumn(int square){
+        return square % columns;
+    }
+    
+    
+    //Returns the name of a square as the player types it - row label followed by the (1 based) column number, e.g. "C4"
+    public String getSquareName(int square){
+        return rowLabels[squareRow(square)] + (squareColumn(square) + 1);
+    }
+    
+    
+    //Parses a square name such as "C4" (case insensitive) - returns the square index, or -1 if the name isn't a square on this board
+    public int parseSquare(String name){
+        int square = -1;
+        String trimmed = name.trim().toUpperCase();
+        int split = 0;
+        while((split < trimmed.length()) && Character.isLetter(trimmed.charAt(split))){
+            split++;
+        }
+        Integer row = rowMap.get(trimmed.substring(0, split));
+        String columnText = trimmed.substring(split);
+        if((row != null) && columnText.matches("\\d{1,4}")){
+            int column = Integer.parseInt(columnText) - 1;
+            if(isInBounds(row, column)){
+                square = toSquare(row, column);
+            }
+        }
+        return square;
+    }
+    
+    
+    //Helper which scrambles the board size into a shape key - the splitmix64 finalizer, so boards of similar sizes get unrelated keys
+    private static long mixShapeKey(long size){
+        long key = size + 0x9E3779B97F4A7C15L;
+        key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+        key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+        return key ^ (key >>> 31);
+    }
+    
+    
+    //getter for the number of rows
+    public int getRows(){
+        return rows;
+    }
+    
+    //getter for the number of columns
+    public int getColumns(){
+        return columns;
+    }
+    
+    //getter for the number of squares
+    public int getNumSquares(){
+        return numSquares;
+    }
+    
+    //getter for the key GameBoard mixes into the Zobrist key of every board of this shape. The per-square keys only depend on the square number, so
+    //without it the same squares on (say) 8x8 and 4x16 boards would hash alike even though the moves are different. The standard board's key is 0, so
+    //its Zobrist keys (and the opening books built with them) are unchanged.
+    public long getShapeKey(){
+        return shapeKey;
+    }
+    
+    //getter for whether the board fits in a single long
+    public boolean isSingleWord(){
+        return singleWord;
+    }
+    
+    //getter for the number of longs needed to hold one bit per square
+    public int getNumWords(){
+        return (numSquares + 63) >>> 6;
+    }
+    
+    //getter for the most moves a player can ever have on this board - the size needed for a generateMoves buffer
+    public int getMaxMoves(){
+        return maxMoves;
+    }
+    
+    //getter for the mask of every square on the board (single word boards only)
+    public long getBoardMask(){
+        return boardMask;
+    }
+    
+    //getter for the mask of squares adjacent to a square (single word boards only)
+    public long getAdjacentMask(int square){
+        return adjacentMasks[square];
+    }
+    
+    //getter for the mask of the squares on the board in one word (larger boards only)
+    public long getWordMask(int word){
+        return wordMasks[word];
+    }
+    
+    //getter for the squares adjacent to a square
+    public int[] getAdjacentSquares(int square){
+        return adjacentSquares[square];
+    }
+    
+    //getter for the squares along a ray from a square, nearest first
+    public int[] getRay(int square, int direction){
+        return rays[square][direction];
+    }
+    
+    //getter for the label of a row
+    public String getRowLabel(int row){
+        return rowLabels[row];
+    }
+    
+    //getter for the row label -> row index map
+    public Map<String, Integer> getRowMap(){
+        return rowMap;
+    }
+    
+    //getter for the row index -> row label map
+    public Map<Integer, String> getInverseRowMap(){
+        return inverseRowMap;
+    }
+    
+    
+    @Override
+    public String toString(){
+        return rows + "x" + columns;
+    }
+    
+}
@@ -0,0 +1,192 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+import java.util.Arrays;
+
+//Exact solver for partitioned endgames. Once the players are walled off from each other (GameBoard.isPartitioned) the game reduces to two independent
+//one-player puzzles: how many moves can each player make inside their own region? The player to move wins only if their longest walk is strictly longer
+//than their opponents (with equal walks the player to move is the first to run out of moves).
+//The longest walk is found with a depth-first search over (current square, squares still unused) states. The region's squares are renumbered 0..n-1 so
+//the unused squares always fit in one long, and results are cached by that mask in a fixed-size memo table. A node budget keeps the solver from running
+//away on a large region - if the budget runs out the answer is UNKNOWN and the caller carries on with the normal search. A solve can also be given a
+//timer and a share of the time to use, and gives up the same way once either runs out.
+//Regions only shrink as the game goes on, so once a region of some size has run out of budget, regions at least that big are given up on straight away
+//until forgetFailures is called (the search does that at the start of every search) - otherwise every node of a search in a partitioned position would
+//repeat the same failing solve.
+public class EndgameSolver {
+    public static final int UNKNOWN = -1;
+    private static final int MAX_REGION_SQUARES = 63; //the start square takes the 64th local index
+    private static final int MEMO_SIZE = 1 << 16;
+    private static final long TIME_CHECK_MASK = 1023; //the clock is only read once every 1024 nodes
+    private long[] memoMasks;
+    private int[] memoEntries; //(local square + 1) << 8 | walk length
+    private int[] memoSolves; //number of the solve which wrote each slot - slots written by earlier solves count as empty, so nothing has to be cleared
+    private int solveNumber;
+    private int[][][] rays; //[local square][direction] -> local squares along that ray, nearest first (only squares inside the region)
+    private int[] localSquares; //board square for each local index
+    private int[] regionSquares; //scratch space for the squares of the region (sized for the largest board solved so far)
+    private int[] localIndex; //local index of each board square, or -1 if the square isn't in the region
+    private long nodeBudget;
+    private long nodes;
+    private boolean outOfTime; //set once the timer or the time share of the current solve has run out
+    private MoveTimer timer; //timer of the current solve, null if it isn't timed
+    private long startNanos; //System.nanoTime when the current solve started
+    private long maxNanos; //time share of the current solve
+    private int smallestFailedRegion; //smallest region which has run out of node budget since forgetFailures
+    private int bestFirstSquare; //board square of the first move of the longest walk found by the last solve
+    
+    
+    //Constructor - the node budget is the most positions a single solve may visit before giving up
+    public EndgameSolver(long nodeBudget){
+        this.nodeBudget = nodeBudget;
+        memoMasks = new long[MEMO_SIZE];
+        memoEntries = new int[MEMO_SIZE];
+        memoSolves = new int[MEMO_SIZE];
+        smallestFailedRegion = Integer.MAX_VALUE;
+        rays = new int[MAX_REGION_SQUARES + 1][BoardGeometry.NUM_DIRECTIONS][];
+        localSquares = new int[MAX_REGION_SQUARES + 1];
+    }
+    
+    
+    //Returns the most moves the indicated player can make from the current position if they are never interfered with, or UNKNOWN if the region is too
+    //large or the node budget ran out. Only meaningful when the board is partitioned. The first move of that walk is available from getBestFirstSquare.
+    public int solveLongestWalk(GameBoard board, BoardVals player){
+        return solveLongestWalk(board, player, null, Long.MAX_VALUE);
+    }
+    
+    
+    //Like solveLongestWalk(board, player), but also gives up (returning UNKNOWN) once the timer runs out or maxNanos nanoseconds have gone by - the timer
+    //may be null for an untimed solve
+    public int solveLongestWalk(GameBoard board, BoardVals player, MoveTimer timer, long maxNanos){
+        int numSquares = board.getGeometry().getNumSquares();
+        if((regionSquares == null) || (regionSquares.length < numSquares)){
+            regionSquares = new int[numSquares];
+            localIndex = new int[numSquares];
+        }
+        int regionSize = board.collectReachableSquares(player, regionSquares);
+        int walkLength = UNKNOWN;
+        bestFirstSquare = TranspositionTable.NO_MOVE;
+        
+        if((regionSize <= MAX_REGION_SQUARES) && (regionSize < smallestFailedRegion)){
+            int startIndex = buildRegion(board, player, regionSize);
+            nodes = 0;
+            outOfTime = false;
+            this.timer = timer;
+            this.maxNanos = maxNanos;
+            startNanos = System.nanoTime();
+            solveNumber++;
+            if(solveNumber == 0){ //the count has wrapped all the way around - only now do old slots have to be cleared
+                Arrays.fill(memoSolves, 0);
+                solveNumber = 1;
+            }
+            
+            long unusedMask = (1L << regionSize) - 1;
+            walkLength = longestWalk(startIndex, unusedMask, true);
+            if((nodes > nodeBudget) || outOfTime){
+                if(!outOfTime){
+                    smallestFailedRegion = regionSize;
+                }
+                walkLength = UNKNOWN;
+                bestFirstSquare = TranspositionTable.NO_MOVE;
+            }
+            this.timer = null;
+        }
+        
+        return walkLength;
+    }
+    
+    
+    //Forgets which region sizes have run out of node budget, so every region is tried again
+    public void forgetFailures(){
+        smallestFailedRegion = Integer.MAX_VALUE;
+    }
+    
+    
+    //Helper which checks whether the solve has to give up, counting the node - the timer's stop flag is checked every node, the clock every 1024 nodes
+    private boolean isSolveStopped(){
+        nodes++;
+        if(!outOfTime && (((timer != null) && timer.isStopRequested())
+                || (((nodes & TIME_CHECK_MASK) == 0) && (((timer != null) && timer.isTimeElapsed()) || ((System.nanoTime() - startNanos) >= maxNanos))))){
+            outOfTime = true;
+        }
+        return outOfTime || (nodes > nodeBudget);
+    }
+    
+    
+    //Helper which numbers the region squares and builds the ray lists for every region square plus the players start square. Returns the start's index.
+    private int buildRegion(GameBoard board, BoardVals player, int regionSize){
+        BoardGeometry geometry = board.getGeometry();
+        for(int square = 0; square < geometry.getNumSquares(); square++){
+            localIndex[square] = -1;
+        }
+        for(int i = 0; i < regionSize; i++){
+            localSquares[i] = regionSquares[i];
+            localIndex[regionSquares[i]] = i;
+        }
+        localSquares[regionSize] = board.getPlayerSquare(player);
+        
+        int[] rayBuffer = new int[MAX_REGION_SQUARES];
+        for(int i = 0; i <= regionSize; i++){
+            for(int direction = 0; direction < BoardGeometry.NUM_DIRECTIONS; direction++){
+                int[] boardRay = geometry.getRay(localSquares[i], direction);
+                int rayLength = 0;
+                while((rayLength < boardRay.length) && (localIndex[boardRay[rayLength]] >= 0)){
+                    rayBuffer[rayLength] = localIndex[boardRay[rayLength]];
+                    rayLength++;
+                }
+                int[] ray = new int[rayLength];
+                System.arraycopy(rayBuffer, 0, ray, 0, rayLength);
+                rays[i][direction] = ray;
+            }
+        }
+        
+        return regionSize;
+    }
+    
+    
+    //Depth-first search for the longest walk from the local square "position" using only squares in unusedMask. Stops early if a walk through every
+    //unused square is found, since nothing can beat that.
+    private int longestWalk(int position, long unusedMask, boolean atStart){
+        int best = 0;
+        boolean stopped = isSolveStopped();
+        int slot = (int)((unusedMask * 0x9E3779B97F4A7C15L + position) >>> 48) & (MEMO_SIZE - 1);
+        int entry = memoEntries[slot];
+        
+        if(!atStart && (memoSolves[slot] == solveNumber) && ((entry >>> 8) == (position + 1)) && (memoMasks[slot] == unusedMask)){
+            best = entry & 0xFF;
+        }else if(!stopped){
+            int upperBound = Long.bitCount(unusedMask);
+            int[][] positionRays = rays[position];
+            for(int direction = 0; (direction < BoardGeometry.NUM_DIRECTIONS) && (best < upperBound); direction++){
+                int[] ray = positionRays[direction];
+                for(int i = 0; (i < ray.length) && (((unusedMask >>> ray[i]) & 1L) != 0L) && (best < upperBound); i++){
+                    int walk = 1 + longestWalk(ray[i], unusedMask & ~(1L << ray[i]), false);
+                    if(walk > best){
+                        best = walk;
+                        if(atStart){
+                            bestFirstSquare = localSquares[ray[i]];
+                        }
+                    }
+                }
+            }
+            
+            if((nodes <= nodeBudget) && !outOfTime){ //a result found after the budget or time ran out may be short, so it isn't cached
+                memoMasks[slot] = unusedMask;
+                memoEntries[slot] = ((position + 1) << 8) | best;
+                memoSolves[slot] = solveNumber;
+            }
+        }
+        
+        return best;
+    }
+    
+    
+    //getter for the board square of the first move of the longest walk found by the last solve (TranspositionTable.NO_MOVE if there was no move)
+    public int getBestFirstSquare(){
+        return bestFirstSquare;
+    }
+    
+}
@@ -0,0 +1,337 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+//Endgame tablebase - the exact result of every position with only a few open squares left in play, worked out ahead of time by
+//EndgameTablebaseGenerator so the search can look these positions up instead of searching them.
+//Only the open squares one of the players can still reach matter (no queen move can ever get to the rest), so a position is keyed by the square of the
+//player to move, the square of the other player and the mask of open squares either of them can reach (the "region"). Which player is X doesn't matter
+//either, so results are always for the player to move. Positions where the player to move is already stuck aren't stored - they're lost, and probe works
+//that out itself.
+//Positions which are mirror images or rotations of each other have the same result, so only one of them is stored - the canonical form, which is the
+//image under the board's symmetries (8 on a square board, 4 on a rectangle) with the smallest mover square, then other square, then region.
+//Nothing identifying a position is stored at all. Every position a probe can ask about was listed by the generator, so instead of searching for a key
+//the position is given its place in the results by a minimal perfect hash - a few levels of bit arrays, where each position is hashed into one level
+//after another until it lands on a bit no other position landed on. Its place is the number of such bits before that one. This takes about half a byte
+//per position, plus the result byte.
+//The file is a short header, the number of bits in each level, the bit arrays, the number of set bits before every block of the bit arrays and then one
+//result byte per position. Like the opening book it's memory-mapped read-only and probed straight out of the mapping. A result byte holds the distance to
+//the end of the game in moves (with the winner finishing as fast as possible and the loser holding out as long as possible) and a flag set when the
+//player to move wins.
+//Boards of up to 64 squares only.
+public class EndgameTablebase {
+    public static final String DEFAULT_FILE_NAME = "endgame.bin";
+    public static final int NOT_FOUND = -1; //probe result for a position which isn't in the tablebase
+    public static final int MAX_REGION_SQUARES = 8; //largest region size a tablebase can be built for
+    public static final int MAX_LEVELS = 64; //a hash which still has positions left over after this many levels can't be built
+    public static final int RANK_BLOCK_WORDS = 8; //the set bits are counted up to the start of every block of this many words of the bit arrays
+    private static final int MAGIC = 0x49534F54; //"ISOT"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 32; //magic, version, rows, columns, largest region size, number of entries, number of levels, words of bits
+    private static final int MOVER_WINS_FLAG = 0x80; //set in a result when the player to move wins - the low bits are the distance
+    private static final int DISTANCE_MASK = 0x7F;
+    private final MappedByteBuffer table;
+    private final BoardGeometry geometry;
+    private final int maxRegionSquares;
+    private final int numEntries;
+    private final long[] levelBits; //number of bits in each level of the hash
+    private final long[] levelStarts; //first bit of each level
+    private final int bitsOffset; //where the bit arrays start in the file
+    private final int ranksOffset; //where the block counts start
+    private final int resultsOffset; //where the result bytes start
+    private final int[][] symmetries; //[symmetry][square] -> the square it's moved to
+    
+    
+    //Constructor - maps the indicated tablebase file. Throws an IOException if the file can't be read or isn't a valid tablebase for this version of the
+    //game.
+    public EndgameTablebase(String fileName) throws IOException{
+        try(FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)){
+            long fileSize = channel.size();
+            if(fileSize < HEADER_BYTES){
+                throw new IOException("Endgame tablebase " + fileName + " is too short to be a tablebase file");
+            }
+            if(fileSize > Integer.MAX_VALUE){
+                throw new IOException("Endgame tablebase " + fileName + " is too large to map");
+            }
+            table = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize); //the mapping stays valid after the channel is closed
+        }
+        
+        if((table.getInt(0) != MAGIC) || (table.getInt(4) != VERSION)){
+            throw new IOException("Endgame tablebase " + fileName + " is not a version " + VERSION + " tablebase file");
+        }
+        try{
+            geometry = BoardGeometry.get(table.getInt(8), table.getInt(12));
+        }catch(IllegalArgumentException e){
+            throw new IOException("Endgame tablebase " + fileName + " has an invalid board size", e);
+        }
+        maxRegionSquares = table.getInt(16);
+        numEntries = table.getInt(20);
+        int numLevels = table.getInt(24);
+        int numWords = table.getInt(28);
+        if(!geometry.isSingleWord() || (maxRegionSquares < 0) || (maxRegionSquares > MAX_REGION_SQUARES) || (numEntries < 0) || (numLevels < 0)
+                || (numLevels > MAX_LEVELS) || (numWords < 0)){
+            throw new IOException("Endgame tablebase " + fileName + " is corrupt");
+        }
+        
+        levelBits = new long[numLevels];
+        levelStarts = new long[numLevels];
+        long totalBits = 0;
+        for(int level = 0; level < numLevels; level++){
+            levelBits[level] = table.getInt(HEADER_BYTES + (4 * level)) & 0xFFFFFFFFL;
+            levelStarts[level] = totalBits;
+            totalBits += levelBits[level];
+        }
+        long ranksStart = HEADER_BYTES + (4L * numLevels) + (8L * numWords);
+        long resultsStart = ranksStart + (4L * getNumRankBlocks(numWords));
+        if((totalBits != 64L * numWords) || ((resultsStart + numEntries) != table.capacity())){
+            throw new IOException("Endgame tablebase " + fileName + " is truncated or corrupt");
+        }
+        bitsOffset = HEADER_BYTES + (4 * numLevels);
+        ranksOffset = (int)ranksStart;
+        resultsOffset = (int)resultsStart;
+        symmetries = getSymmetries(geometry);
+    }
+    
+    
+    //Looks up the position on the passed board with the indicated player to move. Returns the result (see isMoverWin and getDistance), or NOT_FOUND if
+    //too many open squares are still in play or the board is a different size from the tablebase.
+    public int probe(GameBoard board, BoardVals mover){
+        int result = NOT_FOUND;
+        if(board.getGeometry() == geometry){
+            long openSquares = ~board.getUsedSquares() & geometry.getBoardMask();
+            int moverSquare = board.getPlayerSquare(mover);
+            int otherSquare = board.getPlayerSquare((mover == BoardVals.PLAYER_X) ? BoardVals.PLAYER_O : BoardVals.PLAYER_X);
+            //the flood fills give up as soon as they've gone past the largest region, so this is cheap for positions nowhere near the endgame
+            long region = getRegion(geometry, moverSquare, openSquares, maxRegionSquares);
+            if(Long.bitCount(region) <= maxRegionSquares){
+                region |= getRegion(geometry, otherSquare, openSquares & ~region, maxRegionSquares);
+                if(Long.bitCount(region) <= maxRegionSquares){
+                    result = probe(moverSquare, otherSquare, region);
+                }
+            }
+        }
+        return result;
+    }
+    
+    
+    //Looks up a position by its key - the square of the player to move, the square of the other player and the region. Returns the result, or NOT_FOUND
+    //if the region is bigger than the tablebase covers.
+    public int probe(int moverSquare, int otherSquare, long region){
+        int result = NOT_FOUND;
+        if((geometry.getAdjacentMask(moverSquare) & region) == 0L){
+            result = 0; //the player to move is stuck - lost, and the game is already over
+        }else if(Long.bitCount(region) <= maxRegionSquares){
+            int[] symmetry = symmetries[getCanonicalSymmetry(symmetries, moverSquare, otherSquare, region)];
+            int pair = getPair(geometry, symmetry[moverSquare], symmetry[otherSquare]);
+            long canonicalRegion = transformRegion(symmetry, region);
+            for(int level = 0; (level < levelBits.length) && (result == NOT_FOUND); level++){
+                long bit = levelStarts[level] + getLevelBit(hashPosition(level, pair, canonicalRegion), levelBits[level]);
+                int word = (int)(bit >>> 6);
+                long bits = table.getLong(bitsOffset + (8 * word));
+                if(((bits >>> (bit & 63)) & 1L) != 0L){
+                    int block = word / RANK_BLOCK_WORDS;
+                    int rank = table.getInt(ranksOffset + (4 * block)) + Long.bitCount(bits & ((1L << (bit & 63)) - 1));
+                    for(int before = block * RANK_BLOCK_WORDS; before < word; before++){
+                        rank += Long.bitCount(table.getLong(bitsOffset + (8 * before)));
+                    }
+                    result = table.get(resultsOffset + rank) & 0xFF;
+                }
+            }
+        }
+        return result;
+    }
+    
+    
+    //Writes a tablebase file - levelBits holds the number of bits in each level of the hash (each a multiple of 64), bits the bit arrays of every level
+    //one after the other, and results the result of every position in hash order
+    public static void write(String fileName, BoardGeometry geometry, int maxRegionSquares, long[] levelBits, long[] bits, byte[] results)
+            throws IOException{
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16))){
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(geometry.getRows());
+            out.writeInt(geometry.getColumns());
+            out.writeInt(maxRegionSquares);
+            out.writeInt(results.length);
+            out.writeInt(levelBits.length);
+            out.writeInt(bits.length);
+            for(long levelSize : levelBits){
+                out.writeInt((int)levelSize);
+            }
+            for(long word : bits){
+                out.writeLong(word);
+            }
+            int rank = 0;
+            for(int word = 0; word < bits.length; word++){
+                if(word % RANK_BLOCK_WORDS == 0){
+                    out.writeInt(rank);
+                }
+                rank += Long.bitCount(bits[word]);
+            }
+            out.write(results);
+        }
+    }
+    
+    
+    //Returns the number of blocks the set bits are counted for, for bit arrays of the indicated number of words
+    public static int getNumRankBlocks(int numWords){
+        return (numWords + RANK_BLOCK_WORDS - 1) / RANK_BLOCK_WORDS;
+    }
+    
+    
+    //Returns the open squares a player on the indicated square could ever reach - a flood fill over the open squares one king step at a time, like
+    //GameBoard.getReachableSquares. The fill stops early once more than limit squares have been found, so the result is only exact up to that size.
+    public static long getRegion(BoardGeometry geometry, int square, long openSquares, int limit){
+        long region = 0L;
+        long frontier = geometry.getAdjacentMask(square) & openSquares;
+        while(frontier != 0L){
+            region |= frontier;
+            frontier = (Long.bitCount(region) <= limit) ? (geometry.expand(frontier) & openSquares & ~region) : 0L;
+        }
+        return region;
+    }
+    
+    
+    //Returns the symmetries of a board as square maps - [symmetry][square] -> the square it's moved to, with the identity first. A square board has 8
+    //(the rotations and reflections), any other board 4 (the identity, the two mirror images and the half turn).
+    public static int[][] getSymmetries(BoardGeometry geometry){
+        int rows = geometry.getRows();
+        int columns = geometry.getColumns();
+        int numSymmetries = (rows == columns) ? 8 : 4;
+        int[][] maps = new int[numSymmetries][geometry.getNumSquares()];
+        for(int square = 0; square < geometry.getNumSquares(); square++){
+            int row = geometry.squareRow(square);
+            int column = geometry.squareColumn(square);
+            int lastRow = rows - 1;
+            int lastColumn = columns - 1;
+            maps[0][square] = square;
+            maps[1][square] = geometry.toSquare(row, lastColumn - column);
+            maps[2][square] = geometry.toSquare(lastRow - row, column);
+            maps[3][square] = geometry.toSquare(lastRow - row, lastColumn - column);
+            if(numSymmetries == 8){ //the ones which swap rows and columns
+                maps[4][square] = geometry.toSquare(column, row);
+                maps[5][square] = geometry.toSquare(column, lastRow - row);
+                maps[6][square] = geometry.toSquare(lastColumn - column, row);
+                maps[7][square] = geometry.toSquare(lastColumn - column, lastRow - row);
+            }
+        }
+        return maps;
+    }
+    
+    
+    //Returns the index of the symmetry which moves a position to its canonical form - the image with the smallest mover square, then the smallest other
+    //square, then the smallest region. The region is only moved for the symmetries that tie on both squares, which is rarely more than the identity.
+    public static int getCanonicalSymmetry(int[][] symmetries, int moverSquare, int otherSquare, long region){
+        int best = 0;
+        long bestRegion = region;
+        boolean bestRegionKnown = true;
+        for(int i = 1; i < symmetries.length; i++){
+            int[] symmetry = symmetries[i];
+            int mover = symmetry[moverSquare];
+            int other = symmetry[otherSquare];
+            int bestMover = symmetries[best][moverSquare];
+            int bestOther = symmetries[best][otherSquare];
+            if((mover < bestMover) || ((mover == bestMover) && (other < bestOther))){
+                best = i;
+                bestRegionKnown = false; //only worked out if another symmetry ties with this one
+            }else if((mover == bestMover) && (other == bestOther)){
+                if(!bestRegionKnown){
+                    bestRegion = transformRegion(symmetries[best], region);
+                    bestRegionKnown = true;
+                }
+                long image = transformRegion(symmetry, region);
+                if(image < bestRegion){
+                    best = i;
+                    bestRegion = image;
+                }
+            }
+        }
+        return best;
+    }
+    
+    
+    //Returns the region moved by a symmetry
+    public static long transformRegion(int[] symmetry, long region){
+        long image = 0L;
+        while(region != 0L){
+            image |= 1L << symmetry[Long.numberOfTrailingZeros(region)];
+            region &= region - 1;
+        }
+        return image;
+    }
+    
+    
+    //Returns the index of a pair of player squares - the first part of a position's hash key
+    public static int getPair(BoardGeometry geometry, int moverSquare, int otherSquare){
+        return (moverSquare * geometry.getNumSquares()) + otherSquare;
+    }
+    
+    
+    //Returns the hash of a canonical position for the indicated level of the perfect hash. Every level mixes in its own seed before the pair, so two
+    //positions which land on the same bit in one level are no more likely to meet in the next.
+    public static long hashPosition(int level, int pair, long region){
+        return mix(mix(region ^ mix(0x9E3779B97F4A7C15L * (level + 1))) + pair);
+    }
+    
+    
+    //Returns which bit of a level of levelBits bits a hash lands on
+    public static long getLevelBit(long hash, long levelBits){
+        return ((hash >>> 32) * levelBits) >>> 32;
+    }
+    
+    
+    //Helper which scrambles a long - the splitmix64 finalizer
+    private static long mix(long value){
+        long mixed = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        mixed = (mixed ^ (mixed >>> 27)) * 0x94D049BB133111EBL;
+        return mixed ^ (mixed >>> 31);
+    }
+    
+    
+    //Builds a result from whether the player to move wins and the distance to the end of the game
+    public static int makeResult(boolean moverWins, int distance){
+        return (moverWins ? MOVER_WINS_FLAG : 0) | distance;
+    }
+    
+    
+    //Returns true if a result is a win for the player to move
+    public static boolean isMoverWin(int result){
+        return (result & MOVER_WINS_FLAG) != 0;
+    }
+    
+    
+    //Returns the number of moves left in the game (by both players) for a result
+    public static int getDistance(int result){
+        return result & DISTANCE_MASK;
+    }
+    
+    
+    //getter for the board size the tablebase covers
+    public BoardGeometry getGeometry(){
+        return geometry;
+    }
+    
+    
+    //getter for the largest region the tablebase covers
+    public int getMaxRegionSquares(){
+        return maxRegionSquares;
+    }
+    
+    
+    //getter for the number of positions in the tablebase
+    public int getNumEntries(){
+        return numEntries;
+    }
+    
+}
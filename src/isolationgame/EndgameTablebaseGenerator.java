@@ -0,0 +1,344 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+//Offline tool which builds the endgame tablebase (see EndgameTablebase). It works backwards from the end of the game (retrograde analysis):
+//1) Every canonical position is listed - for each pair of player squares, every region of up to the largest region size that the players could be left
+//   with. A region is a set of open squares where every square connects to one of the players through the set, so they're grown outwards from the
+//   players one square at a time (Redelmeier's method), which produces each region exactly once without ever building one that isn't connected. Pairs of
+//   squares which a symmetry of the board moves to a smaller pair are skipped outright, so only about one position in every 8 (4 on a rectangle) is
+//   ever listed.
+//2) Positions are solved in order of region size, smallest first. A move takes a square out of the region, so every position a move leads to has a
+//   smaller region and has already been solved - each position is solved once, by looking up the canonical form of the positions its moves lead to. The
+//   player to move wins if any move leaves the other player in a lost position (taking the fastest such win), and otherwise loses (holding out as long
+//   as possible).
+//3) The minimal perfect hash is built over the solved positions and the results are written out in hash order.
+//While building, the positions are held in memory by (region size, mover square, other square) group with their region masks sorted, so the solved
+//positions can be found with a binary search - about 10 bytes per position, so the larger tablebases need a larger heap (-Xmx). Only the hash and the
+//results go in the file, about 1.5 bytes per position. On the standard board a largest region of 5 is about 19 million positions (a 27 MB file, built
+//in about 25 seconds), and the default of 6 about 120 million (170 MB, about 3 minutes with -Xmx2g).
+//Usage: EndgameTablebaseGenerator [output file] [largest region] [rows] [columns]
+public class EndgameTablebaseGenerator {
+    private static final int DEFAULT_MAX_REGION_SQUARES = 6;
+    private static final double LEVEL_BITS_PER_POSITION = 2.0; //bits each level of the hash gets per position still left - more bits, fewer levels
+    private final BoardGeometry geometry;
+    private final int maxRegionSquares;
+    private final int numSquares;
+    private final int[][] symmetries;
+    private int[] groupStarts; //first entry of every group (see getGroup), plus one past the last entry
+    private long[] regions;
+    private byte[] results;
+    private int[] groupFill; //next free entry of every group while the positions are listed
+    private boolean counting; //true on the first listing pass, which only counts the positions in each group
+    private boolean pairSymmetric; //true if some symmetry other than the identity leaves the current pair of player squares where they are
+    private long[] levelBits; //number of bits in each level of the hash
+    private long[] hashBits; //the bit arrays of every level, one after the other
+    private byte[] hashResults; //the results in hash order
+    
+    
+    //Constructor - the tablebase covers positions on boards of the indicated size with up to maxRegionSquares open squares in play
+    public EndgameTablebaseGenerator(BoardGeometry geometry, int maxRegionSquares){
+        if(!geometry.isSingleWord()){
+            throw new IllegalArgumentException("Endgame tablebases can only be built for boards of up to " + BoardGeometry.SINGLE_WORD_SQUARES
+                    + " squares");
+        }
+        if((maxRegionSquares < 1) || (maxRegionSquares > EndgameTablebase.MAX_REGION_SQUARES)){
+            throw new IllegalArgumentException("The largest region must be between 1 and " + EndgameTablebase.MAX_REGION_SQUARES);
+        }
+        this.geometry = geometry;
+        this.maxRegionSquares = maxRegionSquares;
+        numSquares = geometry.getNumSquares();
+        symmetries = EndgameTablebase.getSymmetries(geometry);
+    }
+    
+    
+    public static void main(String[] args){
+        String fileName = (args.length > 0) ? args[0] : EndgameTablebase.DEFAULT_FILE_NAME;
+        int maxRegionSquares = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_MAX_REGION_SQUARES;
+        int rows = (args.length > 2) ? Integer.parseInt(args[2]) : BoardGeometry.STANDARD.getRows();
+        int columns = (args.length > 3) ? Integer.parseInt(args[3]) : rows;
+        
+        EndgameTablebaseGenerator generator = new EndgameTablebaseGenerator(BoardGeometry.get(rows, columns), maxRegionSquares);
+        long startTime = System.currentTimeMillis();
+        generator.generate();
+        try{
+            generator.write(fileName);
+            System.out.println("Wrote " + generator.getNumEntries() + " positions to " + fileName + " in "
+                    + ((System.currentTimeMillis() - startTime) / 1000) + " seconds");
+        }catch(IOException e){
+            System.out.println("Could not write the endgame tablebase: " + e.getMessage());
+        }
+    }
+    
+    
+    //Lists and solves every position, then builds the hash
+    public void generate(){
+        //list the positions twice - first just counting them, so every group's place in the arrays is known, then filling them in
+        int numGroups = getGroup(maxRegionSquares + 1, 0, 0);
+        groupFill = new int[numGroups + 1];
+        counting = true;
+        listPositions();
+        groupStarts = new int[numGroups + 1];
+        long numEntries = 0;
+        for(int group = 0; group < numGroups; group++){
+            groupStarts[group] = (int)numEntries;
+            numEntries += groupFill[group];
+            if(numEntries > Integer.MAX_VALUE / 2){ //the arrays are indexed by int, and the hash needs room for two bits per position in its first level
+                throw new IllegalArgumentException("Too many positions for one tablebase - use a smaller largest region");
+            }
+        }
+        groupStarts[numGroups] = (int)numEntries;
+        regions = new long[(int)numEntries];
+        results = new byte[(int)numEntries];
+        System.arraycopy(groupStarts, 0, groupFill, 0, groupStarts.length);
+        counting = false;
+        listPositions();
+        groupFill = null;
+        
+        for(int regionSquares = 0; regionSquares <= maxRegionSquares; regionSquares++){
+            long layerStart = System.currentTimeMillis();
+            int firstGroup = getGroup(regionSquares, 0, 0);
+            int lastGroup = getGroup(regionSquares + 1, 0, 0);
+            for(int group = firstGroup; group < lastGroup; group++){
+                Arrays.sort(regions, groupStarts[group], groupStarts[group + 1]); //lookUp binary searches each group
+            }
+            for(int group = firstGroup; group < lastGroup; group++){
+                int moverSquare = (group / numSquares) % numSquares;
+                int otherSquare = group % numSquares;
+                for(int entry = groupStarts[group]; entry < groupStarts[group + 1]; entry++){
+                    results[entry] = (byte)solve(moverSquare, otherSquare, regions[entry]);
+                }
+            }
+            System.out.println("Solved " + (groupStarts[lastGroup] - groupStarts[firstGroup]) + " positions with " + regionSquares + " open squares in "
+                    + (System.currentTimeMillis() - layerStart) + " ms");
+        }
+        
+        long hashStart = System.currentTimeMillis();
+        buildHash();
+        System.out.println("Built the hash in " + levelBits.length + " levels (" + String.format("%.2f", (64.0 * hashBits.length) / getNumEntries())
+                + " bits per position) in " + (System.currentTimeMillis() - hashStart) + " ms");
+    }
+    
+    
+    //Helper which lists every canonical position on the board - for every pair of player squares which is the smallest of its images, every region grown
+    //out from the squares around the players
+    private void listPositions(){
+        for(int moverSquare = 0; moverSquare < numSquares; moverSquare++){
+            for(int otherSquare = 0; otherSquare < numSquares; otherSquare++){
+                if((moverSquare != otherSquare) && isCanonicalPair(moverSquare, otherSquare)){
+                    long players = (1L << moverSquare) | (1L << otherSquare);
+                    long candidates = (geometry.getAdjacentMask(moverSquare) | geometry.getAdjacentMask(otherSquare)) & ~players;
+                    addPosition(moverSquare, otherSquare, 0L, 0);
+                    growRegions(moverSquare, otherSquare, candidates, 0L, candidates | players, 0);
+                }
+            }
+        }
+    }
+    
+    
+    //Helper which checks no symmetry moves a pair of player squares to a smaller pair (see EndgameTablebase.getCanonicalSymmetry), and notes whether
+    //any symmetry besides the identity leaves the pair where it is - only then does the region decide which image is canonical
+    private boolean isCanonicalPair(int moverSquare, int otherSquare){
+        boolean canonical = true;
+        pairSymmetric = false;
+        for(int i = 1; (i < symmetries.length) && canonical; i++){
+            int mover = symmetries[i][moverSquare];
+            int other = symmetries[i][otherSquare];
+            canonical = (mover > moverSquare) || ((mover == moverSquare) && (other >= otherSquare));
+            pairSymmetric |= (mover == moverSquare) && (other == otherSquare);
+        }
+        return canonical;
+    }
+    
+    
+    //Helper which lists every region which can be grown from the current one by adding candidate squares (Redelmeier's method). Each candidate in turn
+    //is added and then removed from the candidates, so no later branch adds it again - this is what keeps every region from being listed twice. The
+    //squares next to the one just added, and not yet considered in this branch, become new candidates.
+    private void growRegions(int moverSquare, int otherSquare, long candidates, long region, long considered, int regionSquares){
+        while(candidates != 0L){
+            long square = candidates & -candidates;
+            candidates ^= square;
+            long grownRegion = region | square;
+            addPosition(moverSquare, otherSquare, grownRegion, regionSquares + 1);
+            if(regionSquares + 1 < maxRegionSquares){
+                long newCandidates = geometry.expand(square) & geometry.getBoardMask() & ~considered;
+                growRegions(moverSquare, otherSquare, candidates | newCandidates, grownRegion, considered | newCandidates, regionSquares + 1);
+            }
+        }
+    }
+    
+    
+    //Helper which counts or stores one listed position - positions where the player to move is already stuck aren't stored, and neither are positions
+    //whose pair of squares is symmetric but whose region isn't the canonical image
+    private void addPosition(int moverSquare, int otherSquare, long region, int regionSquares){
+        if(((geometry.getAdjacentMask(moverSquare) & region) != 0L)
+                && (!pairSymmetric || (EndgameTablebase.getCanonicalSymmetry(symmetries, moverSquare, otherSquare, region) == 0))){
+            int group = getGroup(regionSquares, moverSquare, otherSquare);
+            if(!counting){
+                regions[groupFill[group]] = region;
+            }
+            groupFill[group]++;
+        }
+    }
+    
+    
+    //Helper which solves one position from the results of the positions its moves lead to, and returns its result
+    private int solve(int moverSquare, int otherSquare, long region){
+        int fastestWin = Integer.MAX_VALUE;
+        int slowestLoss = 0;
+        long moverBit = 1L << moverSquare;
+        for(int direction = 0; direction < BoardGeometry.NUM_DIRECTIONS; direction++){
+            long target = geometry.shift(moverBit, direction) & region;
+            while(target != 0L){ //queen move - keep stepping in this direction until leaving the region
+                int targetSquare = Long.numberOfTrailingZeros(target);
+                long remaining = region & ~target;
+                long nextRegion = EndgameTablebase.getRegion(geometry, otherSquare, remaining, numSquares);
+                nextRegion |= EndgameTablebase.getRegion(geometry, targetSquare, remaining & ~nextRegion, numSquares);
+                int nextResult = lookUp(otherSquare, targetSquare, nextRegion);
+                if(EndgameTablebase.isMoverWin(nextResult)){
+                    slowestLoss = Math.max(slowestLoss, EndgameTablebase.getDistance(nextResult) + 1);
+                }else{
+                    fastestWin = Math.min(fastestWin, EndgameTablebase.getDistance(nextResult) + 1);
+                }
+                target = geometry.shift(target, direction) & region;
+            }
+        }
+        return (fastestWin != Integer.MAX_VALUE) ? EndgameTablebase.makeResult(true, fastestWin) : EndgameTablebase.makeResult(false, slowestLoss);
+    }
+    
+    
+    //Helper which looks up the result of an already solved position by its canonical form - every position a move leads to has been listed, so it must
+    //be found
+    private int lookUp(int moverSquare, int otherSquare, long region){
+        int result = 0; //the player to move is stuck - lost, and the game is already over
+        if((geometry.getAdjacentMask(moverSquare) & region) != 0L){
+            int[] symmetry = symmetries[EndgameTablebase.getCanonicalSymmetry(symmetries, moverSquare, otherSquare, region)];
+            long canonicalRegion = EndgameTablebase.transformRegion(symmetry, region);
+            int group = getGroup(Long.bitCount(region), symmetry[moverSquare], symmetry[otherSquare]);
+            int entry = Arrays.binarySearch(regions, groupStarts[group], groupStarts[group + 1], canonicalRegion);
+            if(entry < 0){
+                throw new IllegalStateException("Position missing from the tablebase: " + moverSquare + " " + otherSquare + " "
+                        + Long.toHexString(region));
+            }
+            result = results[entry] & 0xFF;
+        }
+        return result;
+    }
+    
+    
+    //Helper which builds the minimal perfect hash (see EndgameTablebase) and puts the results in hash order. Each level gets LEVEL_BITS_PER_POSITION bits
+    //for every position still left - the positions which land on a bit of their own are placed in this level, and the rest try again in the next.
+    private void buildHash(){
+        int numEntries = getNumEntries();
+        long[] placed = new long[(numEntries + 63) >>> 6]; //a bit for every position already placed in an earlier level
+        long[][] levels = new long[EndgameTablebase.MAX_LEVELS][];
+        int numLevels = 0;
+        int left = numEntries;
+        while(left > 0){
+            if(numLevels == EndgameTablebase.MAX_LEVELS){
+                throw new IllegalStateException("The tablebase hash couldn't place every position in " + EndgameTablebase.MAX_LEVELS + " levels");
+            }
+            long bitsInLevel = Math.max(64, ((long)Math.ceil(left * LEVEL_BITS_PER_POSITION) + 63) & ~63L);
+            long[] hit = new long[(int)(bitsInLevel >>> 6)];
+            long[] collided = new long[hit.length];
+            for(int pass = 0; pass < 2; pass++){ //first mark every bit landed on (and every bit landed on twice), then place the positions
+                for(int group = 0; group < groupStarts.length - 1; group++){
+                    int pair = EndgameTablebase.getPair(geometry, (group / numSquares) % numSquares, group % numSquares);
+                    for(int entry = groupStarts[group]; entry < groupStarts[group + 1]; entry++){
+                        if((placed[entry >>> 6] & (1L << entry)) == 0L){
+                            long bit = EndgameTablebase.getLevelBit(EndgameTablebase.hashPosition(numLevels, pair, regions[entry]), bitsInLevel);
+                            int word = (int)(bit >>> 6);
+                            long mask = 1L << bit;
+                            if(pass == 0){
+                                collided[word] |= hit[word] & mask;
+                                hit[word] |= mask;
+                            }else if((collided[word] & mask) == 0L){
+                                placed[entry >>> 6] |= 1L << entry;
+                                left--;
+                            }
+                        }
+                    }
+                }
+            }
+            for(int word = 0; word < hit.length; word++){
+                hit[word] &= ~collided[word]; //only the bits exactly one position landed on are kept
+            }
+            levels[numLevels++] = hit;
+        }
+        
+        levelBits = new long[numLevels];
+        int numWords = 0;
+        for(int level = 0; level < numLevels; level++){
+            levelBits[level] = 64L * levels[level].length;
+            numWords += levels[level].length;
+        }
+        hashBits = new long[numWords];
+        int wordStart = 0;
+        for(int level = 0; level < numLevels; level++){
+            System.arraycopy(levels[level], 0, hashBits, wordStart, levels[level].length);
+            wordStart += levels[level].length;
+        }
+        
+        //the place of each position is the number of kept bits before its own
+        int[] blockRanks = new int[EndgameTablebase.getNumRankBlocks(numWords)];
+        int rank = 0;
+        for(int word = 0; word < numWords; word++){
+            if(word % EndgameTablebase.RANK_BLOCK_WORDS == 0){
+                blockRanks[word / EndgameTablebase.RANK_BLOCK_WORDS] = rank;
+            }
+            rank += Long.bitCount(hashBits[word]);
+        }
+        hashResults = new byte[numEntries];
+        for(int group = 0; group < groupStarts.length - 1; group++){
+            int pair = EndgameTablebase.getPair(geometry, (group / numSquares) % numSquares, group % numSquares);
+            for(int entry = groupStarts[group]; entry < groupStarts[group + 1]; entry++){
+                hashResults[getHashRank(blockRanks, pair, regions[entry])] = results[entry];
+            }
+        }
+    }
+    
+    
+    //Helper which finds the place of a listed position in the hash - the same walk through the levels as EndgameTablebase.probe, on the arrays in memory
+    private int getHashRank(int[] blockRanks, int pair, long region){
+        int rank = -1;
+        long levelStart = 0;
+        for(int level = 0; (level < levelBits.length) && (rank < 0); level++){
+            long bit = levelStart + EndgameTablebase.getLevelBit(EndgameTablebase.hashPosition(level, pair, region), levelBits[level]);
+            int word = (int)(bit >>> 6);
+            if(((hashBits[word] >>> (bit & 63)) & 1L) != 0L){
+                int block = word / EndgameTablebase.RANK_BLOCK_WORDS;
+                rank = blockRanks[block] + Long.bitCount(hashBits[word] & ((1L << (bit & 63)) - 1));
+                for(int before = block * EndgameTablebase.RANK_BLOCK_WORDS; before < word; before++){
+                    rank += Long.bitCount(hashBits[before]);
+                }
+            }
+            levelStart += levelBits[level];
+        }
+        return rank;
+    }
+    
+    
+    //Helper which returns the index of the group a position belongs in while building - groups are ordered by region size, then by the square of the
+    //player to move, then by the square of the other player
+    private int getGroup(int regionSquares, int moverSquare, int otherSquare){
+        return (((regionSquares * numSquares) + moverSquare) * numSquares) + otherSquare;
+    }
+    
+    
+    //Writes the solved tablebase to the indicated file
+    public void write(String fileName) throws IOException{
+        EndgameTablebase.write(fileName, geometry, maxRegionSquares, levelBits, hashBits, hashResults);
+    }
+    
+    
+    //getter for the number of positions in the tablebase
+    public int getNumEntries(){
+        return groupStarts[groupStarts.length - 1];
+    }
+    
+}
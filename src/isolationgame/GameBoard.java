@@ -5,28 +5,73 @@
 package isolationgame;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
-//Class which implements the game board state - this includes the representation of the game board itself as a 2D array, and the various methods that can
+//Class which implements the game board state - this includes the representation of the game board itself, and the various methods that can
 //act to change the game board state (moving a player, checking the move coordinates, etc). It also includes the evaluator method to evaluate how good a current
 //player position is (for use by the minimax algorithm).
+//The board can be any size (see BoardGeometry) - the standard game is 8x8. Each square has an index (square index = row * columns + column), and the
+//board is stored as a bitboard where each bit represents one square. A bit is set when the square has been used or is currently occupied by a player, so
+//the set of spaces a player may still move through is simply the inverse of that mask. Each player position is held as a square index.
+//Boards of up to 64 squares (including the standard board) fit in a single long, and move generation, loss checks and mobility counts are all done with
+//shifts and masks on that long. Larger boards are held in an array of longs, and walk the precomputed rays and neighbour lists of their geometry instead.
+//Each board also carries a Zobrist key (an XOR of random numbers for every used square and both player squares, plus a key for the board's shape) which
+//is kept up to date as moves are made and unmade, so the search can identify a position in its transposition table without rebuilding anything.
 public class GameBoard {
-    private final int BOARD_DIMENSION = 8;
-    private Map<String, Integer> rowMap; //maps values A-H to their respective integer values representing the rows
-    private Map<Integer, String> inverseRowMap; //does the opposite of rowMap (mainly for use in printing the board)
-    private int[] playerX; //holds (row,column) coordinates for each player (for ease of access)
-    private int[] playerO;
-    private BoardVals[][] theBoard;
+    public static final int WIN_SCORE = 1000000; //score of a won position (a lost one scores -WIN_SCORE) - far outside the range of any mobility score
     
+    //Zobrist keys - one random number per square for each of "used", "player X here" and "player O here", plus one for player O being the side to move.
+    //A fixed seed is used so the same position always hashes to the same key, even across separate runs of the program. The keys for the first 64 squares
+    //are generated first, so the standard board keeps the same keys whatever the largest supported board is.
+    private static final long ZOBRIST_SEED = 0x15014710AL;
+    private static final long[] USED_KEYS = new long[BoardGeometry.MAX_SQUARES];
+    private static final long[] PLAYER_X_KEYS = new long[BoardGeometry.MAX_SQUARES];
+    private static final long[] PLAYER_O_KEYS = new long[BoardGeometry.MAX_SQUARES];
+    private static final long PLAYER_O_TO_MOVE_KEY;
+    static{
+        Random keyGenerator = new Random(ZOBRIST_SEED);
+        for(int square = 0; square < BoardGeometry.SINGLE_WORD_SQUARES; square++){
+            USED_KEYS[square] = keyGenerator.nextLong();
+            PLAYER_X_KEYS[square] = keyGenerator.nextLong();
+            PLAYER_O_KEYS[square] = keyGenerator.nextLong();
+        }
+        PLAYER_O_TO_MOVE_KEY = keyGenerator.nextLong();
+        for(int square = BoardGeometry.SINGLE_WORD_SQUARES; square < BoardGeometry.MAX_SQUARES; square++){
+            USED_KEYS[square] = keyGenerator.nextLong();
+            PLAYER_X_KEYS[square] = keyGenerator.nextLong();
+            PLAYER_O_KEYS[square] = keyGenerator.nextLong();
+        }
+    }
+    
+    private BoardGeometry geometry; //size of the board, and the tables for moving around it
+    private boolean singleWord; //copied from the geometry since every hot method checks it
+    private int playerXSquare; //holds the square index of each player (for ease of access)
+    private int playerOSquare;
+    private long usedSquares; //bit set for each square which is used or currently occupied by a player (boards of up to 64 squares)
+    private long[] usedWords; //the same for larger boards - square s is bit (s % 64) of word (s / 64). Null for single word boards.
+    private long zobristKey; //hash of the position, updated incrementally whenever a player moves
+    private int[] searchQueue; //scratch space for the flood fill on larger boards - created the first time it's needed
+    private long[] reachedWords;
     
-    //Constructor - takes the starting player so it knows where to position the players (starting player is always upper-left)
+    
+    //Constructor - takes the starting player so it knows where to position the players (starting player is always upper-left). Builds a standard 8x8 board.
     public GameBoard(BoardVals startingPlayer){
-        theBoard = new BoardVals[BOARD_DIMENSION][BOARD_DIMENSION];
-        initMaps();
-        playerX = new int[2];
-        playerO = new int[2];
+        this(startingPlayer, BoardGeometry.STANDARD);
+    }
+    
+    
+    //Constructor for a board of the indicated size (see BoardGeometry.get for the sizes allowed)
+    public GameBoard(BoardVals startingPlayer, int rows, int columns){
+        this(startingPlayer, BoardGeometry.get(rows, columns));
+    }
+    
+    
+    //Constructor for a board with the indicated geometry
+    public GameBoard(BoardVals startingPlayer, BoardGeometry geometry){
+        this.geometry = geometry;
+        singleWord = geometry.isSingleWord();
         //coin flip to see if player X or player O starts
         if(startingPlayer == BoardVals.PLAYER_O){
             initBlankBoard(BoardVals.PLAYER_O);
@@ -42,84 +87,207 @@ public class GameBoard {
     //constructor
     public GameBoard(GameBoard currentBoard, BoardVals playerToMove, GameMove moveToCoords){
         deepCopyBoard(currentBoard);
-        this.rowMap = currentBoard.getRowMap();
-        this.inverseRowMap = currentBoard.getInverseRowMap();
         setPlayerPos(playerToMove, moveToCoords.getRow(), moveToCoords.getColumn());
     }
     
     
-    //Method for deep copying of a specified game board so board arrays are not referencing a different board object
-    private void deepCopyBoard(GameBoard boardToCopy){
-        BoardVals[][] toCopy = boardToCopy.getTheBoard();
-        int[] copyingPlayerX = boardToCopy.getPlayerX();
-        int[] copyingPlayerO = boardToCopy.getPlayerO();
-        this.theBoard = new BoardVals[BOARD_DIMENSION][BOARD_DIMENSION];
-        this.playerO = new int[2];
-        this.playerX = new int[2];
-        
-        for(int i = 0; i < BOARD_DIMENSION; i++){
-            for(int j = 0; j < BOARD_DIMENSION; j++){
-                this.theBoard[i][j] = toCopy[i][j];
+    //Copy constructor - builds an independent board holding the same state as the passed board. The search makes one of these per search and then
+    //plays moves on it in place with makeMove/unmakeMove, so the board passed in by the game is never changed.
+    public GameBoard(GameBoard boardToCopy){
+        deepCopyBoard(boardToCopy);
+    }
+    
+    
+    //Constructor which builds a board straight from its state - the used squares (word i holds squares 64 * i to 64 * i + 63, so boards of up to 64
+    //squares need one word) and the square of each player. The player squares are always marked as used, and bits beyond the last square are ignored.
+    //This is how saved positions are loaded (see PositionCodec). Throws an IllegalArgumentException if there are too few words, a player isn't on the
+    //board, or both players are on the same square.
+    public GameBoard(BoardGeometry geometry, long[] usedWords, int playerXSquare, int playerOSquare){
+        int numSquares = geometry.getNumSquares();
+        if((usedWords.length < geometry.getNumWords()) || (playerXSquare < 0) || (playerXSquare >= numSquares) || (playerOSquare < 0)
+                || (playerOSquare >= numSquares) || (playerXSquare == playerOSquare)){
+            throw new IllegalArgumentException("Not a position on a " + geometry + " board: players on squares " + playerXSquare + " and "
+                    + playerOSquare + " with " + usedWords.length + " words of used squares");
+        }
+        this.geometry = geometry;
+        singleWord = geometry.isSingleWord();
+        if(singleWord){
+            usedSquares = usedWords[0] & geometry.getBoardMask();
+        }else{
+            this.usedWords = new long[geometry.getNumWords()];
+            for(int i = 0; i < this.usedWords.length; i++){
+                this.usedWords[i] = usedWords[i] & geometry.getWordMask(i);
             }
         }
+        this.playerXSquare = playerXSquare;
+        this.playerOSquare = playerOSquare;
+        setUsed(playerXSquare);
+        setUsed(playerOSquare);
         
-        //playerX and playerO have same length - copy both in single loop
-        for(int i = 0; i < boardToCopy.getPlayerO().length; i++){
-            this.playerO[i] = copyingPlayerO[i];
-            this.playerX[i] = copyingPlayerX[i];
+        //the key is built from scratch - one used key for every set bit, plus the two player keys and the shape key
+        zobristKey = geometry.getShapeKey() ^ PLAYER_X_KEYS[playerXSquare] ^ PLAYER_O_KEYS[playerOSquare];
+        for(int word = 0; word < geometry.getNumWords(); word++){
+            long remaining = singleWord ? usedSquares : this.usedWords[word];
+            while(remaining != 0L){
+                zobristKey ^= USED_KEYS[(word << 6) + Long.numberOfTrailingZeros(remaining)];
+                remaining &= remaining - 1;
+            }
         }
-        
+    }
+    
+    
+    //Method for copying the state of a specified game board - with the bitboard representation this is only a handful of primitive values (plus the
+    //word array on larger boards)
+    private void deepCopyBoard(GameBoard boardToCopy){
+        this.geometry = boardToCopy.getGeometry();
+        this.singleWord = geometry.isSingleWord();
+        this.usedSquares = boardToCopy.usedSquares;
+        if(boardToCopy.usedWords != null){
+            this.usedWords = boardToCopy.usedWords.clone();
+        }
+        this.playerXSquare = boardToCopy.getPlayerSquare(BoardVals.PLAYER_X);
+        this.playerOSquare = boardToCopy.getPlayerSquare(BoardVals.PLAYER_O);
+        this.zobristKey = boardToCopy.getZobristKey();
     }
     
     
     //Method used to initialize a new un-played game board (blank board)
     private void initBlankBoard(BoardVals startingPlayer){
-        //set all spaces to blank initially
-        for(int i = 0; i < BOARD_DIMENSION; i++){
-            for(int j = 0; j < BOARD_DIMENSION; j++){
-                theBoard[i][j] = BoardVals.BLANK;
-            }
-        }
+        int lastSquare = geometry.getNumSquares() - 1;
         
         //set player X and O in their respective corners - starting player is always in upper-left corner (0, 0)
         if(startingPlayer == BoardVals.PLAYER_O){
-            playerO[0] = 0;
-            playerO[1] = 0;
-            playerX[0] = (BOARD_DIMENSION - 1);
-            playerX[1] = (BOARD_DIMENSION - 1);
-            theBoard[getPlayerO()[0]][getPlayerO()[1]] = BoardVals.PLAYER_O;
-            theBoard[getPlayerX()[0]][getPlayerX()[1]] = BoardVals.PLAYER_X;
+            playerOSquare = 0;
+            playerXSquare = lastSquare;
+        }else{
+            playerXSquare = 0;
+            playerOSquare = lastSquare;
+        }
+        
+        //all spaces are blank apart from the two starting squares
+        if(!singleWord){
+            usedWords = new long[geometry.getNumWords()];
+        }
+        setUsed(playerXSquare);
+        setUsed(playerOSquare);
+        zobristKey = geometry.getShapeKey() ^ USED_KEYS[playerXSquare] ^ USED_KEYS[playerOSquare] ^ PLAYER_X_KEYS[playerXSquare]
+                ^ PLAYER_O_KEYS[playerOSquare];
+    }
+    
+    
+    //Helpers for reading and changing the used bit of a single square, whichever way the board is stored
+    private boolean isUsed(int square){
+        boolean used;
+        if(singleWord){
+            used = ((usedSquares >>> square) & 1L) != 0L;
+        }else{
+            used = ((usedWords[square >>> 6] >>> square) & 1L) != 0L;
+        }
+        return used;
+    }
+    
+    //marks a square as used
+    private void setUsed(int square){
+        if(singleWord){
+            usedSquares |= (1L << square);
+        }else{
+            usedWords[square >>> 6] |= (1L << square);
+        }
+    }
+    
+    //marks a square as open again
+    private void clearUsed(int square){
+        if(singleWord){
+            usedSquares &= ~(1L << square);
+        }else{
+            usedWords[square >>> 6] &= ~(1L << square);
+        }
+    }
+    
+    
+    //Method which returns a mask of every open square the indicated player could ever reach, however many moves it takes. A queen move only passes through
+    //open squares, so this is a flood fill over open squares, one king step at a time, starting from the players square.
+    //Only for boards of up to 64 squares - collectReachableSquares works on any board.
+    public long getReachableSquares(BoardVals player){
+        long openSquares = ~usedSquares & geometry.getBoardMask();
+        long reachable = 0L;
+        long frontier = geometry.getAdjacentMask(getPlayerSquare(player)) & openSquares;
+        while(frontier != 0L){
+            reachable |= frontier;
+            frontier = geometry.expand(frontier) & openSquares & ~reachable;
+        }
+        return reachable;
+    }
+    
+    
+    //Method which writes the index of every open square the indicated player could ever reach into the passed buffer (which must hold
+    //getGeometry().getNumSquares() squares) and returns how many there are
+    public int collectReachableSquares(BoardVals player, int[] squareBuffer){
+        int numSquares = 0;
+        if(singleWord){
+            long reachable = getReachableSquares(player);
+            while(reachable != 0L){
+                squareBuffer[numSquares] = Long.numberOfTrailingZeros(reachable);
+                numSquares++;
+                reachable &= reachable - 1;
+            }
+        }else{
+            numSquares = floodFill(getPlayerSquare(player));
+            System.arraycopy(searchQueue, 0, squareBuffer, 0, numSquares);
+        }
+        return numSquares;
+    }
+    
+    
+    //Helper for larger boards - breadth-first flood fill over open squares from the neighbours of the indicated square. The squares reached are left in
+    //searchQueue and marked in reachedWords, and the number reached is returned.
+    private int floodFill(int startSquare){
+        if(searchQueue == null){
+            searchQueue = new int[geometry.getNumSquares()];
+            reachedWords = new long[geometry.getNumWords()];
+        }
+        for(int i = 0; i < reachedWords.length; i++){
+            reachedWords[i] = 0L;
+        }
+        
+        int queueEnd = 0;
+        for(int adjacent : geometry.getAdjacentSquares(startSquare)){
+            if(!isUsed(adjacent)){
+                reachedWords[adjacent >>> 6] |= (1L << adjacent);
+                searchQueue[queueEnd] = adjacent;
+                queueEnd++;
+            }
+        }
+        for(int next = 0; next < queueEnd; next++){
+            for(int adjacent : geometry.getAdjacentSquares(searchQueue[next])){
+                if(!isUsed(adjacent) && (((reachedWords[adjacent >>> 6] >>> adjacent) & 1L) == 0L)){
+                    reachedWords[adjacent >>> 6] |= (1L << adjacent);
+                    searchQueue[queueEnd] = adjacent;
+                    queueEnd++;
+                }
+            }
+        }
+        return queueEnd;
+    }
+    
+    
+    //Method which returns true if the players have been walled off from each other - no open square can be reached by both of them. From then on
+    //neither player can get in the others way, so the game is decided purely by who can make the longer walk in their own region (see EndgameSolver).
+    public boolean isPartitioned(){
+        boolean partitioned = true;
+        if(singleWord){
+            partitioned = (getReachableSquares(BoardVals.PLAYER_X) & getReachableSquares(BoardVals.PLAYER_O)) == 0L;
         }else{
-            playerX[0] = 0;
-            playerX[1] = 0;
-            playerO[0] = (BOARD_DIMENSION - 1);
-            playerO[1] = (BOARD_DIMENSION - 1);
-            theBoard[getPlayerO()[0]][getPlayerO()[1]] = BoardVals.PLAYER_O;
-            theBoard[getPlayerX()[0]][getPlayerX()[1]] = BoardVals.PLAYER_X;
-        }
-    }
-    
-    
-    //Method used by constructors to initialize the game maps
-    private void initMaps(){
-        rowMap = new HashMap();
-        inverseRowMap = new HashMap();
-        getRowMap().put("A", 0);
-        getRowMap().put("B", 1);
-        getRowMap().put("C", 2);
-        getRowMap().put("D", 3);
-        getRowMap().put("E", 4);
-        getRowMap().put("F", 5);
-        getRowMap().put("G", 6);
-        getRowMap().put("H", 7);
-        getInverseRowMap().put(0, "A");
-        getInverseRowMap().put(1, "B");
-        getInverseRowMap().put(2, "C");
-        getInverseRowMap().put(3, "D");
-        getInverseRowMap().put(4, "E");
-        getInverseRowMap().put(5, "F");
-        getInverseRowMap().put(6, "G");
-        getInverseRowMap().put(7, "H");
+            //the reachable squares are whole connected areas of open squares, so the regions only meet if player O is next to an open square player X
+            //can reach
+            floodFill(playerXSquare);
+            for(int adjacent : geometry.getAdjacentSquares(playerOSquare)){
+                if(((reachedWords[adjacent >>> 6] >>> adjacent) & 1L) != 0L){
+                    partitioned = false;
+                }
+            }
+        }
+        return partitioned;
     }
     
     
@@ -127,7 +295,9 @@ public class GameBoard {
     //to determine the value of the current board state represented by this GameBoard object.
     //In this case, the players position is evaluated as a measure of the possible moves they have from their current position minus
     //the number of moves available to their opponent. The opponents moves are multiplied by 2 to reflect the desire of the player to maximize
-    //their own moves available while minimizing their opponents.
+    //their own moves available while minimizing their opponents. A player who can't move scores -WIN_SCORE, and one whose opponent can't move WIN_SCORE -
+    //the scores are symmetric so the search can simply negate them.
+    //A player with no moves has no open square next to them, so the move counts double as the loss checks - each player's moves are only counted once.
     public int evaluatePlayerPosition(BoardVals player){
         int score;
         BoardVals opponent;
@@ -137,95 +307,129 @@ public class GameBoard {
             opponent = BoardVals.PLAYER_O;
         }
         
-        if(checkIfPlayerLose(player)){
-            score = Integer.MIN_VALUE;
-        }else if(checkIfPlayerLose(opponent)){
-            score = Integer.MAX_VALUE;
+        int playerMoves = countPossibleMoves(player);
+        if(playerMoves == 0){
+            score = -WIN_SCORE;
         }else{
-            List<GameMove> playerMoves = getPossibleMoves(player);
-            List<GameMove> opponentMoves = getPossibleMoves(opponent);
-            score = playerMoves.size() - (2 * opponentMoves.size());
+            int opponentMoves = countPossibleMoves(opponent);
+            if(opponentMoves == 0){
+                score = WIN_SCORE;
+            }else{
+                score = getMobilityScore(playerMoves, opponentMoves);
+            }
         }
-
+        
         return score;
     }
     
     
-    //Method to get all of the possible legal moves that an indicated player could make
-    //This method does NOT use the "validatePlayerMove" method because it would be less efficient that way 
-    //(rechecking spaces multiple times unnecessarily)
-    public List<GameMove> getPossibleMoves(BoardVals player){
-        List<GameMove> possibleMoves = new ArrayList<>();
-        int playerCurrentRow;
-        int playerCurrentCol;
-        if(player == BoardVals.PLAYER_O){
-            playerCurrentRow = getPlayerO()[0];
-            playerCurrentCol = getPlayerO()[1];
-        }else{
-            playerCurrentRow = getPlayerX()[0];
-            playerCurrentCol = getPlayerX()[1];
+    //Method giving the mobility score of a position where neither player has lost, from the number of moves each player has
+    public static int getMobilityScore(int playerMoves, int opponentMoves){
+        return playerMoves - (2 * opponentMoves);
+    }
+    
+    
+    //Method to get a mask of every square the indicated player could legally move to. Each of the eight queen rays is walked by repeatedly shifting
+    //the players own bit in that direction and keeping only the bits that land on open (unused) squares - the ray ends at the first used square.
+    //Only for boards of up to 64 squares - isLegalMove works on any board.
+    public long getPossibleMoveSquares(BoardVals player){
+        long openSquares = ~usedSquares & geometry.getBoardMask();
+        long playerBit = 1L << getPlayerSquare(player);
+        long moveSquares = 0L;
+        
+        for(int direction = 0; direction < BoardGeometry.NUM_DIRECTIONS; direction++){
+            long ray = geometry.shift(playerBit, direction) & openSquares;
+            while(ray != 0L){
+                moveSquares |= ray;
+                ray = geometry.shift(ray, direction) & openSquares;
+            }
         }
         
-        //get vertical moves
-        int checkRow = playerCurrentRow - 1;
-        //check movement up
-        while((checkRow >= 0) && checkSpace(checkRow, playerCurrentCol)){
-            possibleMoves.add(new GameMove(checkRow, playerCurrentCol, player));
-            checkRow--;
-        }
-        //check movement down
-        checkRow = playerCurrentRow + 1;
-        while((checkRow < BOARD_DIMENSION) && checkSpace(checkRow, playerCurrentCol)){
-            possibleMoves.add(new GameMove(checkRow, playerCurrentCol, player));
-            checkRow++;
+        return moveSquares;
+    }
+    
+    
+    //Method which returns true if the indicated player can legally move to the indicated square
+    public boolean isLegalMove(BoardVals player, int square){
+        boolean legal = false;
+        if((square >= 0) && (square < geometry.getNumSquares())){
+            if(singleWord){
+                legal = ((getPossibleMoveSquares(player) >>> square) & 1L) != 0L;
+            }else{
+                int playerSquare = getPlayerSquare(player);
+                for(int direction = 0; (direction < BoardGeometry.NUM_DIRECTIONS) && !legal; direction++){
+                    int[] ray = geometry.getRay(playerSquare, direction);
+                    for(int i = 0; (i < ray.length) && !isUsed(ray[i]) && !legal; i++){
+                        legal = (ray[i] == square);
+                    }
+                }
+            }
         }
+        return legal;
+    }
+    
+    
+    //Method to count the legal moves available to a player without building a move list - allocates nothing, so it's what the evaluator uses at every leaf
+    public int countPossibleMoves(BoardVals player){
+        int numMoves = 0;
+        if(singleWord){
+            numMoves = Long.bitCount(getPossibleMoveSquares(player));
+        }else{
+            int playerSquare = getPlayerSquare(player);
+            for(int direction = 0; direction < BoardGeometry.NUM_DIRECTIONS; direction++){
+                int[] ray = geometry.getRay(playerSquare, direction);
+                int i = 0;
+                while((i < ray.length) && !isUsed(ray[i])){
+                    i++;
+                }
+                numMoves += i;
+            }
+        }
+        return numMoves;
+    }
+    
+    
+    //Allocation-free move generator for the search - writes every legal move of the indicated player into the passed buffer as packed ints (see
+    //PackedMove), in the same order as getPossibleMoves, and returns how many moves were written. The buffer must hold at least getMaxMoves() moves.
+    public int generateMoves(BoardVals player, int[] moveBuffer){
+        int numMoves = 0;
+        int playerSquare = getPlayerSquare(player);
+        int moveBase = PackedMove.pack(playerSquare, 0, player);
         
-        //get horizontal moves
-        int checkCol = playerCurrentCol - 1;
-        //check movement left
-        while((checkCol >= 0) && checkSpace(playerCurrentRow, checkCol)){
-            possibleMoves.add(new GameMove(playerCurrentRow, checkCol, player));
-            checkCol--;
-        }
-        //check movement right
-        checkCol = playerCurrentCol + 1;
-        while((checkCol < BOARD_DIMENSION) && checkSpace(playerCurrentRow, checkCol)){
-            possibleMoves.add(new GameMove(playerCurrentRow, checkCol, player));
-            checkCol++;
+        if(singleWord){
+            long openSquares = ~usedSquares & geometry.getBoardMask();
+            long playerBit = 1L << playerSquare;
+            for(int direction = 0; direction < BoardGeometry.NUM_DIRECTIONS; direction++){
+                long ray = geometry.shift(playerBit, direction) & openSquares;
+                while(ray != 0L){
+                    moveBuffer[numMoves] = moveBase | Long.numberOfTrailingZeros(ray);
+                    numMoves++;
+                    ray = geometry.shift(ray, direction) & openSquares;
+                }
+            }
+        }else{
+            for(int direction = 0; direction < BoardGeometry.NUM_DIRECTIONS; direction++){
+                int[] ray = geometry.getRay(playerSquare, direction);
+                for(int i = 0; (i < ray.length) && !isUsed(ray[i]); i++){
+                    moveBuffer[numMoves] = moveBase | ray[i];
+                    numMoves++;
+                }
+            }
         }
         
-        //get diagonal moves
-        //up and left
-        checkRow = playerCurrentRow - 1;
-        checkCol = playerCurrentCol - 1;
-        while((checkRow >= 0) && (checkCol >= 0) && checkSpace(checkRow, checkCol)){
-            possibleMoves.add(new GameMove(checkRow, checkCol, player));
-            checkRow--;
-            checkCol--;
-        }
-        //up and right
-        checkRow = playerCurrentRow - 1;
-        checkCol = playerCurrentCol + 1;
-        while((checkRow >= 0) && (checkCol < BOARD_DIMENSION) && checkSpace(checkRow, checkCol)){
-            possibleMoves.add(new GameMove(checkRow, checkCol, player));
-            checkRow--;
-            checkCol++;
-        }
-        //down and right
-        checkRow = playerCurrentRow + 1;
-        checkCol = playerCurrentCol + 1;
-        while((checkRow < BOARD_DIMENSION) && (checkCol < BOARD_DIMENSION) && checkSpace(checkRow, checkCol)){
-            possibleMoves.add(new GameMove(checkRow, checkCol, player));
-            checkRow++;
-            checkCol++;
-        }
-        //down and left
-        checkRow = playerCurrentRow + 1;
-        checkCol = playerCurrentCol - 1;
-        while((checkRow < BOARD_DIMENSION) && (checkCol >= 0) && checkSpace(checkRow, checkCol)){
-            possibleMoves.add(new GameMove(checkRow, checkCol, player));
-            checkRow++;
-            checkCol--;
+        return numMoves;
+    }
+    
+    
+    //Method to get all of the possible legal moves that an indicated player could make
+    //Moves are listed ray by ray (up, down, left, right, then the diagonals), nearest square first, which is the order the search has always seen them in
+    public List<GameMove> getPossibleMoves(BoardVals player){
+        List<GameMove> possibleMoves = new ArrayList<>();
+        int[] moves = new int[getMaxMoves()];
+        int numMoves = generateMoves(player, moves);
+        for(int i = 0; i < numMoves; i++){
+            int square = PackedMove.getToSquare(moves[i]);
+            possibleMoves.add(new GameMove(geometry.squareRow(square), geometry.squareColumn(square), player));
         }
         
         return possibleMoves;
@@ -233,101 +437,13 @@ public class GameBoard {
     
     
     //Method to be used when moving a player piece from one place on the board to another (checks validity of move - returns true if move is valid)
+    //A move is valid if it's on the board and lands on one of the squares the players queen rays can reach - staying in place is never valid since
+    //the players own square is always marked as used.
     private boolean validatePlayerMove(BoardVals player, int row, int column){
-        boolean validMove = true;
-        int playerCurrentRow;
-        int playerCurrentCol;
-        //get the current row and column of the indicated player for use in this method
-        if(player == BoardVals.PLAYER_O){
-            playerCurrentRow = getPlayerO()[0];
-            playerCurrentCol = getPlayerO()[1];
-        }else{
-            playerCurrentRow = getPlayerX()[0];
-            playerCurrentCol = getPlayerX()[1];
-        }
+        boolean validMove = false;
         
-        if((playerCurrentRow == row) && (playerCurrentCol == column)){ //it's invalid to attempt to stay in the same position!
-            validMove = false;
-        }else if(!checkInBounds(row, column)){ //check bounds - move outside board bounds is invalid
-            validMove = false;
-        }else if(row == playerCurrentRow){ //horizontal movement
-            if(playerCurrentCol > column){ //decrement - move left
-                for(int i = (playerCurrentCol - 1); i >= column; i--){
-                    if(!checkSpace(playerCurrentRow, i)){
-                        validMove = false;
-                        break;
-                    }
-                }
-            }else{ //increment - move right
-                for(int i = (playerCurrentCol + 1); i <= column; i++){
-                    if(!checkSpace(playerCurrentRow, i)){
-                        validMove = false;
-                        break;
-                    }
-                }
-            }
-        }else if(column == playerCurrentCol){ //vertical movement
-            if(playerCurrentRow > row){ //decrement - move up
-                for(int i = (playerCurrentRow - 1); i >= row; i--){
-                    if(!checkSpace(i, playerCurrentCol)){
-                        validMove = false;
-                        break;
-                    }
-                }
-            }else{ //increment - move down
-                for(int i = (playerCurrentRow + 1); i <= row; i++){
-                    if(!checkSpace(i, playerCurrentCol)){
-                        validMove = false;
-                        break;
-                    }
-                }
-            }
-        }else if(Math.abs(playerCurrentRow - row) == Math.abs(playerCurrentCol - column)){ //Note that points are on a diagonal if the row and column differences between the two are the same
-            int spacesToMove = Math.abs(playerCurrentRow - row); //diagonally moved spaces are equal to absolute value of both column and row distance
-            int checkRow = playerCurrentRow;
-            int checkCol = playerCurrentCol;
-            
-            if((playerCurrentRow > row) && (playerCurrentCol > column)){ //decrement both - move up and left
-                for(int i = spacesToMove; i > 0; i--){
-                    checkRow--;
-                    checkCol--;
-                    if(!checkSpace(checkRow, checkCol)){
-                        validMove = false;
-                        break;
-                    }
-                }
-            }else if((playerCurrentRow > row) && (playerCurrentCol < column)){ //decrement row, increment column - move up and right
-                for(int i = spacesToMove; i > 0; i--){
-                    checkRow--;
-                    checkCol++;
-                    if(!checkSpace(checkRow, checkCol)){
-                        validMove = false;
-                        break;
-                    }
-                }
-            }else if((playerCurrentRow < row) && (playerCurrentCol < column)){ //increment both - move down and right
-                for(int i = spacesToMove; i > 0; i--){
-                    checkRow++;
-                    checkCol++;
-                    if(!checkSpace(checkRow, checkCol)){
-                        validMove = false;
-                        break;
-                    }
-                }
-            }else if((playerCurrentRow < row) && (playerCurrentCol > column)){ //increment row, decrement column - move down and left
-                for(int i = spacesToMove; i > 0; i--){
-                    checkRow++;
-                    checkCol--;
-                    if(!checkSpace(checkRow, checkCol)){
-                        validMove = false;
-                        break;
-                    }
-                }
-            }else{
-                validMove = false; //catch-all for something going wrong! In theory this should never be reached
-            }
-        }else{
-            validMove = false; //if it's not vertical, horizontal, or diagonal movement, it's automatically non-valid
+        if(checkInBounds(row, column)){
+            validMove = isLegalMove(player, geometry.toSquare(row, column));
         }
         
         return validMove;
@@ -337,56 +453,87 @@ public class GameBoard {
     //Helper method to check a specified board space to see if it's currently occupied by a player, or has already been used
     //returns true if the space is marked "blank" (unused), false otherwise
     private boolean checkSpace(int row, int column){
-        boolean spaceEmpty = true;
-        
-        if(theBoard[row][column] != BoardVals.BLANK){
-            spaceEmpty = false;
-        }
-        
-        return spaceEmpty;
+        return !isUsed(geometry.toSquare(row, column));
     }
     
     
     //Method which returns true if indicated coordinates are in board bounds, false otherwise
     private boolean checkInBounds(int row, int column){
-        boolean inBounds = true;
-        if((row >= BOARD_DIMENSION) || (row < 0) || (column >= BOARD_DIMENSION) || (column < 0)){
-            inBounds = false;
-        }
-        return inBounds;
+        return geometry.isInBounds(row, column);
     }
     
     
     //Method which sets a new position for the indicated player on the board while also marking their old position as used.
     //Only to be called by the program once the coordinates are deemed valid (hence private access)
+    //The old square is already set in the used mask (it was occupied), so only the new square needs to be added - makeMove does exactly that.
     private void setPlayerPos(BoardVals player, int row, int column){
+        makeMove(player, geometry.toSquare(row, column));
+    }
+    
+    
+    //Method which moves a player to the indicated square in place - used by the search to walk the game tree on a single board instead of building a
+    //new board for every node. Returns the square the player moved from, which must be handed back to unmakeMove to take the move back.
+    //NOTE: Like the copying constructor, the square is NOT CHECKED HERE - only pass squares taken from the move generator
+    public int makeMove(BoardVals player, int square){
+        int fromSquare = getPlayerSquare(player);
         if(player == BoardVals.PLAYER_O){
-            theBoard[getPlayerO()[0]][getPlayerO()[1]] = BoardVals.USED; //set players old location to "used"
-            playerO[0] = row;
-            playerO[1] = column;
-            theBoard[row][column] = BoardVals.PLAYER_O;
+            playerOSquare = square;
+            zobristKey ^= PLAYER_O_KEYS[fromSquare] ^ PLAYER_O_KEYS[square];
         }else{
-            theBoard[getPlayerX()[0]][getPlayerX()[1]] = BoardVals.USED; //set players old location to "used"
-            playerX[0] = row;
-            playerX[1] = column;
-            theBoard[row][column] = BoardVals.PLAYER_X;
+            playerXSquare = square;
+            zobristKey ^= PLAYER_X_KEYS[fromSquare] ^ PLAYER_X_KEYS[square];
+        }
+        setUsed(square);
+        zobristKey ^= USED_KEYS[square];
+        return fromSquare;
+    }
+    
+    
+    //Convenience version of makeMove taking a GameMove (as produced by getPossibleMoves)
+    public int makeMove(GameMove move){
+        return makeMove(move.getPlayer(), geometry.toSquare(move.getRow(), move.getColumn()));
+    }
+    
+    
+    //Versions of makeMove/unmakeMove for packed moves - since a packed move already holds its starting square, nothing needs to be kept to unmake it
+    public void makePackedMove(int move){
+        makeMove(PackedMove.getPlayer(move), PackedMove.getToSquare(move));
+    }
+    
+    //takes back a packed move made with makePackedMove
+    public void unmakePackedMove(int move){
+        unmakeMove(PackedMove.getPlayer(move), PackedMove.getFromSquare(move));
+    }
+    
+    
+    //Method which takes back the last move made by the indicated player - the square they're standing on is cleared and they're put back on the
+    //square that makeMove returned. Moves must be unmade in the reverse order they were made.
+    public void unmakeMove(BoardVals player, int fromSquare){
+        int square = getPlayerSquare(player);
+        clearUsed(square);
+        zobristKey ^= USED_KEYS[square];
+        if(player == BoardVals.PLAYER_O){
+            playerOSquare = fromSquare;
+            zobristKey ^= PLAYER_O_KEYS[square] ^ PLAYER_O_KEYS[fromSquare];
+        }else{
+            playerXSquare = fromSquare;
+            zobristKey ^= PLAYER_X_KEYS[square] ^ PLAYER_X_KEYS[fromSquare];
         }
     }
     
     
     //Publicly accessible method for moving a player piece - calls appropriate private methods to validate move and then make the move if it's valid.
-    //returns true if the move was made, false otherwise. 
+    //returns true if the move was made, false otherwise.
     //NOTE: Method must accept column values in 1 based (for user input) - decrement values here before operating on them to compare to
     //stored row and column values (which are 0 based)
     public boolean attemptToMove(BoardVals player, String row, int column){
-        boolean moveMade = true;
-        int mappedRow = getRowMap().get(row);
+        boolean moveMade = false;
+        Integer mappedRow = getRowMap().get(row);
         column--;
         
-        if(validatePlayerMove(player, mappedRow, column)){
+        if((mappedRow != null) && validatePlayerMove(player, mappedRow, column)){
             setPlayerPos(player, mappedRow, column);
-        }else{
-            moveMade = false;
+            moveMade = true;
         }
         
         return moveMade;
@@ -396,88 +543,176 @@ public class GameBoard {
     //Method which checks to see if there is at least 1 empty space around the indicated player - player only loses if all adjacent spaces are
     //out of bounds or already used/occupied. Returns true if the indicated player cannot move (has lost) and false otherwise.
     public boolean checkIfPlayerLose(BoardVals player){
-        boolean playerLost = true;
-        int[] thePlayer;
-        if(player == BoardVals.PLAYER_O){
-            thePlayer = getPlayerO();
+        boolean lost = true;
+        int playerSquare = getPlayerSquare(player);
+        if(singleWord){
+            lost = (geometry.getAdjacentMask(playerSquare) & ~usedSquares) == 0L;
         }else{
-            thePlayer = getPlayerX();
-        }
-        
-        for(int i = -1; i <= 1; i++){ //check rows from current - 1 to current + 1
-            for(int j = -1; j <= 1; j++){ //check columns from current - 1 to current + 1
-                if((i == 0) && (j == 0)){
-                    continue; //ignore space where player currently is located
-                }
-                int rowToCheck = thePlayer[0] + i;
-                int colToCheck = thePlayer[1] + j;
-                
-                if(checkInBounds(rowToCheck, colToCheck) && (getTheBoard()[rowToCheck][colToCheck] == BoardVals.BLANK)){
-                    playerLost = false;
+            for(int adjacent : geometry.getAdjacentSquares(playerSquare)){
+                if(!isUsed(adjacent)){
+                    lost = false;
                     break;
                 }
             }
-            if(!playerLost){ //if "playerLost" is set to false, don't need to do any more checking, so end outer loop
-                break;
-            }
         }
-        
-        return playerLost;
+        return lost;
+    }
+    
+    
+    //Method which returns the board value held at the indicated coordinates
+    private BoardVals getSpaceValue(int row, int column){
+        BoardVals value;
+        int square = geometry.toSquare(row, column);
+        if(square == playerXSquare){
+            value = BoardVals.PLAYER_X;
+        }else if(square == playerOSquare){
+            value = BoardVals.PLAYER_O;
+        }else if(checkSpace(row, column)){
+            value = BoardVals.BLANK;
+        }else{
+            value = BoardVals.USED;
+        }
+        return value;
     }
     
     
     //Method which returns a string representing the current state of the board
+    //Row labels and column numbers are generated for the board size - on boards with two-digit column numbers every square is two characters wide
     public String printBoard(){
         StringBuilder boardVisual = new StringBuilder();
-        boardVisual.append("  1 2 3 4 5 6 7 8\n");
-        for(int i = 0; i < BOARD_DIMENSION; i++){
-            boardVisual.append(getInverseRowMap().get(i) + " ");
-            for(int j = 0; j < BOARD_DIMENSION; j++){
-                switch(getTheBoard()[i][j]){
+        int labelWidth = geometry.getRowLabel(geometry.getRows() - 1).length();
+        int squareWidth = String.valueOf(geometry.getColumns()).length();
+        
+        appendPadded(boardVisual, "", labelWidth, false);
+        for(int j = 0; j < geometry.getColumns(); j++){
+            boardVisual.append(" ");
+            appendPadded(boardVisual, String.valueOf(j + 1), squareWidth, true);
+        }
+        boardVisual.append("\n");
+        for(int i = 0; i < geometry.getRows(); i++){
+            appendPadded(boardVisual, geometry.getRowLabel(i), labelWidth, false);
+            boardVisual.append(" ");
+            for(int j = 0; j < geometry.getColumns(); j++){
+                String symbol;
+                switch(getSpaceValue(i, j)){
                     case BLANK:
-                        boardVisual.append("- ");
+                        symbol = "-";
                         break;
                     case USED:
-                        boardVisual.append("# ");
+                        symbol = "#";
                         break;
                     case PLAYER_X:
-                        boardVisual.append("X ");
+                        symbol = "X";
                         break;
-                    case PLAYER_O:
-                        boardVisual.append("O ");
+                    default: //PLAYER_O
+                        symbol = "O";
                         break;
                 }
+                appendPadded(boardVisual, symbol, squareWidth, true);
+                boardVisual.append(" ");
             }
             boardVisual.append("\n");
         }
         
         return boardVisual.toString();
     }
-
+    
+    
+    //Helper for printBoard which appends text padded with spaces to the indicated width, on the left (right aligned) or on the right
+    private static void appendPadded(StringBuilder builder, String text, int width, boolean rightAlign){
+        if(!rightAlign){
+            builder.append(text);
+        }
+        for(int i = text.length(); i < width; i++){
+            builder.append(' ');
+        }
+        if(rightAlign){
+            builder.append(text);
+        }
+    }
+    
     
     //Getters for all of the various game attributes
     //rowmap getter
     public Map<String, Integer> getRowMap() {
-        return rowMap;
+        return geometry.getRowMap();
     }
-
+    
     //inverse rowmap getter
     public Map<Integer, String> getInverseRowMap() {
-        return inverseRowMap;
+        return geometry.getInverseRowMap();
     }
-
+    
+    //getter for the board geometry (size, square numbering and labels)
+    public BoardGeometry getGeometry() {
+        return geometry;
+    }
+    
     //getter for playerX coordinates
     public int[] getPlayerX() {
-        return playerX;
+        return new int[]{geometry.squareRow(playerXSquare), geometry.squareColumn(playerXSquare)};
     }
-
+    
     //getter for playerO coordinates
     public int[] getPlayerO() {
-        return playerO;
+        return new int[]{geometry.squareRow(playerOSquare), geometry.squareColumn(playerOSquare)};
     }
-
-    //getter for the board array
+    
+    //getter for the most moves a player can ever have on this board (the longest a queen's four lines can be) - the size needed for a generateMoves buffer
+    public int getMaxMoves() {
+        return geometry.getMaxMoves();
+    }
+    
+    //getter for the square index of the indicated player
+    public int getPlayerSquare(BoardVals player) {
+        int square;
+        if(player == BoardVals.PLAYER_O){
+            square = playerOSquare;
+        }else{
+            square = playerXSquare;
+        }
+        return square;
+    }
+    
+    //getter for the mask of used/occupied squares (boards of up to 64 squares only)
+    public long getUsedSquares() {
+        return usedSquares;
+    }
+    
+    //getter for the open squares of a larger board - writes the mask of unused squares into the passed array (which must hold getNumWords() longs)
+    public void getOpenWords(long[] openWords) {
+        for(int i = 0; i < usedWords.length; i++){
+            openWords[i] = ~usedWords[i] & geometry.getWordMask(i);
+        }
+    }
+    
+    //getter for whether a square has been used or is occupied
+    public boolean isSquareUsed(int square) {
+        return isUsed(square);
+    }
+    
+    //getter for the Zobrist key of the current position (not including whose turn it is)
+    public long getZobristKey() {
+        return zobristKey;
+    }
+    
+    //getter for the Zobrist key of the current position with the indicated player to move - this is the key to use for transposition table lookups
+    public long getZobristKey(BoardVals playerToMove) {
+        long key = zobristKey;
+        if(playerToMove == BoardVals.PLAYER_O){
+            key ^= PLAYER_O_TO_MOVE_KEY;
+        }
+        return key;
+    }
+    
+    //getter for the board as an array - this is built from the bitboard on every call, so it's only meant for display and debugging
     public BoardVals[][] getTheBoard() {
+        BoardVals[][] theBoard = new BoardVals[geometry.getRows()][geometry.getColumns()];
+        for(int i = 0; i < geometry.getRows(); i++){
+            for(int j = 0; j < geometry.getColumns(); j++){
+                theBoard[i][j] = getSpaceValue(i, j);
+            }
+        }
         return theBoard;
     }
     
@@ -0,0 +1,461 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+//Append-only record of finished games, kept in a binary file so every game played can be used later (self-play data, opening books, tuning).
+//Games are written through memory mapped chunks of the file, so recording a game is only a handful of byte stores into memory - no system call. Getting
+//it onto the disk is batched: a background thread forces whatever has been written since the last flush every flush interval, so no game ever waits on
+//the disk. The header's count of the games is only moved on once the games it counts have been forced, so after a crash the header never claims games
+//that didn't make it to the disk (the games recorded since the last flush are lost). The same thread maps the next chunk of the file before it's
+//needed, so moving on to a new chunk doesn't hold up a game either.
+//File layout: a 32 byte header (magic, version, chunk size, end of the games, number of games), then the games. Each game is a 5 byte record header -
+//a marker byte, rows, columns, flags (who moved first and the winner) and the number of moves - followed by one byte per move holding the destination
+//square, with the moves alternating from the first player. Boards of up to 256 squares can be recorded. A game never straddles two chunks - if it
+//doesn't fit in what's left of a chunk, a zero byte marks the rest of the chunk as unused and the game starts the next chunk. The file is grown a whole
+//chunk at a time, so the header's end of games (not the file size) is where the games end.
+//The Reader streams the games back out of the file, reading each one straight from a read only mapping without copying it.
+//Usage: GameJournal FILE [-print N] [-check]
+//  -print N       print the first N games as move lists (the format BatchAnalyzer reads)
+//  -check         replay every game to check all of its moves are legal
+public class GameJournal implements Closeable {
+    public static final int MAX_SQUARES = 256; //every square index must fit in one byte
+    public static final long DEFAULT_FLUSH_MILLIS = 1000;
+    private static final long MAGIC = 0x49534F4C4A524E4CL; //"ISOLJRNL"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 32;
+    private static final int VERSION_OFFSET = 8;
+    private static final int CHUNK_SIZE_OFFSET = 12;
+    private static final int GAMES_END_OFFSET = 16;
+    private static final int NUM_GAMES_OFFSET = 24;
+    private static final int DEFAULT_CHUNK_SIZE = 1 << 24; //16MB
+    private static final int RECORD_HEADER_SIZE = 5;
+    private static final byte RECORD_MARKER = (byte)0xA5; //first byte of every game - a zero byte instead means the rest of the chunk is unused
+    private static final int FIRST_PLAYER_O_FLAG = 1;
+    private static final int WINNER_X_FLAG = 2;
+    private static final int WINNER_O_FLAG = 4;
+    private final FileChannel channel;
+    private final MappedByteBuffer fileHeader;
+    private final int chunkSize;
+    private final List<MappedByteBuffer> unflushedChunks; //chunks filled since the last flush, apart from the current one
+    private final ScheduledExecutorService flushThread; //null if flushing is left to the caller
+    private final Object flushLock = new Object(); //held for a whole flush, so the header is only ever moved forwards
+    private MappedByteBuffer chunk; //the chunk games are currently written to
+    private MappedByteBuffer nextChunk; //the chunk after it, once the flush thread has mapped it (null until then)
+    private long chunkStart; //file offset of the current chunk
+    private long gamesEnd; //file offset just past the last game
+    private long numGames;
+    private long unflushedGames;
+    private boolean closed;
+    
+    
+    //Constructor - opens the journal file, creating it if it doesn't exist, and flushes it to the disk every flushIntervalMillis milliseconds (0 or less
+    //to only flush when flush or close is called). New games are added after any already in the file.
+    public GameJournal(Path file, long flushIntervalMillis) throws IOException{
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        boolean newFile = (channel.size() == 0);
+        fileHeader = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_HEADER_SIZE);
+        if(newFile){
+            fileHeader.putLong(0, MAGIC);
+            fileHeader.putInt(VERSION_OFFSET, VERSION);
+            fileHeader.putInt(CHUNK_SIZE_OFFSET, DEFAULT_CHUNK_SIZE);
+            fileHeader.putLong(GAMES_END_OFFSET, FILE_HEADER_SIZE);
+            fileHeader.putLong(NUM_GAMES_OFFSET, 0);
+        }else{
+            checkHeader(fileHeader, file);
+        }
+        chunkSize = fileHeader.getInt(CHUNK_SIZE_OFFSET);
+        gamesEnd = fileHeader.getLong(GAMES_END_OFFSET);
+        numGames = fileHeader.getLong(NUM_GAMES_OFFSET);
+        chunkStart = gamesEnd - (gamesEnd % chunkSize);
+        chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkStart, chunkSize);
+        unflushedChunks = new ArrayList<>();
+        
+        if(flushIntervalMillis > 0){
+            flushThread = Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
+                @Override
+                public Thread newThread(Runnable task){
+                    Thread flusher = new Thread(task, "GameJournal-flush");
+                    flusher.setDaemon(true);
+                    return flusher;
+                }
+            });
+            flushThread.scheduleWithFixedDelay(new Runnable(){
+                @Override
+                public void run(){
+                    try{
+                        flush();
+                        mapNextChunk();
+                    }catch(IOException e){
+                        System.out.println("The game journal couldn't be flushed: " + e);
+                    }
+                }
+            }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }else{
+            flushThread = null;
+        }
+    }
+    
+    
+    //Constructor which flushes the journal once a second
+    public GameJournal(Path file) throws IOException{
+        this(file, DEFAULT_FLUSH_MILLIS);
+    }
+    
+    
+    public static void main(String[] args) throws IOException{
+        int numToPrint = 0;
+        boolean check = false;
+        String fileName = null;
+        for(int i = 0; i < args.length; i++){
+            if(args[i].equals("-print") && (i + 1 < args.length)){
+                numToPrint = Integer.parseInt(args[i + 1]);
+                i++;
+            }else if(args[i].equals("-check")){
+                check = true;
+            }else{
+                fileName = args[i];
+            }
+        }
+        if(fileName == null){
+            System.out.println("Usage: GameJournal FILE [-print N] [-check]");
+            System.exit(2);
+        }
+        
+        //the totals are all gathered straight from the mapped file, so no game is copied or allocated unless it's printed or checked
+        long startTime = System.nanoTime();
+        long numRead = 0;
+        long totalMoves = 0;
+        long firstPlayerWins = 0;
+        long illegalGames = 0;
+        try(Reader reader = new Reader(Paths.get(fileName))){
+            while(reader.next()){
+                numRead++;
+                totalMoves += reader.getNumMoves();
+                if(reader.getWinner() == reader.getFirstPlayer()){
+                    firstPlayerWins++;
+                }
+                if(numRead <= numToPrint){
+                    System.out.println(reader.getMoveList());
+                }
+                if(check && (reader.replay() == null)){
+                    illegalGames++;
+                }
+            }
+            double seconds = (System.nanoTime() - startTime) / 1.0e9;
+            System.out.println(String.format("# %d games (header says %d), %.1f moves per game, first player won %.1f%%%s - read in %.2f s (%.0f games/s)",
+                    numRead, reader.getNumGamesRecorded(), (numRead > 0) ? ((double)totalMoves / numRead) : 0.0,
+                    (numRead > 0) ? (100.0 * firstPlayerWins / numRead) : 0.0, check ? (", " + illegalGames + " with illegal moves") : "", seconds,
+                    numRead / seconds));
+        }
+    }
+    
+    
+    //Returns true if games on boards of this size can be recorded (boards of up to MAX_SQUARES squares)
+    public static boolean canRecord(BoardGeometry geometry){
+        return geometry.getNumSquares() <= MAX_SQUARES;
+    }
+    
+    
+    //Records a game - the board size, who moved first, the winner (NO_WINNER for a game that was never finished) and the destination square of each
+    //move in the order they were played. Safe to call from any number of threads. The game is on the disk, and counted in the file's header, after the
+    //next flush.
+    public synchronized void recordGame(BoardGeometry geometry, BoardVals firstPlayer, BoardVals winner, int[] moveSquares, int numMoves)
+            throws IOException{
+        if(closed){
+            throw new IllegalStateException("The game journal has been closed");
+        }
+        if(!canRecord(geometry) || (numMoves < 0) || (numMoves > geometry.getNumSquares() - 2)){
+            throw new IllegalArgumentException("Can't record a game of " + numMoves + " moves on a " + geometry + " board - at most " + MAX_SQUARES
+                    + " squares can be recorded");
+        }
+        int recordSize = RECORD_HEADER_SIZE + numMoves;
+        int offset = (int)(gamesEnd - chunkStart);
+        if(offset + recordSize > chunkSize){ //the rest of this chunk is left unused and the game starts the next one
+            if(offset < chunkSize){
+                chunk.put(offset, (byte)0);
+            }
+            unflushedChunks.add(chunk);
+            chunkStart += chunkSize;
+            chunk = (nextChunk != null) ? nextChunk : channel.map(FileChannel.MapMode.READ_WRITE, chunkStart, chunkSize);
+            nextChunk = null;
+            offset = 0;
+        }
+        
+        int flags = (firstPlayer == BoardVals.PLAYER_O) ? FIRST_PLAYER_O_FLAG : 0;
+        if(winner == BoardVals.PLAYER_X){
+            flags |= WINNER_X_FLAG;
+        }else if(winner == BoardVals.PLAYER_O){
+            flags |= WINNER_O_FLAG;
+        }
+        chunk.put(offset + 1, (byte)geometry.getRows());
+        chunk.put(offset + 2, (byte)geometry.getColumns());
+        chunk.put(offset + 3, (byte)flags);
+        chunk.put(offset + 4, (byte)numMoves);
+        for(int i = 0; i < numMoves; i++){
+            chunk.put(offset + RECORD_HEADER_SIZE + i, (byte)moveSquares[i]);
+        }
+        chunk.put(offset, RECORD_MARKER); //the marker goes in last, so a half written game never looks like a game
+        
+        gamesEnd = chunkStart + offset + recordSize;
+        numGames++;
+        unflushedGames++;
+    }
+    
+    
+    //Forces every game recorded so far onto the disk. The end of the games and their count are copied along with the chunks to force, and only written
+    //into the header once those chunks are on the disk - games recorded meanwhile aren't counted until the next flush. The forcing itself is done
+    //without holding the lock, so games can still be recorded while the disk catches up.
+    public void flush() throws IOException{
+        synchronized(flushLock){
+            List<MappedByteBuffer> toForce = new ArrayList<>();
+            long flushedEnd = 0;
+            long flushedGames = 0;
+            synchronized(this){
+                if(unflushedGames > 0){
+                    toForce.addAll(unflushedChunks);
+                    toForce.add(chunk);
+                    unflushedChunks.clear();
+                    unflushedGames = 0;
+                    flushedEnd = gamesEnd;
+                    flushedGames = numGames;
+                }
+            }
+            if(!toForce.isEmpty()){
+                for(MappedByteBuffer written : toForce){
+                    written.force();
+                }
+                fileHeader.putLong(GAMES_END_OFFSET, flushedEnd);
+                fileHeader.putLong(NUM_GAMES_OFFSET, flushedGames);
+                fileHeader.force();
+            }
+        }
+    }
+    
+    
+    //Helper for the flush thread which maps the chunk after the current one ahead of time, if it isn't mapped already. The mapping (which grows the
+    //file) is done without holding the lock - if the current chunk fills up before it's ready, recordGame simply maps the next chunk itself.
+    private void mapNextChunk() throws IOException{
+        long nextStart;
+        synchronized(this){
+            nextStart = ((nextChunk == null) && !closed) ? (chunkStart + chunkSize) : -1;
+        }
+        if(nextStart >= 0){
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, nextStart, chunkSize);
+            synchronized(this){
+                if((nextChunk == null) && (chunkStart + chunkSize == nextStart)){
+                    nextChunk = mapped;
+                }
+            }
+        }
+    }
+    
+    
+    //Stops the background flushing, forces everything onto the disk and closes the file. Recording a game afterwards is an error.
+    @Override
+    public void close() throws IOException{
+        synchronized(this){
+            closed = true;
+        }
+        if(flushThread != null){
+            flushThread.shutdown();
+            try{
+                flushThread.awaitTermination(1, TimeUnit.MINUTES);
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+        channel.close();
+    }
+    
+    
+    //getter for the number of games in the journal (including any that were already in the file when it was opened)
+    public synchronized long getNumGames(){
+        return numGames;
+    }
+    
+    
+    //Helper which checks a file header was written by this class - throws an IOException if it wasn't
+    private static void checkHeader(ByteBuffer header, Path file) throws IOException{
+        if((header.getLong(0) != MAGIC) || (header.getInt(VERSION_OFFSET) != VERSION) || (header.getInt(CHUNK_SIZE_OFFSET) <= FILE_HEADER_SIZE)){
+            throw new IOException(file + " is not a game journal (or is from a different version)");
+        }
+    }
+    
+    
+    //Reads the games of a journal back in the order they were recorded: call next to move to each game in turn, then read it with the getters. The file
+    //is mapped read only a chunk at a time and every getter reads straight from the mapping, so streaming through millions of games copies nothing and
+    //allocates nothing per game. A game that is damaged (from the machine crashing before it was flushed) ends the reading, since nothing after it can be
+    //trusted. The journal can be read while it's still being written - only the games flushed before the reader was opened are read.
+    public static class Reader implements Closeable {
+        private final FileChannel channel;
+        private final int chunkSize;
+        private final long gamesEnd;
+        private final long numGamesRecorded;
+        private MappedByteBuffer chunk;
+        private long chunkStart = -1;
+        private long position; //file offset of the next game
+        private int recordOffset; //offset of the current game in the chunk
+        private int numMoves;
+        private BoardGeometry geometry;
+        
+        
+        //Constructor - opens the journal file and reads its header
+        public Reader(Path file) throws IOException{
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            ByteBuffer header;
+            try{
+                if(channel.size() < FILE_HEADER_SIZE){
+                    throw new IOException(file + " is too short to be a game journal");
+                }
+                header = channel.map(FileChannel.MapMode.READ_ONLY, 0, FILE_HEADER_SIZE);
+                checkHeader(header, file);
+            }catch(IOException e){
+                channel.close();
+                throw e;
+            }
+            chunkSize = header.getInt(CHUNK_SIZE_OFFSET);
+            gamesEnd = Math.min(header.getLong(GAMES_END_OFFSET), channel.size());
+            numGamesRecorded = header.getLong(NUM_GAMES_OFFSET);
+            position = FILE_HEADER_SIZE;
+        }
+        
+        
+        //Moves to the next game - returns false once there are no more
+        public boolean next() throws IOException{
+            boolean found = false;
+            while(!found && (position < gamesEnd)){
+                long start = position - (position % chunkSize);
+                if(start != chunkStart){
+                    chunkStart = start;
+                    chunk = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, Math.min(chunkSize, gamesEnd - chunkStart));
+                }
+                int offset = (int)(position - chunkStart);
+                byte marker = chunk.get(offset);
+                if(marker == 0){ //the rest of this chunk is unused
+                    position = chunkStart + chunkSize;
+                }else if(isValidRecord(offset)){
+                    recordOffset = offset;
+                    numMoves = chunk.get(offset + 4) & 0xFF;
+                    geometry = BoardGeometry.get(chunk.get(offset + 1) & 0xFF, chunk.get(offset + 2) & 0xFF);
+                    position += RECORD_HEADER_SIZE + numMoves;
+                    found = true;
+                }else{
+                    position = gamesEnd; //a damaged game - stop reading
+                }
+            }
+            return found;
+        }
+        
+        
+        //Helper which checks the record at the indicated offset of the chunk is a whole, sensible game
+        private boolean isValidRecord(int offset){
+            boolean valid = false;
+            if((chunk.get(offset) == RECORD_MARKER) && (offset + RECORD_HEADER_SIZE <= chunk.limit())){
+                int rows = chunk.get(offset + 1) & 0xFF;
+                int columns = chunk.get(offset + 2) & 0xFF;
+                int moves = chunk.get(offset + 4) & 0xFF;
+                valid = (rows >= 2) && (columns >= 2) && (rows * columns <= MAX_SQUARES) && (moves <= rows * columns - 2)
+                        && (offset + RECORD_HEADER_SIZE + moves <= chunk.limit());
+            }
+            return valid;
+        }
+        
+        
+        //getter for the board size of the current game
+        public BoardGeometry getGeometry(){
+            return geometry;
+        }
+        
+        
+        //getter for who moved first in the current game
+        public BoardVals getFirstPlayer(){
+            return ((chunk.get(recordOffset + 3) & FIRST_PLAYER_O_FLAG) != 0) ? BoardVals.PLAYER_O : BoardVals.PLAYER_X;
+        }
+        
+        
+        //getter for the winner of the current game (NO_WINNER if it was never finished)
+        public BoardVals getWinner(){
+            int flags = chunk.get(recordOffset + 3);
+            BoardVals winner = BoardVals.NO_WINNER;
+            if((flags & WINNER_X_FLAG) != 0){
+                winner = BoardVals.PLAYER_X;
+            }else if((flags & WINNER_O_FLAG) != 0){
+                winner = BoardVals.PLAYER_O;
+            }
+            return winner;
+        }
+        
+        
+        //getter for the number of moves in the current game
+        public int getNumMoves(){
+            return numMoves;
+        }
+        
+        
+        //getter for the destination square of a move of the current game (moves alternate from the first player)
+        public int getMoveSquare(int move){
+            return chunk.get(recordOffset + RECORD_HEADER_SIZE + move) & 0xFF;
+        }
+        
+        
+        //getter for the number of games the journal's header says were recorded when the reader was opened
+        public long getNumGamesRecorded(){
+            return numGamesRecorded;
+        }
+        
+        
+        //Replays the current game and returns the final board, or null if one of its moves isn't legal
+        public GameBoard replay(){
+            GameBoard board = new GameBoard(getFirstPlayer(), geometry);
+            BoardVals player = getFirstPlayer();
+            boolean legal = true;
+            for(int i = 0; (i < numMoves) && legal; i++){
+                int square = getMoveSquare(i);
+                legal = (square < geometry.getNumSquares()) && board.isLegalMove(player, square);
+                if(legal){
+                    board.makeMove(player, square);
+                    player = (player == BoardVals.PLAYER_X) ? BoardVals.PLAYER_O : BoardVals.PLAYER_X;
+                }
+            }
+            return legal ? board : null;
+        }
+        
+        
+        //Returns the current game as a move list - board size, first player and the moves, e.g. "8x8 X D4 E5 C3" (see BatchAnalyzer)
+        public String getMoveList(){
+            StringBuilder moveList = new StringBuilder().append(geometry).append(' ');
+            moveList.append((getFirstPlayer() == BoardVals.PLAYER_O) ? 'O' : 'X');
+            for(int i = 0; i < numMoves; i++){
+                int square = getMoveSquare(i);
+                moveList.append(' ').append((square < geometry.getNumSquares()) ? geometry.getSquareName(square) : "?");
+            }
+            return moveList.toString();
+        }
+        
+        
+        @Override
+        public void close() throws IOException{
+            channel.close();
+        }
+        
+    }
+    
+}
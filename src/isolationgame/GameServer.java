@@ -0,0 +1,584 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Network server which hosts any number of isolation games at once - each connection plays one game at a time against the AI, as player O (the human side
+//of an IsolationGame).
+//All of the connections are served by one thread using a java.nio Selector, so a connection costs nothing but its small read buffer while it's waiting
+//for the client. The AI turns are the only real work, and they're handed to a fixed number of search "lanes" - each lane is a single thread with its own
+//AIPlayer (and transposition table) and a bounded queue of waiting turns. Every game stays on one lane for its whole life, so a lane's AI player is only
+//ever used by one search at a time. If a lane's queue is full the game is abandoned with ERR BUSY rather than letting the backlog grow without bound.
+//
+//The protocol is line based ASCII - every command is one line, and every reply is one line:
+//  NEW X|O [TIME_MS] [RxC]   start a new game (replacing any current one) - who moves first, the AI time limit per move (at least 500, and no more than
+//                            the server's -maxtime) and the board size
+//                            reply: OK NEW RxC X|O - if X (the AI) moves first, its move follows as an AI line
+//  MOVE SQUARE               make the player's move, e.g. MOVE D4
+//                            reply: OK MOVE SQUARE, followed later by the AI's reply move: AI SQUARE
+//  BOARD                     reply: BOARD RxC CELLS TURN - CELLS is the board row by row with one character per square (X, O, # for used, - for open)
+//  RESULT                    reply: RESULT NONE|X|O
+//  QUIT                      reply: BYE, and the connection is closed
+//Whenever a move ends the game an extra line OVER X|O (the winner) follows the reply. Errors are reported as ERR MESSAGE. Commands other than NEW and
+//QUIT are refused with ERR WAIT while the AI is thinking. NEW, QUIT or the connection closing stop any search still running for the old game.
+//Usage: GameServer [options]
+//  -port N        port to listen on (default 4200, 0 for any free port)
+//  -threads N     search lanes (default: number of processors)
+//  -queue N       AI turns allowed to wait on each lane (default 64)
+//  -time MS       AI time limit per move when NEW doesn't give one (default 1000)
+//  -maxtime MS    longest AI time limit per move a client may ask for - longer ones are cut down to this (default 60000)
+//  -nodes N       most nodes the AI may search per move, on top of the time limit (default: no limit)
+//  -hash MB       transposition table size of each lane (default 16)
+//  -journal FILE  record every game whose result is decided in this game journal (games are added to any already in it)
+public class GameServer implements Runnable {
+    public static final int DEFAULT_PORT = 4200;
+    public static final long DEFAULT_MAX_TIME_LIMIT = 60000;
+    private static final long MIN_TIME_LIMIT = 500; //IsolationGame never searches for less than this
+    private static final int MAX_LINE_LENGTH = 128; //longest command accepted - this is also the size of each connection's read buffer
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ThreadPoolExecutor[] searchLanes;
+    private final AIPlayer[] lanePlayers; //one AI player per lane, shared by every game on that lane
+    private final ConcurrentLinkedQueue<Runnable> selectorTasks; //work handed back to the selector thread (finished AI turns)
+    private final long defaultTimeLimit;
+    private final long maxTimeLimit;
+    private final AtomicLong gamesStarted = new AtomicLong();
+    private final AtomicLong gamesFinished = new AtomicLong();
+    private int nextLane; //lanes are handed out to new games in turn
+    private GameJournal journal; //null if games aren't recorded
+    private volatile boolean running;
+    
+    
+    //Constructor - opens the listening socket straight away (port 0 picks any free port, see getPort). Each of the numLanes search lanes gets an AI player
+    //with a table of tableSizeMB and room for queueSize waiting turns. nodeLimit caps the AI's search per move (0 or less for no cap). Time limits asked
+    //for by clients are held between 500 and maxTimeLimit milliseconds.
+    public GameServer(int port, int numLanes, int queueSize, long defaultTimeLimit, long maxTimeLimit, long nodeLimit, int tableSizeMB)
+            throws IOException{
+        this.maxTimeLimit = Math.max(maxTimeLimit, MIN_TIME_LIMIT);
+        this.defaultTimeLimit = clampTimeLimit(defaultTimeLimit);
+        selectorTasks = new ConcurrentLinkedQueue<>();
+        searchLanes = new ThreadPoolExecutor[Math.max(numLanes, 1)];
+        lanePlayers = new AIPlayer[searchLanes.length];
+        for(int i = 0; i < searchLanes.length; i++){
+            searchLanes[i] = createLane("GameServer-search-" + i, queueSize);
+            lanePlayers[i] = new AIPlayer(tableSizeMB);
+            lanePlayers[i].setNodeLimit(nodeLimit);
+        }
+        
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+    }
+    
+    
+    //Helper which holds a time limit between the smallest the game allows and the server's maximum
+    private long clampTimeLimit(long timeLimit){
+        return Math.min(Math.max(timeLimit, MIN_TIME_LIMIT), maxTimeLimit);
+    }
+    
+    
+    //Helper which builds one search lane - a single daemon thread with a queue holding at most queueSize waiting turns
+    private static ThreadPoolExecutor createLane(final String laneName, int queueSize){
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(Math.max(queueSize, 1)), new ThreadFactory(){
+            @Override
+            public Thread newThread(Runnable task){
+                Thread lane = new Thread(task, laneName);
+                lane.setDaemon(true);
+                return lane;
+            }
+        });
+    }
+    
+    
+    public static void main(String[] args) throws IOException{
+        int port = DEFAULT_PORT;
+        int numLanes = Runtime.getRuntime().availableProcessors();
+        int queueSize = 64;
+        long timeLimit = 1000;
+        long maxTimeLimit = DEFAULT_MAX_TIME_LIMIT;
+        long nodeLimit = 0;
+        int tableSizeMB = 16;
+        String journalName = null;
+        for(int i = 0; i < args.length; i++){
+            String option = args[i];
+            String value = (i + 1 < args.length) ? args[i + 1] : "";
+            i++;
+            if(option.equals("-port")){
+                port = Integer.parseInt(value);
+            }else if(option.equals("-threads")){
+                numLanes = Integer.parseInt(value);
+            }else if(option.equals("-queue")){
+                queueSize = Integer.parseInt(value);
+            }else if(option.equals("-time")){
+                timeLimit = Long.parseLong(value);
+            }else if(option.equals("-maxtime")){
+                maxTimeLimit = Long.parseLong(value);
+            }else if(option.equals("-nodes")){
+                nodeLimit = Long.parseLong(value);
+            }else if(option.equals("-hash")){
+                tableSizeMB = Integer.parseInt(value);
+            }else if(option.equals("-journal")){
+                journalName = value;
+            }else{
+                System.out.println("Unknown option: " + option);
+                System.exit(2);
+            }
+        }
+        
+        GameServer server = new GameServer(port, numLanes, queueSize, timeLimit, maxTimeLimit, nodeLimit, tableSizeMB);
+        GameJournal journal = (journalName != null) ? new GameJournal(Paths.get(journalName)) : null;
+        server.setJournal(journal);
+        System.out.println("Isolation game server listening on port " + server.getPort() + " with " + numLanes + " search threads");
+        server.run();
+        if(journal != null){
+            journal.close();
+        }
+    }
+    
+    
+    //Runs the selector loop on the calling thread until stop is called - accepts connections, reads and answers commands, and sends out the AI moves
+    //finished by the search lanes
+    @Override
+    public void run(){
+        try{
+            while(running){
+                selector.select();
+                runSelectorTasks();
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while(selectedKeys.hasNext()){
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    if(key.isValid() && key.isAcceptable()){
+                        acceptConnection();
+                    }else if(key.isValid()){
+                        Connection connection = (Connection)key.attachment();
+                        if(key.isReadable()){
+                            connection.readCommands();
+                        }
+                        if(key.isValid() && key.isWritable()){
+                            connection.writeReplies();
+                        }
+                    }
+                }
+            }
+        }catch(IOException e){
+            System.out.println("The game server stopped after an error: " + e);
+        }finally{
+            shutDown();
+        }
+    }
+    
+    
+    //Stops the server - the selector loop ends, every connection is closed and the search lanes are shut down. Safe to call from any thread.
+    public void stop(){
+        running = false;
+        selector.wakeup();
+    }
+    
+    
+    //Helper which closes everything once the selector loop has ended
+    private void shutDown(){
+        for(SelectionKey key : selector.keys()){
+            if(key.attachment() instanceof Connection){
+                ((Connection)key.attachment()).close();
+            }else{
+                closeQuietly(key);
+            }
+        }
+        try{
+            selector.close();
+            serverChannel.close();
+        }catch(IOException e){
+            System.out.println("Error closing the game server: " + e);
+        }
+        for(ThreadPoolExecutor lane : searchLanes){
+            lane.shutdownNow();
+        }
+    }
+    
+    
+    //Helper which accepts every waiting connection - each one starts off only waiting for commands. A failed accept (such as running out of file
+    //handles) only costs that connection, the server carries on.
+    private void acceptConnection(){
+        try{
+            SocketChannel channel = serverChannel.accept();
+            while(channel != null){
+                channel.configureBlocking(false);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new Connection(channel, key));
+                channel = serverChannel.accept();
+            }
+        }catch(IOException e){
+            System.out.println("Could not accept a connection: " + e);
+        }
+    }
+    
+    
+    //Helper which runs the work the search lanes have handed back to the selector thread
+    private void runSelectorTasks(){
+        Runnable task = selectorTasks.poll();
+        while(task != null){
+            task.run();
+            task = selectorTasks.poll();
+        }
+    }
+    
+    
+    //Helper which closes a connection's channel, ignoring errors - the client has gone either way
+    private static void closeQuietly(SelectionKey key){
+        key.cancel();
+        try{
+            key.channel().close();
+        }catch(IOException e){
+            //nothing more can be done with this connection
+        }
+    }
+    
+    
+    //getter for the port the server is listening on
+    public int getPort(){
+        return serverChannel.socket().getLocalPort();
+    }
+    
+    //setter for the journal games are recorded in (null to not record them) - set it before starting the server, it's only used for games started later
+    public void setJournal(GameJournal journal){
+        this.journal = journal;
+    }
+    
+    //getter for the number of games started since the server started
+    public long getGamesStarted(){
+        return gamesStarted.get();
+    }
+    
+    //getter for the number of games played to the end since the server started
+    public long getGamesFinished(){
+        return gamesFinished.get();
+    }
+    
+    
+    //One client connection and the game it's playing. Everything here is only touched by the selector thread - except the game itself while the AI is
+    //thinking, when it belongs to the search lane until the finished turn is handed back through selectorTasks.
+    private class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer readBuffer;
+        private final ArrayDeque<ByteBuffer> pendingReplies;
+        private IsolationGame game; //null until the first NEW
+        private int lane;
+        private boolean aiThinking;
+        private MoveTimer searchTimer; //timer of the AI turn in progress (queued or searching), null if the AI isn't thinking
+        private boolean closeWhenSent; //set by QUIT - the connection is closed once the replies have gone
+        
+        
+        //Constructor
+        public Connection(SocketChannel channel, SelectionKey key){
+            this.channel = channel;
+            this.key = key;
+            readBuffer = ByteBuffer.allocate(MAX_LINE_LENGTH);
+            pendingReplies = new ArrayDeque<>();
+        }
+        
+        
+        //Reads whatever the client has sent and handles every complete line. A line that doesn't fit in the buffer ends the connection.
+        public void readCommands(){
+            try{
+                if(channel.read(readBuffer) < 0){
+                    close();
+                }else{
+                    readBuffer.flip();
+                    int lineStart = 0;
+                    for(int i = 0; i < readBuffer.limit(); i++){
+                        if(readBuffer.get(i) == '\n'){
+                            handleCommand(new String(readBuffer.array(), lineStart, i - lineStart, StandardCharsets.US_ASCII).trim());
+                            lineStart = i + 1;
+                        }
+                    }
+                    readBuffer.position(lineStart);
+                    readBuffer.compact();
+                    if(!readBuffer.hasRemaining()){
+                        sendReply("ERR LINE TOO LONG");
+                        closeWhenSent = true;
+                    }
+                    writeReplies();
+                }
+            }catch(IOException e){
+                close();
+            }
+        }
+        
+        
+        //Sends as much of the waiting replies as the socket will take - if some are left, the selector watches for the socket becoming writable again
+        public void writeReplies(){
+            try{
+                while(!pendingReplies.isEmpty() && !pendingReplies.peek().hasRemaining()){
+                    pendingReplies.poll();
+                }
+                while(!pendingReplies.isEmpty() && (channel.write(pendingReplies.peek()) >= 0) && !pendingReplies.peek().hasRemaining()){
+                    pendingReplies.poll();
+                }
+                if(pendingReplies.isEmpty() && closeWhenSent){
+                    close();
+                }else if(key.isValid()){
+                    key.interestOps(pendingReplies.isEmpty() ? SelectionKey.OP_READ : (SelectionKey.OP_READ | SelectionKey.OP_WRITE));
+                }
+            }catch(IOException e){
+                close();
+            }
+        }
+        
+        
+        //Closes the connection, stopping the AI's search if it's still thinking - the client is gone, so nobody would see the move
+        public void close(){
+            abandonGame();
+            closeQuietly(key);
+        }
+        
+        
+        //Helper which queues one reply line (it's sent by writeReplies)
+        private void sendReply(String reply){
+            pendingReplies.add(ByteBuffer.wrap((reply + "\n").getBytes(StandardCharsets.US_ASCII)));
+        }
+        
+        
+        //Helper which carries out one command line
+        private void handleCommand(String line){
+            String[] parts = line.split("\\s+");
+            String command = parts[0].toUpperCase();
+            if(line.isEmpty()){
+                sendReply("ERR EMPTY COMMAND");
+            }else if(command.equals("NEW")){
+                startGame(parts);
+            }else if(command.equals("QUIT")){
+                abandonGame();
+                sendReply("BYE");
+                closeWhenSent = true;
+            }else if(!command.equals("MOVE") && !command.equals("BOARD") && !command.equals("RESULT")){
+                sendReply("ERR UNKNOWN COMMAND " + parts[0]);
+            }else if(game == null){
+                sendReply("ERR NO GAME");
+            }else if(aiThinking){
+                sendReply("ERR WAIT");
+            }else if(command.equals("MOVE")){
+                makePlayerMove(parts);
+            }else if(command.equals("BOARD")){
+                sendReply(describeBoard());
+            }else{
+                sendReply("RESULT " + playerName(getWinner()));
+            }
+        }
+        
+        
+        //Helper for the NEW command - parses the options and starts the game on the next lane, and starts the AI's turn if it moves first
+        private void startGame(String[] parts){
+            BoardVals firstPlayer = null;
+            long timeLimit = defaultTimeLimit;
+            BoardGeometry geometry = BoardGeometry.STANDARD;
+            String error = null;
+            if(parts.length < 2){
+                error = "ERR NEW NEEDS X OR O";
+            }else if(parts[1].equalsIgnoreCase("X")){
+                firstPlayer = BoardVals.PLAYER_X;
+            }else if(parts[1].equalsIgnoreCase("O")){
+                firstPlayer = BoardVals.PLAYER_O;
+            }else{
+                error = "ERR NEW NEEDS X OR O";
+            }
+            for(int i = 2; (i < parts.length) && (error == null); i++){
+                try{
+                    if(parts[i].matches("\\d+")){
+                        timeLimit = clampTimeLimit(Long.parseLong(parts[i]));
+                    }else if(parts[i].matches("\\d+[xX]\\d+")){
+                        String[] dimensions = parts[i].split("[xX]");
+                        geometry = BoardGeometry.get(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]));
+                    }else{
+                        error = "ERR BAD OPTION " + parts[i];
+                    }
+                }catch(IllegalArgumentException e){ //covers numbers too long to parse as well as unsupported board sizes
+                    error = "ERR BAD OPTION " + parts[i];
+                }
+            }
+            
+            if(error != null){
+                sendReply(error);
+            }else{
+                abandonGame();
+                lane = nextLane;
+                nextLane = (nextLane + 1) % searchLanes.length;
+                game = new IsolationGame(firstPlayer, timeLimit, geometry.getRows(), geometry.getColumns(), lanePlayers[lane]);
+                game.setJournal(journal);
+                gamesStarted.incrementAndGet();
+                sendReply("OK NEW " + geometry + " " + playerName(firstPlayer));
+                if(firstPlayer == BoardVals.PLAYER_X){
+                    startAITurn();
+                }
+            }
+        }
+        
+        
+        //Helper for the MOVE command - makes the player's move and starts the AI's reply, unless the move ended the game
+        private void makePlayerMove(String[] parts){
+            GameBoard board = game.getGameBoard();
+            BoardGeometry geometry = board.getGeometry();
+            int square = (parts.length == 2) ? geometry.parseSquare(parts[1]) : -1;
+            if(getWinner() != BoardVals.NO_WINNER){
+                sendReply("ERR GAME OVER");
+            }else if(square < 0){
+                sendReply("ERR BAD SQUARE");
+            }else if(!game.processHumanTurn(geometry.getRowLabel(geometry.squareRow(square)), geometry.squareColumn(square) + 1)){
+                sendReply("ERR ILLEGAL MOVE");
+            }else{
+                sendReply("OK MOVE " + geometry.getSquareName(square));
+                if(!reportIfOver()){
+                    startAITurn();
+                }
+            }
+        }
+        
+        
+        //Helper which hands the AI's turn to this game's search lane. The finished move comes back to the selector thread through selectorTasks. If the
+        //lane already has a full queue the game is abandoned, since the AI can't take its turn.
+        //The turn's timer is made here, open-ended, so the turn can be stopped (see abandonGame) while it's still waiting in the queue - it's only given
+        //the game's time limit once the lane starts the search, and a turn stopped before then is skipped without searching at all.
+        private void startAITurn(){
+            final IsolationGame aiGame = game;
+            final AIPlayer lanePlayer = lanePlayers[lane];
+            final MoveTimer timer = new MoveTimer(Long.MAX_VALUE, lanePlayer.getSafetyMarginMillis());
+            aiThinking = true;
+            searchTimer = timer;
+            try{
+                searchLanes[lane].execute(new Runnable(){
+                    @Override
+                    public void run(){
+                        boolean moveMade = false;
+                        timer.restart(aiGame.getTimeLimit());
+                        if(!timer.isStopRequested()){
+                            moveMade = aiGame.playAIMove(aiGame.findAIMove(lanePlayer, timer));
+                        }
+                        finishAITurn(aiGame, moveMade);
+                    }
+                });
+            }catch(RejectedExecutionException e){
+                aiThinking = false;
+                searchTimer = null;
+                game = null;
+                sendReply("ERR BUSY");
+            }
+        }
+        
+        
+        //Helper which drops the current game - if the AI is thinking its search is stopped, and its move is thrown away when it comes back
+        private void abandonGame(){
+            if(searchTimer != null){
+                searchTimer.stop();
+                searchTimer = null;
+            }
+            aiThinking = false;
+            game = null;
+        }
+        
+        
+        //Called on the search lane once the AI has moved - passes the result back to the selector thread, which sends it to the client
+        private void finishAITurn(final IsolationGame aiGame, final boolean moveMade){
+            selectorTasks.add(new Runnable(){
+                @Override
+                public void run(){
+                    if(key.isValid() && (aiGame == game)){
+                        aiThinking = false;
+                        searchTimer = null;
+                        if(moveMade){
+                            List<String> aiMoves = aiGame.getPlayerXMoves();
+                            sendReply("AI " + aiMoves.get(aiMoves.size() - 1));
+                            reportIfOver();
+                        }else{
+                            game = null;
+                            sendReply("ERR AI FAILED");
+                        }
+                        writeReplies();
+                    }
+                }
+            });
+            selector.wakeup();
+        }
+        
+        
+        //Helper which sends the OVER line if the game has just ended - returns true if it has
+        private boolean reportIfOver(){
+            BoardVals winner = getWinner();
+            if(winner != BoardVals.NO_WINNER){
+                gamesFinished.incrementAndGet();
+                sendReply("OVER " + playerName(winner));
+            }
+            return winner != BoardVals.NO_WINNER;
+        }
+        
+        
+        //Helper which returns the winner of the game, or NO_WINNER if it isn't over. A player only loses when they can't move on their own turn, so
+        //only the player to move is checked (IsolationGame.getGameWinner checks both, since its driver stops as soon as either player is stuck).
+        private BoardVals getWinner(){
+            BoardVals winner = BoardVals.NO_WINNER;
+            if(game.getGameBoard().checkIfPlayerLose(game.getPlayerTurn())){
+                winner = (game.getPlayerTurn() == BoardVals.PLAYER_X) ? BoardVals.PLAYER_O : BoardVals.PLAYER_X;
+            }
+            return winner;
+        }
+        
+        
+        //Helper which builds the reply to BOARD - the size, the squares row by row, and whose turn it is
+        private String describeBoard(){
+            GameBoard board = game.getGameBoard();
+            StringBuilder description = new StringBuilder("BOARD ").append(board.getGeometry()).append(' ');
+            for(BoardVals[] row : board.getTheBoard()){
+                for(BoardVals square : row){
+                    if(square == BoardVals.PLAYER_X){
+                        description.append('X');
+                    }else if(square == BoardVals.PLAYER_O){
+                        description.append('O');
+                    }else if(square == BoardVals.USED){
+                        description.append('#');
+                    }else{
+                        description.append('-');
+                    }
+                }
+            }
+            return description.append(' ').append(playerName(game.getPlayerTurn())).toString();
+        }
+        
+    }
+    
+    
+    //Helper which gives the protocol name of a player - X, O, or NONE for anything else (NO_WINNER)
+    private static String playerName(BoardVals player){
+        String name = "NONE";
+        if(player == BoardVals.PLAYER_X){
+            name = "X";
+        }else if(player == BoardVals.PLAYER_O){
+            name = "O";
+        }
+        return name;
+    }
+    
+}
@@ -0,0 +1,315 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Runs any number of IsolationGame sessions at once without blocking the caller or tying up a thread per game. An AI turn is requested with
+//Session.requestAIMove, which returns straight away with a CompletableFuture of the AI's move - the move is made in the game when the future completes,
+//and cancelling the future stops the search at once (the move is then not made, and it's still the AI's turn).
+//Work is split in two:
+//1) every AI turn is driven by its own cheap task on the session executor - a virtual thread per task on Java 21 and later (found by reflection, since
+//   this code is built for Java 8). The task waits for a free search slot, hands the search over and waits for it, so an idle session costs no thread at
+//   all and a waiting one costs only a virtual thread. Without virtual threads the tasks run on a fixed pool with one platform thread per search slot
+//   instead, and waiting turns wait in that pool's queue rather than on a thread of their own.
+//2) the CPU-bound searches run on a fixed pool of platform threads - one per search slot, each slot with its own AIPlayer (and transposition table)
+//   shared by every session. This caps how many searches compete for the CPU no matter how many sessions there are. Sessions aren't isolated from each
+//   other - whichever slot is free takes the turn, so a slot's table holds entries from sessions of every board size. That's safe because the Zobrist
+//   keys include the board's shape (see BoardGeometry.getShapeKey), so a position on one board size never matches an entry from another.
+//Free slots are handed out in the order turns asked for them (a fair queue), so no session is starved. On top of that at most maxPendingTurns turns can be
+//waiting or searching at once - past that requestAIMove fails at once with a RejectedExecutionException, so callers see the backpressure straight away
+//instead of piling up work.
+public class GameSessionManager {
+    private final ExecutorService sessionExecutor; //drives the AI turns - virtual threads when the JVM has them
+    private final ExecutorService searchPool; //runs the searches themselves, one platform thread per search slot
+    private final AIPlayer[] searchers; //one AI player per search slot
+    private final BlockingQueue<AIPlayer> idleSearchers; //the AI players of the free search slots, handed out in FIFO order
+    private final Semaphore turnPermits; //one permit per turn allowed to be waiting or searching
+    private final int maxPendingTurns;
+    private final boolean virtualThreads;
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    
+    
+    //Constructor - numSearchThreads searches can run at once (each slot's AI player gets a table of tableSizeMB), and at most maxPendingTurns AI turns can
+    //be waiting or searching at once
+    public GameSessionManager(int numSearchThreads, int maxPendingTurns, int tableSizeMB){
+        int numSlots = Math.max(numSearchThreads, 1);
+        searchers = new AIPlayer[numSlots];
+        idleSearchers = new ArrayBlockingQueue<>(numSlots, true);
+        for(int i = 0; i < numSlots; i++){
+            searchers[i] = new AIPlayer(tableSizeMB);
+            idleSearchers.add(searchers[i]);
+        }
+        this.maxPendingTurns = Math.max(maxPendingTurns, 1);
+        turnPermits = new Semaphore(this.maxPendingTurns, true);
+        searchPool = Executors.newFixedThreadPool(numSlots, createDaemonFactory("GameSessionManager-search"));
+        
+        ExecutorService virtualExecutor = createVirtualThreadExecutor();
+        virtualThreads = (virtualExecutor != null);
+        if(virtualThreads){
+            sessionExecutor = virtualExecutor;
+        }else{
+            sessionExecutor = Executors.newFixedThreadPool(numSlots, createDaemonFactory("GameSessionManager-turn"));
+        }
+    }
+    
+    
+    //Helper which builds an executor starting a new virtual thread for every task - returns null if the JVM doesn't have virtual threads (before Java 21)
+    private static ExecutorService createVirtualThreadExecutor(){
+        ExecutorService executor = null;
+        try{
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            executor = (ExecutorService)factory.invoke(null);
+        }catch(ReflectiveOperationException | RuntimeException e){
+            executor = null; //no virtual threads - the caller falls back to platform threads
+        }
+        return executor;
+    }
+    
+    
+    //Helper which builds a thread factory for daemon threads with the indicated name
+    private static ThreadFactory createDaemonFactory(final String threadName){
+        return new ThreadFactory(){
+            @Override
+            public Thread newThread(Runnable task){
+                Thread thread = new Thread(task, threadName);
+                thread.setDaemon(true); //never keep the program running just for these
+                return thread;
+            }
+        };
+    }
+    
+    
+    //Starts a new session - a game against the AI with the human as player O (see IsolationGame for the arguments). Sessions of any board size can share
+    //the search slots.
+    public Session newSession(BoardVals whoFirst, long timeLimit, int rows, int columns){
+        activeSessions.incrementAndGet();
+        return new Session(new IsolationGame(whoFirst, timeLimit, rows, columns, null)); //every search is run by a search slot's AI player
+    }
+    
+    
+    //Sets the most nodes each search may visit, on top of the time limit (see AIPlayer.setNodeLimit) - 0 or less removes the limit. Only searches started
+    //after the call are affected - it's meant to be set before any turns are requested.
+    public void setNodeLimit(long nodeLimit){
+        for(AIPlayer searcher : searchers){
+            searcher.setNodeLimit(nodeLimit);
+        }
+    }
+    
+    
+    //Stops every search at once and shuts the threads down - futures of turns still running are completed exceptionally
+    public void shutdown(){
+        sessionExecutor.shutdownNow();
+        searchPool.shutdownNow();
+    }
+    
+    
+    //getter for whether AI turns are driven by virtual threads (false when running on a JVM without them)
+    public boolean usesVirtualThreads(){
+        return virtualThreads;
+    }
+    
+    //getter for the number of AI turns currently waiting for a search slot or searching
+    public int getPendingTurns(){
+        return maxPendingTurns - turnPermits.availablePermits();
+    }
+    
+    //getter for the most AI turns allowed to be waiting or searching at once
+    public int getMaxPendingTurns(){
+        return maxPendingTurns;
+    }
+    
+    //getter for the number of sessions started and not yet closed
+    public int getActiveSessions(){
+        return activeSessions.get();
+    }
+    
+    
+    //One game against the AI. The methods are safe to call from any thread - the game is only changed while holding the session's lock, and the human
+    //can't move while the AI is searching since it's the AI's turn.
+    public class Session {
+        private final IsolationGame game;
+        private CompletableFuture<GameMove> aiTurn; //the AI turn in progress, null if there isn't one
+        private volatile MoveTimer searchTimer; //timer of the running search - stopping it ends the search
+        private boolean closed;
+        
+        
+        //Constructor
+        private Session(IsolationGame game){
+            this.game = game;
+        }
+        
+        
+        //Makes the human's move (as player O) - returns true if it was made, false if it's not the human's turn or the move isn't legal
+        public synchronized boolean makeHumanMove(String row, int column){
+            return !closed && game.processHumanTurn(row, column);
+        }
+        
+        
+        //Starts the AI's turn and returns its move as a future, without waiting for the search. The move has been made in the game by the time the future
+        //completes. Cancelling the future stops the search straight away and the move isn't made.
+        //The future fails with a RejectedExecutionException if too many AI turns are already waiting or searching (backpressure - try again later), and
+        //with an IllegalStateException if it isn't the AI's turn, an AI turn is already running, or the session is closed.
+        public synchronized CompletableFuture<GameMove> requestAIMove(){
+            CompletableFuture<GameMove> result = new CompletableFuture<GameMove>(){
+                @Override
+                public boolean cancel(boolean mayInterruptIfRunning){
+                    synchronized(Session.this){ //holding the session lock here and in finishAITurn means a turn is either cancelled or played, never both
+                        boolean cancelled = super.cancel(mayInterruptIfRunning);
+                        MoveTimer timer = searchTimer;
+                        if(cancelled && (timer != null) && (this == aiTurn)){
+                            timer.stop(); //the search returns at once - its move is thrown away
+                        }
+                        return cancelled;
+                    }
+                }
+            };
+            
+            if(closed){
+                result.completeExceptionally(new IllegalStateException("The session is closed"));
+            }else if(aiTurn != null){
+                result.completeExceptionally(new IllegalStateException("An AI turn is already running"));
+            }else if((game.getPlayerTurn() != BoardVals.PLAYER_X) || (getWinner() != BoardVals.NO_WINNER)){
+                result.completeExceptionally(new IllegalStateException("It is not the AI's turn"));
+            }else if(!turnPermits.tryAcquire()){
+                result.completeExceptionally(new RejectedExecutionException("Too many AI turns are already waiting for a search slot"));
+            }else{
+                aiTurn = result;
+                try{
+                    sessionExecutor.execute(new Runnable(){
+                        @Override
+                        public void run(){
+                            runAITurn();
+                        }
+                    });
+                }catch(RejectedExecutionException e){ //the manager has been shut down
+                    aiTurn = null;
+                    turnPermits.release();
+                    result.completeExceptionally(e);
+                }
+            }
+            return result;
+        }
+        
+        
+        //Drives one AI turn on the session executor - waits for a free search slot, runs the search on the search pool, then makes the move (unless the turn
+        //was cancelled meanwhile) and completes the future
+        private void runAITurn(){
+            GameMove aiMove = null;
+            Throwable failure = null;
+            AIPlayer searcher = null;
+            try{
+                searcher = idleSearchers.take(); //blocks (fairly) until a search slot is free
+                if(!isTurnCancelled()){
+                    final AIPlayer slotPlayer = searcher;
+                    final MoveTimer timer = new MoveTimer(game.getTimeLimit(), searcher.getSafetyMarginMillis());
+                    searchTimer = timer;
+                    if(isTurnCancelled()){ //cancelled between the check and the timer being published - it would have had nothing to stop
+                        timer.stop();
+                    }
+                    Future<GameMove> search = searchPool.submit(new Callable<GameMove>(){
+                        @Override
+                        public GameMove call(){
+                            return game.findAIMove(slotPlayer, timer);
+                        }
+                    });
+                    aiMove = search.get();
+                }
+            }catch(InterruptedException e){
+                failure = e;
+                Thread.currentThread().interrupt();
+            }catch(ExecutionException e){
+                failure = e.getCause();
+            }catch(RejectedExecutionException e){
+                failure = e;
+            }finally{
+                searchTimer = null;
+                if(searcher != null){
+                    idleSearchers.add(searcher);
+                }
+                turnPermits.release();
+            }
+            finishAITurn(aiMove, failure);
+        }
+        
+        
+        //Helper which ends the AI turn - makes the move and completes the future, unless the turn was cancelled
+        private synchronized void finishAITurn(GameMove aiMove, Throwable failure){
+            CompletableFuture<GameMove> result = aiTurn;
+            aiTurn = null;
+            if(!result.isDone()){
+                if(failure != null){
+                    result.completeExceptionally(failure);
+                }else if(!closed && game.playAIMove(aiMove)){
+                    result.complete(aiMove);
+                }else{
+                    result.completeExceptionally(new IllegalStateException("The AI move could not be made"));
+                }
+            }
+        }
+        
+        
+        //Helper which checks whether the running turn's future has been cancelled
+        private synchronized boolean isTurnCancelled(){
+            return (aiTurn == null) || aiTurn.isCancelled();
+        }
+        
+        
+        //Ends the session - a running AI turn is cancelled. Returns false if it was already closed.
+        public synchronized boolean close(){
+            boolean wasOpen = !closed;
+            if(wasOpen){
+                closed = true;
+                activeSessions.decrementAndGet();
+                if(aiTurn != null){
+                    aiTurn.cancel(false);
+                }
+            }
+            return wasOpen;
+        }
+        
+        
+        //returns the winner of the game, or NO_WINNER if it isn't over. A player only loses when they can't move on their own turn.
+        public synchronized BoardVals getWinner(){
+            BoardVals winner = BoardVals.NO_WINNER;
+            if(game.getGameBoard().checkIfPlayerLose(game.getPlayerTurn())){
+                winner = (game.getPlayerTurn() == BoardVals.PLAYER_X) ? BoardVals.PLAYER_O : BoardVals.PLAYER_X;
+            }
+            return winner;
+        }
+        
+        
+        //returns a copy of the game board (the session's own board may be in use by a search)
+        public synchronized GameBoard getBoard(){
+            return new GameBoard(game.getGameBoard());
+        }
+        
+        
+        //getter for whose turn it is
+        public synchronized BoardVals getPlayerTurn(){
+            return game.getPlayerTurn();
+        }
+        
+        
+        //getter for whether an AI turn is in progress
+        public synchronized boolean isAIThinking(){
+            return aiTurn != null;
+        }
+        
+    }
+    
+}
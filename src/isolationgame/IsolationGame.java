@@ -4,12 +4,23 @@
 
 package isolationgame;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 
 //Class which actually plays the isolation game using a given GameBoard object. Handles calling of player moves and tracking
 //of whose turn it is currently. Also manages game time limit.
+//With pondering turned on, the AI keeps thinking while the human decides on their move: after each AI move the human's most likely reply is predicted and
+//a background search is started on the position after that reply. If the human plays the predicted move the background search simply carries on as the
+//AI's turn (so the time the human spent thinking is free search time), otherwise it's stopped - its transposition table entries are kept either way.
+//Given a GameJournal, the game records itself in it as soon as its result is decided.
 public class IsolationGame {
     private GameBoard theBoard;
     private long timeLimit;
@@ -17,14 +28,38 @@ public class IsolationGame {
     private AIPlayer playerX; //defaults to player X being the AI player
     private List<String> playerXMoves;
     private List<String> playerOMoves;
+    private boolean ponderEnabled;
+    private ExecutorService ponderThread; //created the first time a ponder search is started
+    private Future<GameMove> ponderResult; //the running (or finished) ponder search, null if not pondering
+    private MoveTimer ponderTimer;
+    private GameMove predictedMove; //the human move the ponder search assumed
+    private boolean ponderHit; //true once the human has actually played the predicted move
+    private BoardVals firstPlayer;
+    private int[] moveSquares; //destination square of every move so far, in the order they were made (for the journal)
+    private int numMoves;
+    private GameJournal journal; //null if the game isn't recorded
+    private boolean recorded; //true once the game has been written to the journal
     
-    //A game must know who the first player is and what the time limit is (time limit in milliseconds)
+    //A game must know who the first player is and what the time limit is (time limit in milliseconds) - played on the standard 8x8 board
     public IsolationGame(BoardVals whoFirst, long timeLimit){
+        this(whoFirst, timeLimit, 8, 8);
+    }
+    
+    //Constructor for a game on a board of the indicated size (see BoardGeometry.get for the sizes allowed)
+    public IsolationGame(BoardVals whoFirst, long timeLimit, int rows, int columns){
+        this(whoFirst, timeLimit, rows, columns, new AIPlayer());
+    }
+    
+    //Constructor which also sets the AI player to use - an AI player (and its transposition table) can be shared by any number of games, as long as only
+    //one of them is searching at a time (this is how the GameServer keeps thousands of games from each needing their own table). The AI player can be null
+    //for a game whose AI moves are always found with findAIMove (GameSessionManager) - processAITurn and pondering then can't be used.
+    public IsolationGame(BoardVals whoFirst, long timeLimit, int rows, int columns, AIPlayer aiPlayer){
         if(whoFirst == BoardVals.PLAYER_O){
             playerTurn = BoardVals.PLAYER_O;
         }else{
             playerTurn = BoardVals.PLAYER_X;
         }
+        firstPlayer = playerTurn;
         //default minimum value of 500 milliseconds for time limit
         if(timeLimit > 500){
             this.timeLimit = timeLimit;
@@ -32,8 +67,9 @@ public class IsolationGame {
             this.timeLimit = 500;
         }
         
-        theBoard = new GameBoard(playerTurn);
-        playerX = new AIPlayer();
+        theBoard = new GameBoard(playerTurn, rows, columns);
+        moveSquares = new int[rows * columns];
+        playerX = aiPlayer;
         playerXMoves = new ArrayList<>();
         playerOMoves = new ArrayList<>();
     }
@@ -48,6 +84,16 @@ public class IsolationGame {
                 turnSuccess = true;
                 playerTurn = BoardVals.PLAYER_X; //since human turn was successful, set turn to AI player (player X)
                 playerOMoves.add(row+column);
+                moveSquares[numMoves++] = theBoard.getPlayerSquare(BoardVals.PLAYER_O);
+                if(ponderResult != null){
+                    int[] humanPos = theBoard.getPlayerO();
+                    if((humanPos[0] == predictedMove.getRow()) && (humanPos[1] == predictedMove.getColumn())){
+                        ponderHit = true; //leave the ponder search running - it's already searching this exact position
+                    }else{
+                        stopPondering();
+                    }
+                }
+                recordIfDecided();
             }
         }
         
@@ -60,14 +106,16 @@ public class IsolationGame {
     public boolean processAITurn(){
         boolean turnSuccess = false;
         if(playerTurn == BoardVals.PLAYER_X){ //only allow AI turn if it's their turn
-            GameMove aiMove = playerX.getAIMove(theBoard, playerTurn, timeLimit);
+            GameMove aiMove = null;
+            if(ponderHit){
+                aiMove = finishPonderSearch();
+            }
+            if(aiMove == null){
+                aiMove = playerX.getAIMove(theBoard, playerTurn, timeLimit);
+            }
 
-            if(playerX.makeAIMove(theBoard, aiMove)){
-                turnSuccess = true;
-                playerTurn = BoardVals.PLAYER_O; //since move was successful, change player turn to other player (Player O)
-                int adjustedCol = aiMove.getColumn() + 1;
-                playerXMoves.add(theBoard.getInverseRowMap().get(aiMove.getRow()) + adjustedCol);
-            }else{
+            turnSuccess = playAIMove(aiMove);
+            if(!turnSuccess){
                 System.out.println("There was an error with the AI in making its turn! Turn not completed successfully!");
             }
         }else{
@@ -76,6 +124,174 @@ public class IsolationGame {
         return turnSuccess;
     }
     
+    
+    //Finds the AI's move without making it - for callers which need to control the search themselves (see GameSessionManager). The search is run by the
+    //passed AI player, which may be shared with other games as long as only one of them uses it at a time, and runs until the passed timer runs out - the
+    //timer can be stopped from another thread to end the search early, and the best move found so far is returned. Pondering isn't used.
+    //Returns null if it isn't the AI's turn. The board must not be changed while the search is running.
+    public GameMove findAIMove(AIPlayer searcher, MoveTimer timer){
+        GameMove aiMove = null;
+        if(playerTurn == BoardVals.PLAYER_X){
+            aiMove = searcher.getAIMove(theBoard, playerTurn, timer);
+        }
+        return aiMove;
+    }
+    
+    
+    //Makes the AI's move (found by processAITurn or findAIMove) and hands the turn to the human. Returns true if the move was made, false if it isn't the
+    //AI's turn or the move isn't legal.
+    public boolean playAIMove(GameMove aiMove){
+        boolean moveMade = false;
+        if((playerTurn == BoardVals.PLAYER_X) && (aiMove != null)
+                && theBoard.attemptToMove(BoardVals.PLAYER_X, theBoard.getInverseRowMap().get(aiMove.getRow()), aiMove.getColumn() + 1)){
+            moveMade = true;
+            playerTurn = BoardVals.PLAYER_O; //since move was successful, change player turn to other player (Player O)
+            int adjustedCol = aiMove.getColumn() + 1;
+            playerXMoves.add(theBoard.getInverseRowMap().get(aiMove.getRow()) + adjustedCol);
+            moveSquares[numMoves++] = theBoard.getPlayerSquare(BoardVals.PLAYER_X);
+            if(ponderEnabled){
+                startPondering();
+            }
+            recordIfDecided();
+        }
+        return moveMade;
+    }
+    
+    
+    //Records the game in the journal (if there is one, and the board isn't too big for it) as soon as its result is decided - that's as soon as either
+    //player is stuck, since a player who is stuck after their own move loses once the other player has moved (drivers stop there without asking for that
+    //last move, so it isn't recorded). Only the first call after that records anything.
+    private void recordIfDecided(){
+        BoardGeometry geometry = theBoard.getGeometry();
+        if((journal != null) && !recorded && GameJournal.canRecord(geometry) && (getGameWinner() != BoardVals.NO_WINNER)){
+            recorded = true;
+            BoardVals opponent = (playerTurn == BoardVals.PLAYER_X) ? BoardVals.PLAYER_O : BoardVals.PLAYER_X;
+            BoardVals winner = theBoard.checkIfPlayerLose(playerTurn) ? opponent : playerTurn;
+            try{
+                journal.recordGame(geometry, firstPlayer, winner, moveSquares, numMoves);
+            }catch(IOException e){
+                System.out.println("The game couldn't be recorded in the journal: " + e);
+            }
+        }
+    }
+    
+    //Starts a ponder search on the position after the humans predicted reply. Nothing is started if there's no prediction, or if the game would be over.
+    private void startPondering(){
+        GameMove prediction = null;
+        if(!theBoard.checkIfPlayerLose(BoardVals.PLAYER_O)){
+            prediction = playerX.getPredictedReply(theBoard, BoardVals.PLAYER_O);
+        }
+        
+        if(prediction != null){
+            final GameBoard ponderBoard = new GameBoard(theBoard);
+            ponderBoard.makeMove(prediction);
+            if(!ponderBoard.checkIfPlayerLose(BoardVals.PLAYER_X)){
+                if(ponderThread == null){
+                    ponderThread = Executors.newSingleThreadExecutor(new ThreadFactory(){
+                        @Override
+                        public Thread newThread(Runnable task){
+                            Thread ponder = new Thread(task, "IsolationGame-ponder");
+                            ponder.setDaemon(true);
+                            return ponder;
+                        }
+                    });
+                }
+                predictedMove = prediction;
+                ponderHit = false;
+                //no time limit until the human moves - the search runs until it's stopped or restarted, and the restart keeps the AI's safety margin
+                ponderTimer = new MoveTimer(Long.MAX_VALUE, playerX.getSafetyMarginMillis());
+                final MoveTimer timer = ponderTimer;
+                ponderResult = ponderThread.submit(new Callable<GameMove>(){
+                    @Override
+                    public GameMove call(){
+                        return playerX.getAIMove(ponderBoard, BoardVals.PLAYER_X, timer);
+                    }
+                });
+            }
+        }
+    }
+    
+    
+    //Turns the running ponder search into the AI's turn after a ponder hit. The time already spent pondering counts towards the time limit, so if the
+    //search has already used up the full time limit it's stopped at once, otherwise it's given whatever is left. Returns the searched move, or null if
+    //the ponder search failed (the caller then does a normal search).
+    private GameMove finishPonderSearch(){
+        long timeUsed = ponderTimer.getElapsedTime();
+        if(timeUsed >= timeLimit){
+            ponderTimer.stop();
+        }else{
+            ponderTimer.restart(timeLimit - timeUsed);
+        }
+        return waitForPonderSearch();
+    }
+    
+    
+    //Stops any running ponder search and waits for it to finish (the AI player can't start another search until it has). The ponder thread is kept for
+    //the next ponder search - use close once the game is over.
+    public void stopPondering(){
+        if(ponderResult != null){
+            ponderTimer.stop();
+            waitForPonderSearch();
+        }
+    }
+    
+    
+    //Ends the game's background work - stops any running ponder search and shuts down the ponder thread. Should be called when a game ends or is
+    //abandoned, otherwise every game played leaves an idle ponder thread behind. If pondering is started again afterwards a new thread is created.
+    public void close(){
+        stopPondering();
+        if(ponderThread != null){
+            ponderThread.shutdown();
+            ponderThread = null;
+        }
+    }
+    
+    
+    //Helper which waits for the ponder search to end and clears the ponder state - returns the searched move, or null if the search failed
+    private GameMove waitForPonderSearch(){
+        GameMove ponderMove = null;
+        try{
+            ponderMove = ponderResult.get();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }catch(ExecutionException e){
+            System.out.println("The ponder search failed: " + e.getCause());
+        }
+        ponderResult = null;
+        ponderTimer = null;
+        predictedMove = null;
+        ponderHit = false;
+        return ponderMove;
+    }
+    
+    
+    //Gives the AI player an opening book to play its first moves from
+    public void setOpeningBook(OpeningBook openingBook){
+        playerX.setOpeningBook(openingBook);
+    }
+    
+    
+    //Gives the AI player an endgame tablebase to look up positions with few squares left in
+    public void setTablebase(EndgameTablebase tablebase){
+        playerX.setTablebase(tablebase);
+    }
+    
+    
+    //setter for the journal the game records itself in once its result is decided (null to not record it)
+    public void setJournal(GameJournal journal){
+        this.journal = journal;
+    }
+    
+    
+    //Turns pondering on or off - turning it off also stops a ponder search that is already running
+    public void setPonderEnabled(boolean ponderEnabled){
+        this.ponderEnabled = ponderEnabled;
+        if(!ponderEnabled){
+            stopPondering();
+        }
+    }
+    
+    
     //returns the value of the winner - if nobody has won yet, returns the default "NO_WINNER" value
     public BoardVals getGameWinner(){
         BoardVals winner = BoardVals.NO_WINNER;
@@ -89,6 +305,11 @@ public class IsolationGame {
         return winner;
     }
     
+    //getter for the AI's time limit per move in milliseconds
+    public long getTimeLimit(){
+        return timeLimit;
+    }
+    
     //getter for the game board
     public GameBoard getGameBoard(){
         return theBoard;
@@ -5,6 +5,8 @@
 package isolationgame;
 
 import java.io.Console;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 //Driver for the isolation game, which handles the command line user interface and the tracking of game status
@@ -51,6 +53,7 @@ public class IsolationGameDriver {
         IsolationGame theGame;
         BoardVals startingPlayer;
         long timeLimit;
+        BoardGeometry geometry;
         
         
         System.out.println("");//spacing
@@ -93,8 +96,43 @@ public class IsolationGameDriver {
             }
         }
 
-        //with starting player and time limit selected, game can begin
-        theGame = new IsolationGame(startingPlayer, timeLimit);
+        System.out.println("");//spacing
+        System.out.println("");
+        System.out.println("Finally, enter the board size as rows x columns (for example 10x10), or just press enter for the standard 8x8 board: ");
+        while(true){ //loop until player enters appropriate value, then break - get board size here
+            String size = console.readLine();
+            size = size.trim();
+            
+            if(size.isEmpty()){
+                geometry = BoardGeometry.STANDARD;
+                break;
+            }else if(size.matches("\\d{1,4}\\s*[xX]\\s*\\d{1,4}")){
+                String[] dimensions = size.split("\\s*[xX]\\s*");
+                try{
+                    geometry = BoardGeometry.get(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]));
+                    break;
+                }catch(IllegalArgumentException e){
+                    System.out.println(e.getMessage() + " - try again.");
+                }
+            }else{
+                System.out.println("That is not a valid board size - please enter it as rows x columns, like 8x8.");
+            }
+        }
+        
+        //with starting player, time limit and board size selected, game can begin
+        theGame = new IsolationGame(startingPlayer, timeLimit, geometry.getRows(), geometry.getColumns());
+        theGame.setPonderEnabled(true); //let the AI keep thinking while the player decides on their move
+        OpeningBook openingBook = null;
+        if(geometry == BoardGeometry.STANDARD){
+            openingBook = loadOpeningBook(); //the book is built for the standard board only
+        }
+        if(openingBook != null){
+            theGame.setOpeningBook(openingBook);
+        }
+        EndgameTablebase tablebase = loadTablebase();
+        if((tablebase != null) && (tablebase.getGeometry() == geometry)){ //a tablebase only covers the board size it was built for
+            theGame.setTablebase(tablebase);
+        }
         //main control loop for gameplay
         while(playingGameFlag){
             for(int i = 0; i < 100; i++){
@@ -130,9 +168,10 @@ public class IsolationGameDriver {
                     String userInput;
                     userInput = console.readLine();
                     userInput = userInput.trim();
-                    if(userInput.matches("[A-Ha-h][1-8]")){
-                        String userRow = userInput.substring(0, 1).toUpperCase();
-                        int userColumn = Integer.parseInt(userInput.substring(1, 2));
+                    int userSquare = geometry.parseSquare(userInput);
+                    if(userSquare >= 0){
+                        String userRow = geometry.getRowLabel(geometry.squareRow(userSquare));
+                        int userColumn = geometry.squareColumn(userSquare) + 1;
                         if(theGame.processHumanTurn(userRow, userColumn)){
                             System.out.println("Move made");
                             break;
@@ -164,6 +203,7 @@ public class IsolationGameDriver {
             turnNum++;
         }
         
+        theGame.close(); //the game is over (or was quit), so the AI has nothing left to think about - this also ends the ponder thread
         for(int i = 0; i < 100; i++){
             System.out.println(""); //fake clearing the screen - since Java lacks command line clearing support in Windows 10
         }
@@ -184,6 +224,36 @@ public class IsolationGameDriver {
     }
     
     
+    //Method which loads the opening book from the working directory, if there is one (see OpeningBookGenerator). Returns null if there is no usable book -
+    //the AI then simply searches every move.
+    public static OpeningBook loadOpeningBook(){
+        OpeningBook openingBook = null;
+        if(new File(OpeningBook.DEFAULT_FILE_NAME).isFile()){
+            try{
+                openingBook = new OpeningBook(OpeningBook.DEFAULT_FILE_NAME);
+            }catch(IOException e){
+                System.out.println("Could not load the opening book: " + e.getMessage());
+            }
+        }
+        return openingBook;
+    }
+    
+    
+    //Method which loads the endgame tablebase from the working directory, if there is one (see EndgameTablebaseGenerator). Returns null if there is no
+    //usable tablebase - the AI then searches the endgame like any other position.
+    public static EndgameTablebase loadTablebase(){
+        EndgameTablebase tablebase = null;
+        if(new File(EndgameTablebase.DEFAULT_FILE_NAME).isFile()){
+            try{
+                tablebase = new EndgameTablebase(EndgameTablebase.DEFAULT_FILE_NAME);
+            }catch(IOException e){
+                System.out.println("Could not load the endgame tablebase: " + e.getMessage());
+            }
+        }
+        return tablebase;
+    }
+    
+    
     //Method which prints out all of the current moves in a game in a formatted manner
     public static void printMoves(IsolationGame theGame, int turns){
         List<String> humanMoves = theGame.getPlayerOMoves();
@@ -0,0 +1,297 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Load test for the GameServer. A number of clients play games against the server at the same time, each over its own connection, picking random legal
+//moves (the client follows every game on its own board, so it knows which moves are legal and when a game has to end). Every AI move is timed from the
+//moment the command that asked for it was sent until the AI line came back. At the end the throughput (games and AI moves per second) and the AI move
+//latency percentiles are reported.
+//Extra idle connections can be held open for the whole test, to check that a server with thousands of quiet connections is still just as fast.
+//Usage: LoadTestClient [options]
+//  -host HOST     server to test (default localhost)
+//  -port N        server port (default 4200)
+//  -local         start a GameServer in this process on a free loopback port and test that instead
+//  -clients N     games played at once (default 16)
+//  -games N       games to play in total (default 200)
+//  -idle N        extra connections held open without playing (default 0)
+//  -time MS       AI time limit per move asked for in each NEW (default 500)
+//  -size RxC      board size (default 8x8)
+//  -seed N        seed for the random moves
+//  with -local, the server's options:
+//  -lanes N       search lanes (default: number of processors)
+//  -nodes N       node limit per AI move (default 20000 - keeps the AI's moves short, so the test measures the server rather than the search)
+//  -hash MB       transposition table size of each lane (default 16)
+public class LoadTestClient {
+    private final InetSocketAddress serverAddress;
+    private final long timeLimit;
+    private final BoardGeometry geometry;
+    private final AtomicInteger gamesLeft;
+    private final AtomicInteger gamesPlayed = new AtomicInteger();
+    private final AtomicInteger failedGames = new AtomicInteger();
+    
+    
+    //Constructor - the client plays numGames games against the server at serverAddress, asking for timeLimit milliseconds per AI move
+    public LoadTestClient(InetSocketAddress serverAddress, int numGames, long timeLimit, BoardGeometry geometry){
+        this.serverAddress = serverAddress;
+        this.timeLimit = timeLimit;
+        this.geometry = geometry;
+        gamesLeft = new AtomicInteger(numGames);
+    }
+    
+    
+    public static void main(String[] args) throws IOException{
+        String host = "localhost";
+        int port = GameServer.DEFAULT_PORT;
+        boolean local = false;
+        int numClients = 16;
+        int numGames = 200;
+        int numIdle = 0;
+        long timeLimit = 500;
+        BoardGeometry geometry = BoardGeometry.STANDARD;
+        long seed = System.nanoTime();
+        int numLanes = Runtime.getRuntime().availableProcessors();
+        long nodeLimit = 20000;
+        int tableSizeMB = 16;
+        for(int i = 0; i < args.length; i++){
+            String option = args[i];
+            String value = (i + 1 < args.length) ? args[i + 1] : "";
+            i++;
+            if(option.equals("-host")){
+                host = value;
+            }else if(option.equals("-port")){
+                port = Integer.parseInt(value);
+            }else if(option.equals("-local")){
+                local = true;
+                i--; //takes no value
+            }else if(option.equals("-clients")){
+                numClients = Integer.parseInt(value);
+            }else if(option.equals("-games")){
+                numGames = Integer.parseInt(value);
+            }else if(option.equals("-idle")){
+                numIdle = Integer.parseInt(value);
+            }else if(option.equals("-time")){
+                timeLimit = Long.parseLong(value);
+            }else if(option.equals("-size")){
+                String[] dimensions = value.split("[xX]");
+                geometry = BoardGeometry.get(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[dimensions.length - 1]));
+            }else if(option.equals("-seed")){
+                seed = Long.parseLong(value);
+            }else if(option.equals("-lanes")){
+                numLanes = Integer.parseInt(value);
+            }else if(option.equals("-nodes")){
+                nodeLimit = Long.parseLong(value);
+            }else if(option.equals("-hash")){
+                tableSizeMB = Integer.parseInt(value);
+            }else{
+                System.out.println("Unknown option: " + option);
+                System.exit(2);
+            }
+        }
+        
+        GameServer server = null;
+        if(local){
+            server = new GameServer(0, numLanes, numClients, timeLimit, Math.max(timeLimit, GameServer.DEFAULT_MAX_TIME_LIMIT), nodeLimit, tableSizeMB);
+            Thread serverThread = new Thread(server, "GameServer-selector");
+            serverThread.setDaemon(true);
+            serverThread.start();
+            host = "localhost";
+            port = server.getPort();
+            System.out.println("Started a local server on port " + port + " with " + numLanes + " search threads, " + nodeLimit + " nodes/move");
+        }
+        
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        List<SocketChannel> idleConnections = openIdleConnections(address, numIdle);
+        System.out.println(numClients + " clients playing " + numGames + " games on " + geometry + " at " + timeLimit + " ms/move, with "
+                + idleConnections.size() + " idle connections");
+        LoadTestClient client = new LoadTestClient(address, numGames, timeLimit, geometry);
+        client.runTest(numClients, seed);
+        
+        for(SocketChannel idle : idleConnections){
+            idle.close();
+        }
+        if(server != null){
+            server.stop();
+        }
+    }
+    
+    
+    //Runs the test with the indicated number of clients playing at once, and prints the results
+    public void runTest(int numClients, long seed){
+        ExecutorService clients = Executors.newFixedThreadPool(Math.max(numClients, 1));
+        List<Future<long[]>> clientLatencies = new ArrayList<>();
+        long startTime = System.nanoTime();
+        for(int i = 0; i < Math.max(numClients, 1); i++){
+            final Random random = new Random(seed + i);
+            clientLatencies.add(clients.submit(new Callable<long[]>(){
+                @Override
+                public long[] call() throws IOException{
+                    return playGames(random);
+                }
+            }));
+        }
+        
+        List<long[]> allLatencies = new ArrayList<>();
+        int numMoves = 0;
+        for(Future<long[]> latencies : clientLatencies){
+            long[] clientMoves = waitForClient(latencies);
+            allLatencies.add(clientMoves);
+            numMoves += clientMoves.length;
+        }
+        double seconds = (System.nanoTime() - startTime) / 1.0e9;
+        clients.shutdown();
+        
+        long[] latencies = new long[numMoves];
+        int filled = 0;
+        for(long[] clientMoves : allLatencies){
+            System.arraycopy(clientMoves, 0, latencies, filled, clientMoves.length);
+            filled += clientMoves.length;
+        }
+        Arrays.sort(latencies);
+        System.out.println(String.format("Played %d games (%d failed) with %d AI moves in %.1f s: %.2f games/s, %.1f AI moves/s", gamesPlayed.get(),
+                failedGames.get(), numMoves, seconds, gamesPlayed.get() / seconds, numMoves / seconds));
+        System.out.println(String.format("AI move latency (ms): p50 %.1f, p90 %.1f, p99 %.1f, max %.1f", getPercentileMillis(latencies, 50),
+                getPercentileMillis(latencies, 90), getPercentileMillis(latencies, 99), getPercentileMillis(latencies, 100)));
+    }
+    
+    
+    //One client - plays games over a single connection until there are none left, and returns the latency of every AI move it saw in nanoseconds
+    private long[] playGames(Random random) throws IOException{
+        List<Long> latencies = new ArrayList<>();
+        try(Socket socket = new Socket()){
+            socket.setTcpNoDelay(true);
+            socket.connect(serverAddress);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII);
+            while(gamesLeft.getAndDecrement() > 0){
+                if(playGame(in, out, random, latencies)){
+                    gamesPlayed.incrementAndGet();
+                }else{
+                    failedGames.incrementAndGet();
+                }
+            }
+            sendCommand(out, "QUIT");
+        }
+        
+        long[] latencyArray = new long[latencies.size()];
+        for(int i = 0; i < latencyArray.length; i++){
+            latencyArray[i] = latencies.get(i);
+        }
+        return latencyArray;
+    }
+    
+    
+    //Plays one game, with a random player moving first - returns true if the game was played to the end, false if the server refused a command (the
+    //game is then abandoned)
+    private boolean playGame(BufferedReader in, Writer out, Random random, List<Long> latencies) throws IOException{
+        BoardVals playerToMove = random.nextBoolean() ? BoardVals.PLAYER_X : BoardVals.PLAYER_O;
+        GameBoard board = new GameBoard(playerToMove, geometry);
+        long requestTime = System.nanoTime();
+        sendCommand(out, "NEW " + ((playerToMove == BoardVals.PLAYER_X) ? "X " : "O ") + timeLimit + " " + geometry);
+        boolean playing = readReply(in).startsWith("OK NEW");
+        
+        while(playing && !board.checkIfPlayerLose(playerToMove)){
+            if(playerToMove == BoardVals.PLAYER_O){
+                List<GameMove> moves = board.getPossibleMoves(BoardVals.PLAYER_O);
+                GameMove move = moves.get(random.nextInt(moves.size()));
+                requestTime = System.nanoTime();
+                sendCommand(out, "MOVE " + geometry.getSquareName(geometry.toSquare(move.getRow(), move.getColumn())));
+                playing = readReply(in).startsWith("OK MOVE");
+                board.makeMove(move);
+                playerToMove = BoardVals.PLAYER_X;
+            }else{
+                String reply = readReply(in);
+                playing = reply.startsWith("AI ") && (geometry.parseSquare(reply.substring(3)) >= 0)
+                        && board.isLegalMove(BoardVals.PLAYER_X, geometry.parseSquare(reply.substring(3)));
+                if(playing){
+                    latencies.add(System.nanoTime() - requestTime);
+                    board.makeMove(BoardVals.PLAYER_X, geometry.parseSquare(reply.substring(3)));
+                }
+                playerToMove = BoardVals.PLAYER_O;
+            }
+        }
+        
+        if(playing){ //the player to move is stuck, so the server should have announced the other player as the winner
+            playing = readReply(in).equals("OVER " + ((playerToMove == BoardVals.PLAYER_X) ? "O" : "X"));
+        }
+        return playing;
+    }
+    
+    
+    //Helper which sends one command line
+    private static void sendCommand(Writer out, String command) throws IOException{
+        out.write(command + "\n");
+        out.flush();
+    }
+    
+    
+    //Helper which reads one reply line - a closed connection is an error, since the server only closes after QUIT
+    private static String readReply(BufferedReader in) throws IOException{
+        String reply = in.readLine();
+        if(reply == null){
+            throw new IOException("The server closed the connection");
+        }
+        return reply;
+    }
+    
+    
+    //Helper which opens the idle connections - stops early (with a message) if the machine runs out of sockets
+    private static List<SocketChannel> openIdleConnections(InetSocketAddress address, int numIdle){
+        List<SocketChannel> idleConnections = new ArrayList<>();
+        try{
+            while(idleConnections.size() < numIdle){
+                idleConnections.add(SocketChannel.open(address));
+            }
+        }catch(IOException e){
+            System.out.println("Could only open " + idleConnections.size() + " idle connections: " + e);
+        }
+        return idleConnections;
+    }
+    
+    
+    //Helper which waits for a client to finish and returns its latencies - a client that failed is reported and counts as having no moves
+    private static long[] waitForClient(Future<long[]> latencies){
+        long[] clientLatencies = new long[0];
+        try{
+            clientLatencies = latencies.get();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }catch(ExecutionException e){
+            System.out.println("A load test client failed: " + e.getCause());
+        }
+        return clientLatencies;
+    }
+    
+    
+    //Helper which returns the indicated percentile of the sorted latencies in milliseconds (nearest rank - 100 is the maximum, 0 if there are none)
+    private static double getPercentileMillis(long[] sortedLatencies, double percentile){
+        double millis = 0.0;
+        if(sortedLatencies.length > 0){
+            int rank = (int)Math.ceil(percentile / 100.0 * sortedLatencies.length);
+            millis = sortedLatencies[Math.max(rank - 1, 0)] / 1.0e6;
+        }
+        return millis;
+    }
+    
+}
@@ -0,0 +1,22 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+//The original evaluator - scores a position as the players moves minus twice their opponents moves (see GameBoard.evaluatePlayerPosition). It only
+//looks at the move counts the search has already made, so it costs nothing extra at a leaf.
+public class MobilityEvaluator implements PositionEvaluator {
+    
+    @Override
+    public int evaluate(GameBoard theBoard, BoardVals player, int playerMoves, int opponentMoves){
+        return GameBoard.getMobilityScore(playerMoves, opponentMoves);
+    }
+    
+    
+    @Override
+    public String toString(){
+        return "mobility";
+    }
+    
+}
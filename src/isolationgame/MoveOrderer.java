@@ -0,0 +1,126 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+//Class which decides the order the search tries moves in. Alpha-beta prunes the most when the best move is tried first, so moves are ordered:
+//1) the principal variation move - the best move stored for this position by an earlier (shallower) search
+//2) the killer moves for this ply - moves which caused a cutoff in a sibling position at the same depth of the tree
+//3) everything else, sorted by the history table - a running score for each player/destination square which grows every time that move causes a cutoff
+//The killer and history tables are kept between iterations (that's where they're useful), and the history is aged between searches.
+public class MoveOrderer {
+    private static final int MAX_PLY = 256; //deeper than the search ever goes (max depth is 200)
+    private static final int NUM_KILLERS = 2;
+    private static final int PV_MOVE_SCORE = Integer.MAX_VALUE;
+    private static final int KILLER_MOVE_SCORE = Integer.MAX_VALUE - 10; //killers are scored just below the PV move, in slot order
+    private static final int HISTORY_LIMIT = 1 << 28; //history scores are halved if any reaches this, so they always stay below the killer scores
+    private int[][] killerMoves; //destination squares of the killer moves, per ply
+    private int[][] historyScores; //indexed by [player][destination square]
+    private int[] moveScores; //scratch space for sorting - only used while ordering a single list, so it's shared by every node
+    
+    
+    //Constructor - starts with empty killer and history tables
+    public MoveOrderer(){
+        killerMoves = new int[MAX_PLY][NUM_KILLERS];
+        historyScores = new int[2][BoardGeometry.MAX_SQUARES];
+        moveScores = new int[BoardGeometry.MAX_SQUARES];
+        clearKillers();
+    }
+    
+    
+    //Sorts the first numMoves packed moves of the buffer in place so the most promising moves come first. tableMove is the destination square of the best
+    //move stored in the transposition table for this position (TranspositionTable.NO_MOVE if there isn't one) and ply is the distance of this position
+    //from the root.
+    public void orderMoves(int[] moves, int numMoves, int tableMove, int ply){
+        int[] killers = killerMoves[Math.min(ply, MAX_PLY - 1)];
+        
+        for(int i = 0; i < numMoves; i++){
+            int move = moves[i];
+            int square = PackedMove.getToSquare(move);
+            int score;
+            if(square == tableMove){
+                score = PV_MOVE_SCORE;
+            }else if(square == killers[0]){
+                score = KILLER_MOVE_SCORE;
+            }else if(square == killers[1]){
+                score = KILLER_MOVE_SCORE - 1;
+            }else{
+                score = historyScores[PackedMove.getPlayerIndex(move)][square];
+            }
+            moveScores[i] = score;
+        }
+        
+        //insertion sort (highest score first) - move lists are short, so this beats anything fancier
+        for(int i = 1; i < numMoves; i++){
+            int score = moveScores[i];
+            int move = moves[i];
+            int j = i - 1;
+            while((j >= 0) && (moveScores[j] < score)){
+                moveScores[j + 1] = moveScores[j];
+                moves[j + 1] = moves[j];
+                j--;
+            }
+            moveScores[j + 1] = score;
+            moves[j + 1] = move;
+        }
+    }
+    
+    
+    //Records a move which caused a beta cutoff - it becomes the first killer for its ply and its history score is raised. Deeper searches are weighted
+    //more heavily since a cutoff high up in the tree saves much more work.
+    public void recordCutoff(int move, int ply, int depth){
+        int square = PackedMove.getToSquare(move);
+        int[] killers = killerMoves[Math.min(ply, MAX_PLY - 1)];
+        if(killers[0] != square){
+            killers[1] = killers[0];
+            killers[0] = square;
+        }
+        
+        int[] history = historyScores[PackedMove.getPlayerIndex(move)];
+        history[square] += depth * depth;
+        if(history[square] >= HISTORY_LIMIT){
+            ageHistory();
+        }
+    }
+    
+    
+    //Prepares the tables for a new search - killers from the last search are for a different root position so they're dropped, and the history is
+    //halved so it favours what has been working recently without throwing it away.
+    public void newSearch(){
+        clearKillers();
+        ageHistory();
+    }
+    
+    
+    //Empties the killer and history tables, as if no search had been run yet - for starting over on an unrelated position
+    public void clear(){
+        clearKillers();
+        for(int[] history : historyScores){
+            for(int i = 0; i < history.length; i++){
+                history[i] = 0;
+            }
+        }
+    }
+    
+    
+    //Helper which empties the killer moves
+    private void clearKillers(){
+        for(int[] killers : killerMoves){
+            for(int i = 0; i < NUM_KILLERS; i++){
+                killers[i] = TranspositionTable.NO_MOVE;
+            }
+        }
+    }
+    
+    
+    //Helper which halves every history score
+    private void ageHistory(){
+        for(int[] history : historyScores){
+            for(int i = 0; i < history.length; i++){
+                history[i] /= 2;
+            }
+        }
+    }
+    
+}
@@ -4,42 +4,163 @@
 
 package isolationgame;
 
-import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 //for easy checking of time remaining
+//A timer can also be stopped early or given a new time limit from another thread (used to end or extend a background ponder search), so its state is volatile.
+//Time is measured with System.nanoTime (no objects are created to read the clock). On top of that, every timed timer schedules a hard stop on a shared
+//background thread, which sets the stop flag the moment the time limit is reached - so a search checking only the cheap flag at every node is still
+//guaranteed to be told to stop on time, and only needs to read the clock itself every so often as a backup.
+//A safety margin can be taken off the time limit so there's time left to hand the move back before the limit actually runs out.
 public class MoveTimer {
-    private long maxTimeMillis;
-    private long startTime;
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final long NO_LIMIT = Long.MAX_VALUE; //limit used for timers which only end when stopped
+    private static final ScheduledThreadPoolExecutor HARD_STOP_SCHEDULER = createScheduler();
+    private volatile long limitNanos;
+    private volatile long startTime; //System.nanoTime when the timer (re)started
+    private volatile boolean stopRequested; //set by stop() - the timer then reports elapsed no matter how much time is left
+    private ScheduledFuture<?> hardStop; //the scheduled stop() call for the current time limit, if there is one
+    private final long safetyMarginMillis; //taken off every time limit the timer is started or restarted with
     
     //Constructor - max time must be passed in number of milliseconds
     //Note that the timer starts as soon as it's instantiated
     public MoveTimer(long maxTime){
+        this(maxTime, 0);
+    }
+    
+    
+    
+    //Constructor which also takes a safety margin in milliseconds - the timer reports elapsed that much before the max time. The margin is never allowed
+    //to eat more than half of the max time.
+    public MoveTimer(long maxTime, long safetyMarginMillis){
         //if a negative value is passed, default to 500 milliseconds (no negative times are allowed)
-        if(maxTime > 0){
-            maxTimeMillis = maxTime;
+        if(maxTime <= 0){
+            maxTime = 500;
+        }
+        this.safetyMarginMillis = Math.max(safetyMarginMillis, 0);
+        
+        startTimer(applySafetyMargin(maxTime));
+    }
+    
+    
+    //Helper which takes the safety margin off a max time - never more than half of it
+    private long applySafetyMargin(long maxTime){
+        long marginTime = maxTime;
+        if(safetyMarginMillis > 0){
+            marginTime = Math.max(maxTime - safetyMarginMillis, maxTime / 2);
+        }
+        return marginTime;
+    }
+    
+    
+    //Builds the single daemon thread used for the hard stops of every timer
+    private static ScheduledThreadPoolExecutor createScheduler(){
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory(){
+            @Override
+            public Thread newThread(Runnable task){
+                Thread timerThread = Executors.defaultThreadFactory().newThread(task);
+                timerThread.setName("MoveTimer-hard-stop");
+                timerThread.setDaemon(true);
+                return timerThread;
+            }
+        });
+        scheduler.setRemoveOnCancelPolicy(true); //restarted timers cancel their old stop - don't let those pile up in the queue
+        return scheduler;
+    }
+    
+    
+    //Helper which starts (or restarts) the timer with the indicated max time in milliseconds and schedules its hard stop
+    private synchronized void startTimer(long maxTime){
+        if(hardStop != null){
+            hardStop.cancel(false);
+            hardStop = null;
+        }
+        
+        if(maxTime >= (NO_LIMIT / NANOS_PER_MILLI)){
+            limitNanos = NO_LIMIT;
         }else{
-            maxTimeMillis = 500;
+            limitNanos = maxTime * NANOS_PER_MILLI;
         }
+        startTime = System.nanoTime();
         
-        Instant instant = Instant.now();
-        startTime = instant.toEpochMilli();
+        if(limitNanos != NO_LIMIT){
+            hardStop = HARD_STOP_SCHEDULER.schedule(new Runnable(){
+                @Override
+                public void run(){
+                    stopRequested = true;
+                }
+            }, limitNanos, TimeUnit.NANOSECONDS);
+        }
     }
     
     //returns the time elapsed since the timer started in milliseconds
     public long getElapsedTime(){
-        Instant instant = Instant.now();
-        return (instant.toEpochMilli() - startTime);
+        return (System.nanoTime() - startTime) / NANOS_PER_MILLI;
     }
     
-    //returns true if the elapsed time is greater than or equal to the specified MAX time
+    //returns the time elapsed since the timer started in nanoseconds
+    public long getElapsedNanos(){
+        return System.nanoTime() - startTime;
+    }
+    
+    //returns the time left before the time limit is reached in nanoseconds - 0 once it has been reached or the timer has been stopped, and Long.MAX_VALUE
+    //for a timer with no time limit
+    public long getRemainingNanos(){
+        long remaining = NO_LIMIT;
+        if(stopRequested){
+            remaining = 0;
+        }else if(limitNanos != NO_LIMIT){
+            remaining = Math.max(limitNanos - (System.nanoTime() - startTime), 0);
+        }
+        return remaining;
+    }
+    
+    //returns true if the timer ends on its own - false for timers which only end when stopped
+    public boolean hasTimeLimit(){
+        return limitNanos != NO_LIMIT;
+    }
+    
+    //getter for the time limit in nanoseconds (Long.MAX_VALUE for a timer with no time limit)
+    public long getLimitNanos(){
+        return limitNanos;
+    }
+    
+    //returns true if the elapsed time is greater than or equal to the specified MAX time, or if the timer has been stopped
     public boolean isTimeElapsed(){
-        Instant instant = Instant.now();
         boolean elapsed = false;
-        if((instant.toEpochMilli() - startTime) >= maxTimeMillis){
+        if(stopRequested || ((System.nanoTime() - startTime) >= limitNanos)){
             elapsed = true;
         }
         
         return elapsed;
     }
     
+    
+    //returns true if the timer has been stopped, either by stop() or by its hard stop when the time limit was reached. This only reads a flag (the clock
+    //isn't touched), so it's cheap enough to check at every node of the search.
+    public boolean isStopRequested(){
+        return stopRequested;
+    }
+    
+    
+    //Forces the timer to report that time has elapsed - any search using this timer will wrap up and return as soon as it next checks the timer
+    public synchronized void stop(){
+        stopRequested = true;
+        if(hardStop != null){
+            hardStop.cancel(false);
+            hardStop = null;
+        }
+    }
+    
+    
+    //Restarts the timer from now with a new max time (in milliseconds) - used to turn an open-ended ponder search into a normal timed search. The safety
+    //margin is taken off the new max time just as it is in the constructor.
+    public void restart(long maxTime){
+        startTimer(applySafetyMargin(Math.max(maxTime, 0)));
+    }
+    
 }
@@ -0,0 +1,106 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.SortedMap;
+
+//Opening book - the best move for each position of the opening, worked out ahead of time by OpeningBookGenerator so the first moves of a game don't
+//have to be searched at all.
+//The book file is a short header followed by fixed-size entries (position key, move square) sorted by key. It's memory-mapped read-only and searched
+//with a binary search straight out of the mapping, so nothing is loaded onto the heap and every game process reading the same book shares the one copy
+//held in the operating systems page cache.
+//Positions are keyed by GameBoard.getZobristKey(player to move). The header records the key of the starting position, so a book written with different
+//Zobrist keys is rejected instead of giving nonsense moves.
+public class OpeningBook {
+    public static final String DEFAULT_FILE_NAME = "openingbook.bin";
+    private static final int MAGIC = 0x49534F42; //"ISOB"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 20; //magic, version, starting position key, number of entries
+    private static final int ENTRY_BYTES = 10; //position key (long) and move square (short)
+    private final MappedByteBuffer entries;
+    private final int numEntries;
+    
+    
+    //Constructor - maps the indicated book file. Throws an IOException if the file can't be read or isn't a valid book for this version of the game.
+    public OpeningBook(String fileName) throws IOException{
+        try(FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)){
+            long fileSize = channel.size();
+            if(fileSize < HEADER_BYTES){
+                throw new IOException("Opening book " + fileName + " is too short to be a book file");
+            }
+            entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize); //the mapping stays valid after the channel is closed
+        }
+        
+        if((entries.getInt(0) != MAGIC) || (entries.getInt(4) != VERSION)){
+            throw new IOException("Opening book " + fileName + " is not a version " + VERSION + " book file");
+        }
+        if(entries.getLong(8) != getStartingKey()){
+            throw new IOException("Opening book " + fileName + " was generated with different position keys - regenerate it");
+        }
+        numEntries = entries.getInt(16);
+        if((numEntries < 0) || (((long)numEntries * ENTRY_BYTES) != (entries.capacity() - HEADER_BYTES))){
+            throw new IOException("Opening book " + fileName + " is truncated or corrupt");
+        }
+    }
+    
+    
+    //Looks up a position by its key - returns the square of the book move, or TranspositionTable.NO_MOVE if the position isn't in the book
+    public int probe(long key){
+        int move = TranspositionTable.NO_MOVE;
+        int low = 0;
+        int high = numEntries - 1;
+        while(low <= high){
+            int middle = (low + high) >>> 1;
+            int offset = HEADER_BYTES + (middle * ENTRY_BYTES);
+            long middleKey = entries.getLong(offset);
+            if(middleKey < key){
+                low = middle + 1;
+            }else if(middleKey > key){
+                high = middle - 1;
+            }else{
+                move = entries.getShort(offset + 8);
+                break;
+            }
+        }
+        return move;
+    }
+    
+    
+    //Writes a book file holding the passed moves (position key -> move square). A SortedMap is required since the entries must be written in key order.
+    public static void write(String fileName, SortedMap<Long, Integer> bookMoves) throws IOException{
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))){
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(getStartingKey());
+            out.writeInt(bookMoves.size());
+            for(Map.Entry<Long, Integer> entry : bookMoves.entrySet()){
+                out.writeLong(entry.getKey());
+                out.writeShort(entry.getValue());
+            }
+        }
+    }
+    
+    
+    //Helper giving the key of the standard starting position - stored in the header to check the book matches the current Zobrist keys
+    private static long getStartingKey(){
+        return new GameBoard(BoardVals.PLAYER_X).getZobristKey(BoardVals.PLAYER_X);
+    }
+    
+    
+    //getter for the number of positions in the book
+    public int getNumEntries(){
+        return numEntries;
+    }
+    
+}
@@ -0,0 +1,98 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+//Offline tool which builds the opening book. Starting from the standard corner start (with either player moving first), the opening tree is walked for a
+//set number of plies: wherever the book player is to move the position is searched to a fixed depth and only the chosen move is followed, and wherever
+//the opponent is to move every reply is followed. This is done with each player as the book player, so the book covers the AI playing either side.
+//Usage: OpeningBookGenerator [output file] [book plies] [search depth] [search threads]
+public class OpeningBookGenerator {
+    private static final int DEFAULT_BOOK_PLIES = 4;
+    private static final int DEFAULT_SEARCH_DEPTH = 8;
+    private static final int TABLE_SIZE_MB = 64;
+    private SortedMap<Long, Integer> bookMoves; //position key -> move square
+    private int bookPlies;
+    private int searchDepth;
+    private int numThreads;
+    
+    
+    //Constructor - book plies is how far into the game the book reaches, search depth is how deep each book position is searched
+    public OpeningBookGenerator(int bookPlies, int searchDepth, int numThreads){
+        this.bookPlies = bookPlies;
+        this.searchDepth = searchDepth;
+        this.numThreads = Math.max(numThreads, 1);
+        bookMoves = new TreeMap<>();
+    }
+    
+    
+    public static void main(String[] args){
+        String fileName = (args.length > 0) ? args[0] : OpeningBook.DEFAULT_FILE_NAME;
+        int bookPlies = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_BOOK_PLIES;
+        int searchDepth = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_SEARCH_DEPTH;
+        int numThreads = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        
+        OpeningBookGenerator generator = new OpeningBookGenerator(bookPlies, searchDepth, numThreads);
+        long startTime = System.currentTimeMillis();
+        generator.generate();
+        try{
+            OpeningBook.write(fileName, generator.getBookMoves());
+            System.out.println("Wrote " + generator.getBookMoves().size() + " positions to " + fileName + " in "
+                    + ((System.currentTimeMillis() - startTime) / 1000) + " seconds");
+        }catch(IOException e){
+            System.out.println("Could not write the opening book: " + e.getMessage());
+        }
+    }
+    
+    
+    //Walks the opening tree for every combination of starting player and book player, filling in the book moves
+    public void generate(){
+        BoardVals[] players = {BoardVals.PLAYER_X, BoardVals.PLAYER_O};
+        for(BoardVals bookPlayer : players){
+            AIPlayer searcher = new AIPlayer(TABLE_SIZE_MB, numThreads); //one searcher per side, so its table only ever holds that sides scores
+            for(BoardVals startingPlayer : players){
+                System.out.println("Building book for player " + ((bookPlayer == BoardVals.PLAYER_X) ? "X" : "O") + " with player "
+                        + ((startingPlayer == BoardVals.PLAYER_X) ? "X" : "O") + " moving first...");
+                expand(new GameBoard(startingPlayer), startingPlayer, bookPlayer, searcher, bookPlies);
+            }
+        }
+    }
+    
+    
+    //Helper which adds the book moves for the passed position and everything below it, down to the indicated number of plies
+    private void expand(GameBoard board, BoardVals playerToMove, BoardVals bookPlayer, AIPlayer searcher, int pliesLeft){
+        if((pliesLeft > 0) && !board.checkIfPlayerLose(playerToMove)){
+            BoardVals opponent = (playerToMove == BoardVals.PLAYER_X) ? BoardVals.PLAYER_O : BoardVals.PLAYER_X;
+            if(playerToMove == bookPlayer){
+                long key = board.getZobristKey(playerToMove);
+                Integer square = bookMoves.get(key); //positions can be reached by more than one move order - only search them once
+                if(square == null){
+                    GameMove bookMove = searcher.getAIMoveToDepth(board, playerToMove, searchDepth);
+                    square = board.getGeometry().toSquare(bookMove.getRow(), bookMove.getColumn());
+                    bookMoves.put(key, square);
+                }
+                GameBoard nextBoard = new GameBoard(board);
+                nextBoard.makeMove(playerToMove, square);
+                expand(nextBoard, opponent, bookPlayer, searcher, pliesLeft - 1);
+            }else{
+                List<GameMove> replies = board.getPossibleMoves(playerToMove);
+                for(GameMove reply : replies){
+                    expand(new GameBoard(board, playerToMove, reply), opponent, bookPlayer, searcher, pliesLeft - 1);
+                }
+            }
+        }
+    }
+    
+    
+    //getter for the book moves generated so far
+    public SortedMap<Long, Integer> getBookMoves(){
+        return bookMoves;
+    }
+    
+}
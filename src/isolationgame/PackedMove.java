@@ -0,0 +1,65 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+//Helper class for moves packed into a single int - the search uses these instead of GameMove objects so that generating and sorting moves never allocates.
+//Layout: destination square in bits 0-9, starting square in bits 10-19 and the moving player in bit 20 (set for player O).
+public final class PackedMove {
+    private static final int SQUARE_MASK = 0x3FF;
+    private static final int FROM_SHIFT = 10;
+    private static final int PLAYER_SHIFT = 20;
+    private static final int PLAYER_O_BIT = 1 << PLAYER_SHIFT;
+    
+    
+    //static helpers only - never instantiated
+    private PackedMove(){
+    }
+    
+    
+    //Packs a move of the indicated player from one square to another
+    public static int pack(int fromSquare, int toSquare, BoardVals player){
+        int move = (fromSquare << FROM_SHIFT) | toSquare;
+        if(player == BoardVals.PLAYER_O){
+            move |= PLAYER_O_BIT;
+        }
+        return move;
+    }
+    
+    
+    //destination square of a packed move
+    public static int getToSquare(int move){
+        return move & SQUARE_MASK;
+    }
+    
+    
+    //starting square of a packed move
+    public static int getFromSquare(int move){
+        return (move >>> FROM_SHIFT) & SQUARE_MASK;
+    }
+    
+    
+    //player making a packed move
+    public static BoardVals getPlayer(int move){
+        BoardVals player = BoardVals.PLAYER_X;
+        if((move & PLAYER_O_BIT) != 0){
+            player = BoardVals.PLAYER_O;
+        }
+        return player;
+    }
+    
+    
+    //index of the player making a packed move (0 for player X, 1 for player O) - handy for indexing per-player tables
+    public static int getPlayerIndex(int move){
+        return (move >>> PLAYER_SHIFT) & 1;
+    }
+    
+    
+    //Builds the equivalent GameMove object for a packed move (for handing results back to code outside the search)
+    public static GameMove toGameMove(int move, BoardGeometry geometry){
+        int square = getToSquare(move);
+        return new GameMove(geometry.squareRow(square), geometry.squareColumn(square), getPlayer(move));
+    }
+    
+}
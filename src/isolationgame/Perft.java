@@ -0,0 +1,283 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//Perft ("performance test") tool - counts every line of play to a fixed depth from a position, for checking the move generator is correct and measuring
+//how fast it is. Players alternate and every legal move is followed; only positions exactly at the requested depth are counted, so a player running out
+//of moves early ends that line without adding to the count.
+//Counts are printed for every depth from 1 up to the requested depth, with the time taken and nodes per second. "Divide" also prints the count below each
+//move from the starting position, which narrows down where two generators disagree. Counts can be written to a reference file and later checked against
+//it, so a new board implementation can be proven to generate exactly the same moves as the old one.
+//Usage: Perft <depth> [options]
+//  -size RxC           board size in rows x columns - default 8x8
+//  -first X|O          player who moved first (starts in the upper-left corner) - default X
+//  -moves C3,F6,...    moves to play from the start before counting, players alternating
+//  -generator list|packed   list uses a plain reference generator (walking each ray square by square with isSquareUsed) and a new board per move,
+//                           packed uses generateMoves with makeMove/unmakeMove - default packed. The reference generator shares no code with
+//                           generateMoves, so comparing the two checks the real generator.
+//  -divide             print the count below each root move
+//  -write <file>       write the counts to a reference file
+//  -reference <file>   check the counts against a reference file
+public class Perft {
+    private static final int[] ROW_STEPS = {-1, 1, 0, 0, -1, -1, 1, 1}; //the eight queen directions, for the reference generator
+    private static final int[] COLUMN_STEPS = {0, 0, -1, 1, -1, 1, 1, -1};
+    private GameBoard board;
+    private BoardVals playerToMove;
+    private boolean usePackedGenerator;
+    private int[][] moveBuffers; //per-ply move buffers for the packed generator
+    
+    
+    //Constructor - counts from the passed position, with the indicated player to move
+    public Perft(GameBoard board, BoardVals playerToMove, boolean usePackedGenerator){
+        this.board = new GameBoard(board);
+        this.playerToMove = playerToMove;
+        this.usePackedGenerator = usePackedGenerator;
+    }
+    
+    
+    public static void main(String[] args){
+        if((args.length == 0) || !args[0].matches("\\d+")){
+            System.out.println("Usage: Perft <depth> [-size RxC] [-first X|O] [-moves C3,F6,...] [-generator list|packed] [-divide] [-write <file>] [-reference <file>]");
+            System.exit(2);
+        }
+        
+        int depth = Integer.parseInt(args[0]);
+        BoardGeometry geometry = BoardGeometry.STANDARD;
+        BoardVals firstPlayer = BoardVals.PLAYER_X;
+        String moves = "";
+        boolean usePackedGenerator = true;
+        boolean divide = false;
+        String writeFile = null;
+        String referenceFile = null;
+        for(int i = 1; i < args.length; i++){
+            if(args[i].equals("-size") && (i + 1 < args.length) && args[i + 1].matches("\\d+[xX]\\d+")){
+                i++;
+                String[] dimensions = args[i].split("[xX]");
+                geometry = BoardGeometry.get(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]));
+            }else if(args[i].equals("-first") && (i + 1 < args.length)){
+                i++;
+                firstPlayer = args[i].equalsIgnoreCase("o") ? BoardVals.PLAYER_O : BoardVals.PLAYER_X;
+            }else if(args[i].equals("-moves") && (i + 1 < args.length)){
+                i++;
+                moves = args[i];
+            }else if(args[i].equals("-generator") && (i + 1 < args.length)){
+                i++;
+                usePackedGenerator = !args[i].equalsIgnoreCase("list");
+            }else if(args[i].equals("-divide")){
+                divide = true;
+            }else if(args[i].equals("-write") && (i + 1 < args.length)){
+                i++;
+                writeFile = args[i];
+            }else if(args[i].equals("-reference") && (i + 1 < args.length)){
+                i++;
+                referenceFile = args[i];
+            }else{
+                System.out.println("Unknown option: " + args[i]);
+                System.exit(2);
+            }
+        }
+        
+        GameBoard startBoard = new GameBoard(firstPlayer, geometry);
+        BoardVals player = firstPlayer;
+        if(!moves.isEmpty()){
+            for(String move : moves.split(",")){
+                move = move.trim().toUpperCase();
+                int square = geometry.parseSquare(move);
+                if((square < 0) || !startBoard.attemptToMove(player, geometry.getRowLabel(geometry.squareRow(square)), geometry.squareColumn(square) + 1)){
+                    System.out.println("Illegal move in move list: " + move);
+                    System.exit(2);
+                }
+                player = (player == BoardVals.PLAYER_X) ? BoardVals.PLAYER_O : BoardVals.PLAYER_X;
+            }
+        }
+        
+        System.out.println(startBoard.printBoard());
+        System.out.println("Player " + ((player == BoardVals.PLAYER_X) ? "X" : "O") + " to move, " + (usePackedGenerator ? "packed" : "list") + " generator");
+        
+        Perft perft = new Perft(startBoard, player, usePackedGenerator);
+        Map<String, Long> counts = new LinkedHashMap<>(); //"perft <depth>" and "divide <move>" -> node count, in the reference file format
+        for(int d = 1; d <= depth; d++){
+            long startTime = System.nanoTime();
+            long nodes = perft.count(d);
+            long elapsedNanos = Math.max(System.nanoTime() - startTime, 1);
+            System.out.println("depth " + d + ": " + nodes + " nodes in " + (elapsedNanos / 1000000) + " ms ("
+                    + (long)(nodes * 1.0e9 / elapsedNanos) + " nodes/s)");
+            counts.put("perft " + d, nodes);
+        }
+        
+        if(divide && (depth > 0)){
+            System.out.println("divide at depth " + depth + ":");
+            for(Map.Entry<String, Long> rootMove : perft.divide(depth).entrySet()){
+                System.out.println(rootMove.getKey() + ": " + rootMove.getValue());
+                counts.put("divide " + rootMove.getKey(), rootMove.getValue());
+            }
+        }
+        
+        int exitCode = 0;
+        try{
+            if(writeFile != null){
+                writeReference(writeFile, counts);
+                System.out.println("Counts written to " + writeFile);
+            }
+            if((referenceFile != null) && !checkReference(referenceFile, counts)){
+                exitCode = 1;
+            }
+        }catch(IOException e){
+            System.out.println("Reference file error: " + e.getMessage());
+            exitCode = 2;
+        }
+        System.exit(exitCode);
+    }
+    
+    
+    //Counts the positions exactly depth moves from the starting position
+    public long count(int depth){
+        long nodes;
+        if(usePackedGenerator){
+            if((moveBuffers == null) || (moveBuffers.length < depth)){
+                moveBuffers = new int[depth][board.getMaxMoves()];
+            }
+            nodes = countPacked(playerToMove, depth, 0);
+        }else{
+            nodes = countList(board, playerToMove, depth);
+        }
+        return nodes;
+    }
+    
+    
+    //Counts the positions below each move from the starting position - returns move (in the games row letter/column number notation) -> count
+    public Map<String, Long> divide(int depth){
+        Map<String, Long> rootCounts = new LinkedHashMap<>();
+        BoardVals opponent = (playerToMove == BoardVals.PLAYER_X) ? BoardVals.PLAYER_O : BoardVals.PLAYER_X;
+        List<Integer> rootSquares = new ArrayList<>();
+        if(usePackedGenerator){
+            for(GameMove move : board.getPossibleMoves(playerToMove)){
+                rootSquares.add(board.getGeometry().toSquare(move.getRow(), move.getColumn()));
+            }
+        }else{
+            rootSquares = listMoveSquares(board, playerToMove);
+        }
+        for(int square : rootSquares){
+            GameBoard childBoard = new GameBoard(board);
+            childBoard.makeMove(playerToMove, square);
+            long nodes = new Perft(childBoard, opponent, usePackedGenerator).count(depth - 1);
+            rootCounts.put(board.getGeometry().getSquareName(square), nodes);
+        }
+        return rootCounts;
+    }
+    
+    
+    //Helper counting with the packed move generator, playing moves in place on the one board
+    private long countPacked(BoardVals player, int depth, int ply){
+        long nodes = 0;
+        if(depth == 0){
+            nodes = 1;
+        }else{
+            int[] moves = moveBuffers[ply];
+            int numMoves = board.generateMoves(player, moves);
+            if(depth == 1){
+                nodes = numMoves; //bulk count - the positions after each move don't need to be visited
+            }else{
+                BoardVals opponent = (player == BoardVals.PLAYER_X) ? BoardVals.PLAYER_O : BoardVals.PLAYER_X;
+                for(int i = 0; i < numMoves; i++){
+                    board.makePackedMove(moves[i]);
+                    nodes += countPacked(opponent, depth - 1, ply + 1);
+                    board.unmakePackedMove(moves[i]);
+                }
+            }
+        }
+        return nodes;
+    }
+    
+    
+    //Helper counting with the reference move generator, building a new board for every move (the way the game tree was originally walked)
+    private long countList(GameBoard currentBoard, BoardVals player, int depth){
+        long nodes = 0;
+        if(depth == 0){
+            nodes = 1;
+        }else{
+            List<Integer> moveSquares = listMoveSquares(currentBoard, player);
+            BoardVals opponent = (player == BoardVals.PLAYER_X) ? BoardVals.PLAYER_O : BoardVals.PLAYER_X;
+            for(int square : moveSquares){
+                GameBoard childBoard = new GameBoard(currentBoard);
+                childBoard.makeMove(player, square);
+                nodes += countList(childBoard, opponent, depth - 1);
+            }
+        }
+        return nodes;
+    }
+    
+    
+    //Reference move generator - deliberately as plain as possible, sharing nothing with GameBoard.generateMoves (no bit masks or precomputed rays). Each
+    //of the eight directions is stepped along one row/column at a time from the players square until leaving the board or reaching a used square.
+    private static List<Integer> listMoveSquares(GameBoard currentBoard, BoardVals player){
+        List<Integer> moveSquares = new ArrayList<>();
+        BoardGeometry geometry = currentBoard.getGeometry();
+        int playerSquare = currentBoard.getPlayerSquare(player);
+        for(int direction = 0; direction < ROW_STEPS.length; direction++){
+            int row = geometry.squareRow(playerSquare) + ROW_STEPS[direction];
+            int column = geometry.squareColumn(playerSquare) + COLUMN_STEPS[direction];
+            while(geometry.isInBounds(row, column) && !currentBoard.isSquareUsed(geometry.toSquare(row, column))){
+                moveSquares.add(geometry.toSquare(row, column));
+                row += ROW_STEPS[direction];
+                column += COLUMN_STEPS[direction];
+            }
+        }
+        return moveSquares;
+    }
+    
+    
+    //Helper which writes the counts to a reference file, one "<name> <count>" line each
+    private static void writeReference(String fileName, Map<String, Long> counts) throws IOException{
+        try(PrintWriter out = new PrintWriter(new FileWriter(fileName))){
+            for(Map.Entry<String, Long> count : counts.entrySet()){
+                out.println(count.getKey() + " " + count.getValue());
+            }
+        }
+    }
+    
+    
+    //Helper which checks the counts against a reference file - every count in the file that was also computed this run must match. Mismatches are
+    //printed, and true is returned only if there were none.
+    private static boolean checkReference(String fileName, Map<String, Long> counts) throws IOException{
+        List<String> mismatches = new ArrayList<>();
+        int checked = 0;
+        try(BufferedReader in = new BufferedReader(new FileReader(fileName))){
+            String line;
+            while((line = in.readLine()) != null){
+                line = line.trim();
+                int split = line.lastIndexOf(' ');
+                if(split > 0){
+                    String name = line.substring(0, split);
+                    Long actual = counts.get(name);
+                    if(actual != null){
+                        checked++;
+                        long expected = Long.parseLong(line.substring(split + 1));
+                        if(actual != expected){
+                            mismatches.add(name + ": expected " + expected + ", got " + actual);
+                        }
+                    }
+                }
+            }
+        }
+        
+        for(String mismatch : mismatches){
+            System.out.println("MISMATCH " + mismatch);
+        }
+        System.out.println("Checked " + checked + " counts against " + fileName + ": " + (mismatches.isEmpty() ? "all match" : mismatches.size() + " mismatched"));
+        return mismatches.isEmpty();
+    }
+    
+}
@@ -0,0 +1,281 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+//Helper class for saving and loading positions (a board plus the player to move), in two forms:
+//1) A compact binary encoding for boards of up to 64 squares, in two longs (128 bits): the squares word is the used square mask exactly as the board
+//   holds it, and the state word holds the player squares, the player to move and the board size. Every position has exactly one encoding, so the pair
+//   can be used directly as a key, and encoding or decoding is only a few shifts.
+//   State layout: player X square in bits 0-5, player O square in bits 6-11, bit 12 set when player O is to move, rows in bits 16-23, columns in bits 24-31.
+//2) A text notation for boards of any size, in the style of chess FEN: the rows from top to bottom separated by '/', where a number is a run of that
+//   many open squares, '#' a used square and X and O the players, followed by a space and the player to move (x or o). The standard starting position
+//   with X moving first is "X7/8/8/8/8/8/8/7O x". Formatting appends to a StringBuilder and parsing reads the characters in place, so neither builds
+//   anything per character.
+public final class PositionCodec {
+    public static final int ENCODED_BYTES = 16; //size of the binary encoding
+    private static final int SQUARE_BITS = 6;
+    private static final long SQUARE_MASK = (1L << SQUARE_BITS) - 1;
+    private static final int PLAYER_O_SHIFT = SQUARE_BITS;
+    private static final int TO_MOVE_SHIFT = 2 * SQUARE_BITS;
+    private static final int ROWS_SHIFT = 16;
+    private static final int COLUMNS_SHIFT = 24;
+    private static final long DIMENSION_MASK = 0xFF;
+    private static final char USED_SYMBOL = '#';
+    private static final char ROW_SEPARATOR = '/';
+    
+    
+    //static helpers only - never instantiated
+    private PositionCodec(){
+    }
+    
+    
+    //Returns true if positions on boards of this size have a binary encoding (boards of up to 64 squares)
+    public static boolean canEncode(BoardGeometry geometry){
+        return geometry.isSingleWord();
+    }
+    
+    
+    //Returns the squares word of a position's binary encoding - the board must be no larger than 64 squares
+    public static long encodeSquares(GameBoard board){
+        checkEncodable(board.getGeometry());
+        return board.getUsedSquares();
+    }
+    
+    
+    //Returns the state word of a position's binary encoding - the board must be no larger than 64 squares
+    public static long encodeState(GameBoard board, BoardVals playerToMove){
+        BoardGeometry geometry = board.getGeometry();
+        checkEncodable(geometry);
+        long state = board.getPlayerSquare(BoardVals.PLAYER_X) | ((long)board.getPlayerSquare(BoardVals.PLAYER_O) << PLAYER_O_SHIFT);
+        if(playerToMove == BoardVals.PLAYER_O){
+            state |= 1L << TO_MOVE_SHIFT;
+        }
+        state |= ((long)geometry.getRows() << ROWS_SHIFT) | ((long)geometry.getColumns() << COLUMNS_SHIFT);
+        return state;
+    }
+    
+    
+    //Builds the board of a binary encoded position. Throws an IllegalArgumentException if the words aren't a valid encoding.
+    public static GameBoard decode(long squares, long state){
+        BoardGeometry geometry = BoardGeometry.get((int)((state >>> ROWS_SHIFT) & DIMENSION_MASK), (int)((state >>> COLUMNS_SHIFT) & DIMENSION_MASK));
+        checkEncodable(geometry);
+        int playerXSquare = (int)(state & SQUARE_MASK);
+        int playerOSquare = (int)((state >>> PLAYER_O_SHIFT) & SQUARE_MASK);
+        long playerBits = (1L << playerXSquare) | (1L << playerOSquare);
+        if(((squares & playerBits) != playerBits) || ((squares & ~geometry.getBoardMask()) != 0L)){
+            throw new IllegalArgumentException("Not an encoded position: " + Long.toHexString(squares) + " " + Long.toHexString(state));
+        }
+        return new GameBoard(geometry, new long[]{squares}, playerXSquare, playerOSquare);
+    }
+    
+    
+    //Returns the player to move in a binary encoded position
+    public static BoardVals getPlayerToMove(long state){
+        return (((state >>> TO_MOVE_SHIFT) & 1L) != 0L) ? BoardVals.PLAYER_O : BoardVals.PLAYER_X;
+    }
+    
+    
+    //Returns the text notation of a position
+    public static String format(GameBoard board, BoardVals playerToMove){
+        BoardGeometry geometry = board.getGeometry();
+        return appendNotation(new StringBuilder(geometry.getNumSquares() + geometry.getRows() + 2), board, playerToMove).toString();
+    }
+    
+    
+    //Appends the text notation of a position to the passed builder, and returns the builder
+    public static StringBuilder appendNotation(StringBuilder notation, GameBoard board, BoardVals playerToMove){
+        BoardGeometry geometry = board.getGeometry();
+        int playerXSquare = board.getPlayerSquare(BoardVals.PLAYER_X);
+        int playerOSquare = board.getPlayerSquare(BoardVals.PLAYER_O);
+        int square = 0;
+        for(int row = 0; row < geometry.getRows(); row++){
+            if(row > 0){
+                notation.append(ROW_SEPARATOR);
+            }
+            int openRun = 0;
+            for(int column = 0; column < geometry.getColumns(); column++){
+                if(!board.isSquareUsed(square)){
+                    openRun++;
+                }else{
+                    if(openRun > 0){
+                        notation.append(openRun);
+                        openRun = 0;
+                    }
+                    if(square == playerXSquare){
+                        notation.append('X');
+                    }else if(square == playerOSquare){
+                        notation.append('O');
+                    }else{
+                        notation.append(USED_SYMBOL);
+                    }
+                }
+                square++;
+            }
+            if(openRun > 0){
+                notation.append(openRun);
+            }
+        }
+        return notation.append(' ').append((playerToMove == BoardVals.PLAYER_O) ? 'o' : 'x');
+    }
+    
+    
+    //Builds the board of a position in text notation - the board size is taken from the notation. Throws an IllegalArgumentException if the notation
+    //can't be read: the rows must all be the same width, and there must be exactly one X and one O.
+    public static GameBoard parse(CharSequence notation){
+        int end = getBoardEnd(notation);
+        
+        //first pass - just measure the board, so the geometry (and so the word array) is known before any square is set
+        int rows = 1;
+        int columns = -1;
+        int rowWidth = 0;
+        int i = 0;
+        while(i < end){
+            char symbol = notation.charAt(i);
+            if(symbol == ROW_SEPARATOR){
+                if((columns >= 0) && (rowWidth != columns)){
+                    throw badNotation(notation, "row " + rows + " is " + rowWidth + " squares wide, not " + columns);
+                }
+                columns = rowWidth;
+                rowWidth = 0;
+                rows++;
+                i++;
+            }else if(isDigit(symbol)){
+                int runEnd = skipNumber(notation, i, end);
+                rowWidth += readNumber(notation, i, runEnd);
+                i = runEnd;
+            }else if((symbol == USED_SYMBOL) || (symbol == 'X') || (symbol == 'O')){
+                rowWidth++;
+                i++;
+            }else{
+                throw badNotation(notation, "unexpected '" + symbol + "'");
+            }
+        }
+        if((columns >= 0) && (rowWidth != columns)){
+            throw badNotation(notation, "row " + rows + " is " + rowWidth + " squares wide, not " + columns);
+        }
+        BoardGeometry geometry = BoardGeometry.get(rows, rowWidth);
+        
+        //second pass - fill in the squares (the notation is known to be well formed now)
+        long[] usedWords = new long[geometry.getNumWords()];
+        int playerXSquare = -1;
+        int playerOSquare = -1;
+        int square = 0;
+        i = 0;
+        while(i < end){
+            char symbol = notation.charAt(i);
+            if(isDigit(symbol)){
+                int runEnd = skipNumber(notation, i, end);
+                square += readNumber(notation, i, runEnd);
+                i = runEnd;
+            }else{
+                if(symbol != ROW_SEPARATOR){
+                    if(symbol == 'X'){
+                        playerXSquare = (playerXSquare < 0) ? square : -2;
+                    }else if(symbol == 'O'){
+                        playerOSquare = (playerOSquare < 0) ? square : -2;
+                    }
+                    usedWords[square >>> 6] |= 1L << square;
+                    square++;
+                }
+                i++;
+            }
+        }
+        if((playerXSquare < 0) || (playerOSquare < 0)){
+            throw badNotation(notation, "there must be exactly one X and one O");
+        }
+        return new GameBoard(geometry, usedWords, playerXSquare, playerOSquare);
+    }
+    
+    
+    //Returns the player to move in a position in text notation - only the last field is read, so this is cheap to call alongside parse
+    public static BoardVals parsePlayerToMove(CharSequence notation){
+        int end = notation.length();
+        while((end > 0) && Character.isWhitespace(notation.charAt(end - 1))){
+            end--;
+        }
+        char player = (end > 0) ? notation.charAt(end - 1) : ' ';
+        if(((player != 'x') && (player != 'X') && (player != 'o') && (player != 'O')) || (end < 2) || !Character.isWhitespace(notation.charAt(end - 2))){
+            throw badNotation(notation, "it must end with the player to move (x or o)");
+        }
+        return ((player == 'o') || (player == 'O')) ? BoardVals.PLAYER_O : BoardVals.PLAYER_X;
+    }
+    
+    
+    //Returns true if the text looks like a position in text notation rather than anything else (such as a list of moves) - it only checks for a row
+    //separator in the first field, so parse can still reject it
+    public static boolean isNotation(CharSequence text){
+        boolean separatorFound = false;
+        int i = 0;
+        while((i < text.length()) && Character.isWhitespace(text.charAt(i))){
+            i++;
+        }
+        while((i < text.length()) && !Character.isWhitespace(text.charAt(i)) && !separatorFound){
+            separatorFound = (text.charAt(i) == ROW_SEPARATOR);
+            i++;
+        }
+        return separatorFound;
+    }
+    
+    
+    //Helper which returns where the board field of the notation ends (the index of the space before the player to move) - the notation must start with
+    //the board, so callers trim any leading spaces first
+    private static int getBoardEnd(CharSequence notation){
+        int end = 0;
+        while((end < notation.length()) && !Character.isWhitespace(notation.charAt(end))){
+            end++;
+        }
+        if(end == 0){
+            throw badNotation(notation, "it must start with the board");
+        }
+        return end;
+    }
+    
+    
+    //Helper which returns the index just past the number starting at the indicated index
+    private static int skipNumber(CharSequence notation, int start, int end){
+        int numberEnd = start;
+        while((numberEnd < end) && isDigit(notation.charAt(numberEnd))){
+            numberEnd++;
+        }
+        return numberEnd;
+    }
+    
+    
+    //Helper which reads the run of open squares between the indicated indexes - runs must be at least 1 and can't be longer than the largest board
+    private static int readNumber(CharSequence notation, int start, int end){
+        int number = 0;
+        for(int i = start; i < end; i++){
+            number = (number * 10) + (notation.charAt(i) - '0');
+            if(number > BoardGeometry.MAX_SQUARES){
+                throw badNotation(notation, "a run of open squares is too long");
+            }
+        }
+        if(number == 0){
+            throw badNotation(notation, "a run of open squares can't be 0");
+        }
+        return number;
+    }
+    
+    
+    //Helper which checks a character is an ASCII digit (Character.isDigit also takes other scripts' digits)
+    private static boolean isDigit(char symbol){
+        return (symbol >= '0') && (symbol <= '9');
+    }
+    
+    
+    //Helper which throws if a board has no binary encoding
+    private static void checkEncodable(BoardGeometry geometry){
+        if(!canEncode(geometry)){
+            throw new IllegalArgumentException("Only boards of up to " + BoardGeometry.SINGLE_WORD_SQUARES + " squares can be encoded - not " + geometry);
+        }
+    }
+    
+    
+    //Helper which builds the exception for notation that can't be read
+    private static IllegalArgumentException badNotation(CharSequence notation, String reason){
+        return new IllegalArgumentException("Can't read position \"" + notation + "\": " + reason);
+    }
+    
+}
@@ -0,0 +1,15 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+//Interface for the heuristic the search uses to score the positions at its leaves (see MobilityEvaluator and TerritoryEvaluator). An AIPlayer uses
+//MobilityEvaluator unless it's given another one with setEvaluator.
+//Won and lost positions are scored by the search itself, so an evaluator only ever sees positions where both players can still move, and its scores
+//must stay well inside +/-GameBoard.WIN_SCORE. One evaluator is shared by every search thread, so it must be safe to call from several threads at once.
+public interface PositionEvaluator {
+    //Returns the score of the position for the indicated player (higher is better for them). The search has already counted both players moves to check
+    //for a win or loss, so the counts are passed in rather than counted again.
+    int evaluate(GameBoard theBoard, BoardVals player, int playerMoves, int opponentMoves);
+}
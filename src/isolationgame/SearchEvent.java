@@ -0,0 +1,105 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+//JDK Flight Recorder event for one AI move - carries the same numbers as SearchStats, so searches can be watched in a recording (or with JDK Mission
+//Control) next to GC and thread activity. Only ever created through SearchStatsMonitor, which checks that Flight Recorder exists in the running JVM.
+@Name("isolationgame.Search")
+@Label("AI Search")
+@Category("Isolation Game")
+@Description("One AI move search")
+public class SearchEvent extends Event {
+    @Label("Player")
+    public String player;
+    
+    @Label("Book Move")
+    public boolean bookMove;
+    
+    @Label("Completed Depth")
+    public int completedDepth;
+    
+    @Label("Score")
+    @Description("Score of the deepest completed iteration for the player searching")
+    public int score;
+    
+    @Label("Nodes")
+    public long nodes;
+    
+    @Label("Nodes per Second")
+    public long nodesPerSecond;
+    
+    @Label("Search Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long searchTime;
+    
+    @Label("Beta Cutoffs")
+    public long betaCutoffs;
+    
+    @Label("First Move Cutoff Ratio")
+    public double firstMoveCutoffRatio;
+    
+    @Label("Abort Ply")
+    @Description("Ply the timer stopped the search at, -1 if it finished on its own")
+    public int abortPly;
+    
+    @Label("Threads")
+    public int numThreads;
+    
+    
+    //Builds and commits the event for the passed statistics (does nothing unless the event is enabled in a running recording)
+    public static void emit(SearchStats stats){
+        SearchEvent event = new SearchEvent();
+        if(event.isEnabled()){
+            event.player = (stats.getPlayer() == BoardVals.PLAYER_O) ? "O" : "X";
+            event.bookMove = stats.isBookMove();
+            event.completedDepth = stats.getCompletedDepth();
+            event.score = stats.getScore();
+            event.nodes = stats.getNodes();
+            event.nodesPerSecond = stats.getNodesPerSecond();
+            event.searchTime = stats.getElapsedNanos();
+            event.betaCutoffs = stats.getBetaCutoffs();
+            event.firstMoveCutoffRatio = stats.getFirstMoveCutoffRatio();
+            event.abortPly = stats.getAbortPly();
+            event.numThreads = stats.getNumThreads();
+            event.commit();
+            
+            long[] iterations = stats.getIterationNanos();
+            for(int i = 0; i < iterations.length; i++){
+                SearchIterationEvent iterationEvent = new SearchIterationEvent();
+                iterationEvent.depth = i + 1;
+                iterationEvent.iterationTime = iterations[i];
+                iterationEvent.completed = (i + 1) <= stats.getCompletedDepth();
+                iterationEvent.commit();
+            }
+        }
+    }
+    
+    
+    //Flight Recorder event for one iteration of iterative deepening within a search
+    @Name("isolationgame.SearchIteration")
+    @Label("AI Search Iteration")
+    @Category("Isolation Game")
+    @Description("One iteration of iterative deepening")
+    public static class SearchIterationEvent extends Event {
+        @Label("Depth")
+        public int depth;
+        
+        @Label("Iteration Time")
+        @Timespan(Timespan.NANOSECONDS)
+        public long iterationTime;
+        
+        @Label("Completed")
+        @Description("False if the timer stopped the search during this iteration")
+        public boolean completed;
+    }
+    
+}
@@ -0,0 +1,153 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+//Statistics for a single AI move - how deep the search got, how much work it did and how well alpha-beta was pruning. AIPlayer builds one of these for
+//every move (see AIPlayer.getLastSearchStats), and every one is also handed to the SearchStatsMonitor, which adds it to the process-wide totals and
+//emits it as Flight Recorder events.
+//Node and cutoff counts are totals over every search thread. The iteration times are those of the main search thread: one per iteration of iterative
+//deepening starting from depth 1, where the last one is only partial if the timer stopped the search.
+public class SearchStats {
+    private final BoardVals player;
+    private final boolean bookMove; //the move came from the opening book - nothing was searched
+    private final int completedDepth;
+    private final int score; //score of the deepest completed iteration for the player searching - GameBoard.WIN_SCORE (or -WIN_SCORE) once proven
+    private final long nodes;
+    private final long elapsedNanos;
+    private final long betaCutoffs;
+    private final long firstMoveCutoffs; //beta cutoffs caused by the first move tried at a node
+    private final long[] iterationNanos;
+    private final int abortPly; //ply of the node where the timer stopped the search, -1 if the search finished on its own
+    private final int numThreads;
+    
+    
+    //Constructor - the iteration times array is kept as is, so it must not be changed afterwards
+    public SearchStats(BoardVals player, boolean bookMove, int completedDepth, int score, long nodes, long elapsedNanos, long betaCutoffs, long firstMoveCutoffs,
+            long[] iterationNanos, int abortPly, int numThreads){
+        this.player = player;
+        this.bookMove = bookMove;
+        this.completedDepth = completedDepth;
+        this.score = score;
+        this.nodes = nodes;
+        this.elapsedNanos = elapsedNanos;
+        this.betaCutoffs = betaCutoffs;
+        this.firstMoveCutoffs = firstMoveCutoffs;
+        this.iterationNanos = iterationNanos;
+        this.abortPly = abortPly;
+        this.numThreads = numThreads;
+    }
+    
+    
+    //Builds the statistics for a move played straight from the opening book
+    public static SearchStats forBookMove(BoardVals player, long elapsedNanos){
+        return new SearchStats(player, true, 0, 0, 0, elapsedNanos, 0, 0, new long[0], -1, 0);
+    }
+    
+    
+    //nodes searched per second (0 if no time was measured)
+    public long getNodesPerSecond(){
+        long nodesPerSecond = 0;
+        if(elapsedNanos > 0){
+            nodesPerSecond = (long)(nodes * 1.0e9 / elapsedNanos);
+        }
+        return nodesPerSecond;
+    }
+    
+    
+    //fraction of beta cutoffs that came from the first move tried - the closer to 1 the better the move ordering (0 if there were no cutoffs)
+    public double getFirstMoveCutoffRatio(){
+        double ratio = 0.0;
+        if(betaCutoffs > 0){
+            ratio = (double)firstMoveCutoffs / betaCutoffs;
+        }
+        return ratio;
+    }
+    
+    
+    //true if the search was stopped by the timer part way through an iteration
+    public boolean wasAborted(){
+        return abortPly >= 0;
+    }
+    
+    
+    //getter for the player the search was for
+    public BoardVals getPlayer(){
+        return player;
+    }
+    
+    //getter for whether the move came from the opening book
+    public boolean isBookMove(){
+        return bookMove;
+    }
+    
+    //getter for the deepest iteration completed
+    public int getCompletedDepth(){
+        return completedDepth;
+    }
+    
+    //getter for the score of the deepest completed iteration, for the player searching (0 for book moves and searches that completed no iteration)
+    public int getScore(){
+        return score;
+    }
+    
+    //getter for the nodes visited
+    public long getNodes(){
+        return nodes;
+    }
+    
+    //getter for the total time taken in nanoseconds
+    public long getElapsedNanos(){
+        return elapsedNanos;
+    }
+    
+    //getter for the number of beta cutoffs
+    public long getBetaCutoffs(){
+        return betaCutoffs;
+    }
+    
+    //getter for the number of beta cutoffs caused by the first move tried
+    public long getFirstMoveCutoffs(){
+        return firstMoveCutoffs;
+    }
+    
+    //getter for the time (in nanoseconds) of each iteration, starting with depth 1
+    public long[] getIterationNanos(){
+        return iterationNanos.clone();
+    }
+    
+    //getter for the ply the timer stopped the search at (-1 if it wasn't stopped)
+    public int getAbortPly(){
+        return abortPly;
+    }
+    
+    //getter for the number of threads that searched
+    public int getNumThreads(){
+        return numThreads;
+    }
+    
+    
+    @Override
+    public String toString(){
+        StringBuilder stats = new StringBuilder();
+        if(bookMove){
+            stats.append("book move");
+        }else{
+            stats.append("depth ").append(completedDepth).append(", score ").append(score);
+            stats.append(", ").append(nodes).append(" nodes in ").append(elapsedNanos / 1000000).append(" ms");
+            stats.append(" (").append(getNodesPerSecond()).append(" nodes/s)");
+            stats.append(", ").append(betaCutoffs).append(" cutoffs, ");
+            stats.append(String.format("%.1f", 100.0 * getFirstMoveCutoffRatio())).append("% on the first move");
+            stats.append(", iterations (ms):");
+            for(long iteration : iterationNanos){
+                stats.append(' ').append(String.format("%.1f", iteration / 1.0e6));
+            }
+            if(wasAborted()){
+                stats.append(", stopped at ply ").append(abortPly);
+            }
+        }
+        return stats.toString();
+    }
+    
+}
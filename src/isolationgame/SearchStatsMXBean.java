@@ -0,0 +1,45 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+//Management interface for the search statistics of every AI move made in this process (see SearchStatsMonitor) - shows up in JConsole/VisualVM under
+//isolationgame:type=SearchStats
+public interface SearchStatsMXBean {
+    //number of AI moves made (searched and book moves)
+    long getMoveCount();
+    
+    //number of AI moves played from the opening book
+    long getBookMoveCount();
+    
+    //number of searches the timer stopped part way through an iteration
+    long getAbortedSearchCount();
+    
+    //total nodes searched
+    long getTotalNodes();
+    
+    //total time spent searching in milliseconds
+    long getTotalSearchTimeMillis();
+    
+    //total nodes divided by total search time
+    long getAverageNodesPerSecond();
+    
+    //average completed depth of the searched moves
+    double getAverageCompletedDepth();
+    
+    //deepest completed depth of any search
+    int getMaxCompletedDepth();
+    
+    //total beta cutoffs
+    long getTotalBetaCutoffs();
+    
+    //fraction of all beta cutoffs which came from the first move tried
+    double getFirstMoveCutoffRatio();
+    
+    //statistics of the most recent move, in SearchStats.toString form
+    String getLastSearch();
+    
+    //clears all of the totals
+    void reset();
+}
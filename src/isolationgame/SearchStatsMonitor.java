@@ -0,0 +1,189 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+//Process-wide collector for search statistics. Every AIPlayer hands the SearchStats of each move to the one shared monitor, which:
+//1) adds them to running totals across all games in the process, published over JMX as an MXBean (isolationgame:type=SearchStats)
+//2) emits them as Flight Recorder events (SearchEvent), if the JVM has Flight Recorder
+//Any number of games can record at the same time - the totals are kept in LongAdders, so recording never blocks a search thread.
+public class SearchStatsMonitor implements SearchStatsMXBean {
+    public static final String OBJECT_NAME = "isolationgame:type=SearchStats";
+    private static final SearchStatsMonitor INSTANCE = createMonitor();
+    private final boolean flightRecorderAvailable;
+    private final LongAdder moveCount = new LongAdder();
+    private final LongAdder bookMoveCount = new LongAdder();
+    private final LongAdder abortedSearchCount = new LongAdder();
+    private final LongAdder totalNodes = new LongAdder();
+    private final LongAdder totalSearchNanos = new LongAdder();
+    private final LongAdder totalCompletedDepth = new LongAdder();
+    private final LongAdder totalBetaCutoffs = new LongAdder();
+    private final LongAdder totalFirstMoveCutoffs = new LongAdder();
+    private final AtomicInteger maxCompletedDepth = new AtomicInteger();
+    private final AtomicReference<SearchStats> lastSearch = new AtomicReference<>();
+    
+    
+    //Constructor - use getInstance for the shared monitor
+    private SearchStatsMonitor(){
+        flightRecorderAvailable = isClassAvailable("jdk.jfr.Event");
+    }
+    
+    
+    //Builds the shared monitor and registers it with the platform MBean server. If it can't be registered the totals are still kept, they just aren't
+    //visible over JMX.
+    private static SearchStatsMonitor createMonitor(){
+        SearchStatsMonitor monitor = new SearchStatsMonitor();
+        try{
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if(!server.isRegistered(name)){
+                server.registerMBean(monitor, name);
+            }
+        }catch(JMException | SecurityException e){
+            System.out.println("Search statistics are not available over JMX: " + e);
+        }
+        return monitor;
+    }
+    
+    
+    //getter for the shared monitor
+    public static SearchStatsMonitor getInstance(){
+        return INSTANCE;
+    }
+    
+    
+    //Records the statistics of one AI move
+    public void record(SearchStats stats){
+        moveCount.increment();
+        if(stats.isBookMove()){
+            bookMoveCount.increment();
+        }else{
+            if(stats.wasAborted()){
+                abortedSearchCount.increment();
+            }
+            totalNodes.add(stats.getNodes());
+            totalSearchNanos.add(stats.getElapsedNanos());
+            totalCompletedDepth.add(stats.getCompletedDepth());
+            totalBetaCutoffs.add(stats.getBetaCutoffs());
+            totalFirstMoveCutoffs.add(stats.getFirstMoveCutoffs());
+            int depth = stats.getCompletedDepth();
+            int currentMax = maxCompletedDepth.get();
+            while((depth > currentMax) && !maxCompletedDepth.compareAndSet(currentMax, depth)){
+                currentMax = maxCompletedDepth.get();
+            }
+        }
+        lastSearch.set(stats);
+        
+        if(flightRecorderAvailable){
+            SearchEvent.emit(stats);
+        }
+    }
+    
+    
+    //Helper which checks whether a class exists in the running JVM (without initializing it)
+    private static boolean isClassAvailable(String className){
+        boolean available = true;
+        try{
+            Class.forName(className, false, SearchStatsMonitor.class.getClassLoader());
+        }catch(ClassNotFoundException | LinkageError e){
+            available = false;
+        }
+        return available;
+    }
+    
+    
+    @Override
+    public long getMoveCount(){
+        return moveCount.sum();
+    }
+    
+    @Override
+    public long getBookMoveCount(){
+        return bookMoveCount.sum();
+    }
+    
+    @Override
+    public long getAbortedSearchCount(){
+        return abortedSearchCount.sum();
+    }
+    
+    @Override
+    public long getTotalNodes(){
+        return totalNodes.sum();
+    }
+    
+    @Override
+    public long getTotalSearchTimeMillis(){
+        return totalSearchNanos.sum() / 1000000;
+    }
+    
+    @Override
+    public long getAverageNodesPerSecond(){
+        long nanos = totalSearchNanos.sum();
+        long nodesPerSecond = 0;
+        if(nanos > 0){
+            nodesPerSecond = (long)(totalNodes.sum() * 1.0e9 / nanos);
+        }
+        return nodesPerSecond;
+    }
+    
+    @Override
+    public double getAverageCompletedDepth(){
+        long searches = moveCount.sum() - bookMoveCount.sum();
+        double averageDepth = 0.0;
+        if(searches > 0){
+            averageDepth = (double)totalCompletedDepth.sum() / searches;
+        }
+        return averageDepth;
+    }
+    
+    @Override
+    public int getMaxCompletedDepth(){
+        return maxCompletedDepth.get();
+    }
+    
+    @Override
+    public long getTotalBetaCutoffs(){
+        return totalBetaCutoffs.sum();
+    }
+    
+    @Override
+    public double getFirstMoveCutoffRatio(){
+        long cutoffs = totalBetaCutoffs.sum();
+        double ratio = 0.0;
+        if(cutoffs > 0){
+            ratio = (double)totalFirstMoveCutoffs.sum() / cutoffs;
+        }
+        return ratio;
+    }
+    
+    @Override
+    public String getLastSearch(){
+        SearchStats stats = lastSearch.get();
+        return (stats == null) ? "" : stats.toString();
+    }
+    
+    @Override
+    public void reset(){
+        moveCount.reset();
+        bookMoveCount.reset();
+        abortedSearchCount.reset();
+        totalNodes.reset();
+        totalSearchNanos.reset();
+        totalCompletedDepth.reset();
+        totalBetaCutoffs.reset();
+        totalFirstMoveCutoffs.reset();
+        maxCompletedDepth.set(0);
+        lastSearch.set(null);
+    }
+    
+}
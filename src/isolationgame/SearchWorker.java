@@ -0,0 +1,527 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+import java.util.Arrays;
+
+//Class which runs one copy of the iterative deepening negamax search (alpha-beta pruning with principal variation search and aspiration windows,
+//transposition table, move ordering). An AIPlayer owns one worker per search thread - every worker has its own board copy and its own killer/history
+//tables, while the transposition table is shared between all of them so that whatever one worker finds is immediately available to the others.
+//Scores are always from the point of view of the player to move, so transposition table entries are too.
+public class SearchWorker {
+    public static final int MAX_DEPTH = 200; //iterative deepening stops here - mainly for ending the search quickly in late game positions
+    private static final long TIME_CHECK_MASK = 1023; //the clock itself is only read once every 1024 nodes
+    private static final int ENDGAME_CHECK_DEPTH = 2; //endgames are only solved or looked up this far from the leaves - it's not worth it at the leaves
+    private static final long ROOT_SOLVER_BUDGET = 5000000; //node budgets for the endgame solver - far more is allowed at the root, where it ends the search
+    private static final long NODE_SOLVER_BUDGET = 20000;
+    private static final long ROOT_SOLVER_TIME_DIVISOR = 2; //the root solve gets at most half the time left, so a search can still follow if it fails
+    private static final int MOVER_WINS = 1; //results of solvePartitionedEndgame
+    private static final int MOVER_LOSES = 0;
+    private static final int INFINITE_SCORE = GameBoard.WIN_SCORE + 1; //bounds of the widest alpha-beta window - outside every possible score
+    private static final int ASPIRATION_WINDOW = 2; //half-width of the first aspiration window, doubled every time the score falls outside it
+    private static final int NO_ROOT_MOVE = -1;
+    private TranspositionTable transpositionTable;
+    private MoveOrderer moveOrderer;
+    private int[][] moveBuffers; //one packed move buffer per ply, reused by every node at that ply so move generation never allocates
+    private EndgameSolver rootSolver;
+    private EndgameSolver nodeSolver;
+    private int completedDepth; //deepest iteration of the last search which finished before time ran out (0 if none did)
+    private int completedScore; //score of that iteration for the searching player (0 if none finished)
+    private long nodes; //nodes visited by the current search
+    private boolean stopped; //set once the timer has run out - everything still on the stack then unwinds without searching further
+    private long betaCutoffs; //statistics for the last search (see SearchStats)
+    private long firstMoveCutoffs;
+    private long[] iterationNanos; //time taken by each iteration of the last search, starting with the iteration to startDepth
+    private int numIterations;
+    private int abortPly; //ply of the node where the timer stopped the last search, -1 if it wasn't stopped
+    private long nodeLimit; //searches also stop after visiting this many nodes
+    private BoardVals rootPlayer; //the player the current search is choosing a move for
+    private int rootBestMove; //best root move found by the last searchRoot call which beat alpha (NO_ROOT_MOVE if none did)
+    private PositionEvaluator evaluator; //scores the leaves which aren't won or lost
+    private EndgameTablebase tablebase; //looked up before searching positions with few squares left, if one has been set
+    
+    
+    //Constructor - the transposition table passed in may be shared with other workers
+    public SearchWorker(TranspositionTable transpositionTable){
+        this.transpositionTable = transpositionTable;
+        moveOrderer = new MoveOrderer();
+        nodeLimit = Long.MAX_VALUE;
+        evaluator = new MobilityEvaluator();
+        rootSolver = new EndgameSolver(ROOT_SOLVER_BUDGET);
+        nodeSolver = new EndgameSolver(NODE_SOLVER_BUDGET);
+    }
+    
+    
+    //Runs the iterative deepening search for the indicated player from the passed position until the timer expires, and returns the best move found.
+    //The first iteration searches to startDepth - helper workers start at different depths from the main worker so that the workers don't all walk the
+    //same tree in lockstep.
+    //The whole search runs on a single private copy of the board - each move is played with makeMove and taken back with unmakeMove, so no new boards
+    //are built while walking the tree and the board passed in is left untouched. Moves are generated as packed ints into the per-ply buffers, so apart
+    //from the returned GameMove the search doesn't allocate at all.
+    public GameMove search(GameBoard theBoard, BoardVals player, MoveTimer timer, int startDepth){
+        return search(theBoard, player, timer, startDepth, MAX_DEPTH);
+    }
+    
+    
+    //Version of search which also stops once an iteration to depthLimit has been completed (used for fixed-depth searches)
+    public GameMove search(GameBoard theBoard, BoardVals player, MoveTimer timer, int startDepth, int depthLimit){
+        return search(theBoard, player, timer, startDepth, depthLimit, null);
+    }
+    
+    
+    //Version of search which also takes a TimeManager (null to simply search until the timer runs out). The time manager is told about every completed
+    //iteration and decides whether the next one is started, so the search can return well before the timer runs out. With a time manager and a timer
+    //with a time limit, a forced move (the only legal move) is returned straight away.
+    //Once two iterations have completed, every iteration starts with an aspiration window - a narrow alpha-beta window centred on the expected score,
+    //since the score rarely moves much from one iteration to the next and a narrow window cuts off far more of the tree. If the score comes back outside the
+    //window (fails low or high) the window is widened on that side and the iteration is searched again.
+    //Throws an IllegalArgumentException if the player has no legal moves - the game is already over, so there's no move to find.
+    public GameMove search(GameBoard theBoard, BoardVals player, MoveTimer timer, int startDepth, int depthLimit, TimeManager timeManager){
+        if(theBoard.checkIfPlayerLose(player)){
+            throw new IllegalArgumentException("Player " + ((player == BoardVals.PLAYER_X) ? "X" : "O") + " has no legal moves to search");
+        }
+        GameBoard searchBoard = new GameBoard(theBoard); //the one mutable board used for this entire search
+        if((moveBuffers == null) || (moveBuffers[0].length < searchBoard.getMaxMoves())){
+            moveBuffers = new int[MAX_DEPTH + 1][searchBoard.getMaxMoves()];
+        }
+        moveOrderer.newSearch();
+        rootPlayer = player;
+        completedDepth = 0;
+        completedScore = 0;
+        nodes = 0;
+        stopped = false;
+        betaCutoffs = 0;
+        firstMoveCutoffs = 0;
+        if(iterationNanos == null){
+            iterationNanos = new long[MAX_DEPTH + 1];
+        }
+        numIterations = 0;
+        abortPly = -1;
+        int[] possibleMoves = moveBuffers[0];
+        int numMoves = searchBoard.generateMoves(player, possibleMoves); //get all possible moves for player from current state
+        int bestMove = possibleMoves[0]; //default value - pick the first move available
+        int maxDepth = startDepth; //to be iterated as the tree is searched
+        int[] parityScores = new int[2]; //score of the last completed iteration to an even depth and to an odd depth
+        int numScored = 0; //number of iterations completed
+        boolean solved = false;
+        
+        //with few enough squares left the tablebase gives the best move outright, and if the players are already walled off the longest walk through our
+        //own region is the best move - either way there's nothing to search
+        int tablebaseMove = getTablebaseMove(searchBoard, player, possibleMoves, numMoves);
+        int rootWalk = EndgameSolver.UNKNOWN;
+        rootSolver.forgetFailures();
+        nodeSolver.forgetFailures();
+        if((tablebaseMove == NO_ROOT_MOVE) && searchBoard.isPartitioned()){
+            long solverNanos = timer.hasTimeLimit() ? (timer.getRemainingNanos() / ROOT_SOLVER_TIME_DIVISOR) : Long.MAX_VALUE;
+            rootWalk = rootSolver.solveLongestWalk(searchBoard, player, timer, solverNanos);
+        }
+        if(tablebaseMove != NO_ROOT_MOVE){
+            bestMove = tablebaseMove;
+            completedDepth = MAX_DEPTH;
+            completedScore = EndgameTablebase.isMoverWin(tablebase.probe(searchBoard, player)) ? GameBoard.WIN_SCORE : -GameBoard.WIN_SCORE;
+            solved = true;
+        }else if(rootWalk > 0){
+            bestMove = PackedMove.pack(searchBoard.getPlayerSquare(player), rootSolver.getBestFirstSquare(), player);
+            completedDepth = MAX_DEPTH; //the answer is exact - no deeper search can improve on it
+            //the opponents walk is only wanted for the score, so it gets the small budget - if it's too long to solve the score is left at 0 (unknown)
+            int opponentWalk = nodeSolver.solveLongestWalk(searchBoard, getOpponent(player));
+            if(opponentWalk != EndgameSolver.UNKNOWN){
+                completedScore = (rootWalk > opponentWalk) ? GameBoard.WIN_SCORE : -GameBoard.WIN_SCORE;
+            }
+            solved = true;
+        }else if((numMoves == 1) && (timeManager != null) && timer.hasTimeLimit()){
+            solved = true; //a forced move - there's nothing to choose between, and nothing to gain from a score when time is short
+        }
+        
+        //search for the best move until time expires, or the time manager decides another iteration isn't worth it
+        while(!solved && !stopped && !timer.isTimeElapsed() && ((timeManager == null) || timeManager.shouldStartIteration())){
+            long iterationStart = System.nanoTime();
+            long iterationStartNodes = nodes;
+            int window = ASPIRATION_WINDOW;
+            int alpha = -INFINITE_SCORE;
+            int beta = INFINITE_SCORE;
+            //the mobility score swings between odd and even depths (whoever made the last move has used up a square), so the window is centred on the
+            //score of two iterations ago rather than the last one. A won or lost score won't change, so it gets a full window.
+            int expectedScore = parityScores[maxDepth & 1];
+            if((numScored >= 2) && (Math.abs(expectedScore) < GameBoard.WIN_SCORE)){
+                alpha = expectedScore - window;
+                beta = expectedScore + window;
+            }
+            
+            boolean iterationDone = false;
+            while(!iterationDone){
+                //the best move so far is searched first - it's the most likely to still be best, which gives the tightest window early on
+                moveOrderer.orderMoves(possibleMoves, numMoves, PackedMove.getToSquare(bestMove), 0);
+                int score = searchRoot(searchBoard, player, possibleMoves, numMoves, maxDepth, alpha, beta, timer);
+                if(rootBestMove != NO_ROOT_MOVE){ //only set by a move whose search finished, so it's kept even if the timer stopped the iteration
+                    bestMove = rootBestMove;
+                }
+            
+                if(stopped || (score == -INFINITE_SCORE)){ //-INFINITE_SCORE means no root move was searched - widening the window can't change that
+                    iterationDone = true;
+                }else if(score <= alpha){ //failed low - every move is worse than expected, so search again with a lower alpha
+                    window *= 2;
+                    alpha = Math.max(score - window, -INFINITE_SCORE);
+                }else if(score >= beta){ //failed high - the best move is better than expected, so search again with a higher beta
+                    window *= 2;
+                    beta = Math.min(score + window, INFINITE_SCORE);
+                }else{
+                    parityScores[maxDepth & 1] = score;
+                    numScored++;
+                    completedDepth = maxDepth; //every root move was searched (or pruned) before time ran out
+                    completedScore = score;
+                    iterationDone = true;
+                    if(timeManager != null){
+                        timeManager.iterationCompleted(System.nanoTime() - iterationStart, nodes - iterationStartNodes, bestMove, score);
+                    }
+                }
+            }
+                    
+            iterationNanos[numIterations] = System.nanoTime() - iterationStart;
+            numIterations++;
+            maxDepth++; //increment depth with every search iteration
+            //System.out.println("Deepening search to depth " + maxDepth);
+            if(maxDepth > Math.min(depthLimit, MAX_DEPTH)){
+                break; //stop iterating on depth after 200 - mainly for ending the search quickly in late-game circumstances with few possible moves
+            }
+        }
+        
+        return PackedMove.toGameMove(bestMove, searchBoard.getGeometry());
+    }
+    
+    
+    //Searches every root move to the indicated depth within the alpha-beta window and returns the best score (a bound if it falls outside the window).
+    //The first move gets the full window and every other move is first searched with a null window (alpha, alpha + 1), which only proves whether it's
+    //better than the best move so far - only a move which turns out better is searched again with the full window. Any move which beats alpha is left
+    //in rootBestMove (NO_ROOT_MOVE if none did) - including a move whose null window search beat alpha when the timer then stops its full window search,
+    //since the moves are searched best first and it's already proven better than all of the moves searched before it.
+    private int searchRoot(GameBoard theBoard, BoardVals player, int[] possibleMoves, int numMoves, int depth, int alpha, int beta, MoveTimer timer){
+        int bestScore = -INFINITE_SCORE;
+        BoardVals opponent = getOpponent(player);
+        rootBestMove = NO_ROOT_MOVE;
+        
+        for(int i = 0; i < numMoves; i++){
+            int move = possibleMoves[i];
+            if(!isSearchStopped(timer, 0)){
+                theBoard.makePackedMove(move);
+                int moveScore;
+                if(i == 0){
+                    moveScore = -negamax(theBoard, opponent, (depth - 1), 1, -beta, -alpha, timer);
+                }else{
+                    moveScore = -negamax(theBoard, opponent, (depth - 1), 1, -alpha - 1, -alpha, timer);
+                    if((moveScore > alpha) && (moveScore < beta) && !stopped){
+                        moveScore = -negamax(theBoard, opponent, (depth - 1), 1, -beta, -alpha, timer);
+                        if(stopped){ //the null window search already proved this move beats every move before it, even if its exact score is unknown
+                            rootBestMove = move;
+                        }
+                    }
+                }
+                theBoard.unmakePackedMove(move);
+                
+                if(!stopped && (moveScore > bestScore)){ //a score from a search the timer cut short can't be trusted
+                    bestScore = moveScore;
+                    if(moveScore > alpha){
+                        rootBestMove = move;
+                        alpha = moveScore;
+                    }
+                }
+                
+                //pruning
+                if(bestScore >= beta){
+                    break;
+                }
+            }else{
+                break;
+            }
+        }
+        
+        return bestScore;
+    }
+    
+    
+    //Negamax search - returns the score of the position for "mover", the player whose turn it is. Each child's score is the negation of its score for
+    //the opponent, so one method handles both players. Leaves (max depth reached, or either player unable to move) are evaluated directly.
+    //Otherwise the transposition table is checked first - a stored result from a search at least this deep either answers the node outright (exact
+    //score, or a bound that already falls outside the alpha-beta window) or narrows the window. Results of completed searches are stored back.
+    //Moves are searched in MoveOrderer order, starting with the stored best move, and any move causing a cutoff is reported back to the MoveOrderer.
+    //Like the root, only the first move is searched with the full window - the rest get a null window and are only searched again if they beat alpha.
+    
+    //Accepts a game board representing the current state - children are searched by making each move on this same board and unmaking it afterwards,
+    //so the board is back in its original state by the time this method returns
+    private int negamax(GameBoard theBoard, BoardVals mover, int depth, int ply, int alpha, int beta, MoveTimer timer){
+        int currentScore = -INFINITE_SCORE;
+        BoardVals opponent = getOpponent(mover);
+        
+        if(isSearchStopped(timer, ply)){
+            currentScore = 0; //the search is being abandoned, so this score is never used
+        }else if(depth == 0){
+            currentScore = evaluateLeaf(theBoard, mover, opponent); //checks for a win or loss itself
+        }else if(theBoard.checkIfPlayerLose(mover)){
+            currentScore = -GameBoard.WIN_SCORE;
+        }else if(theBoard.checkIfPlayerLose(opponent)){
+            currentScore = GameBoard.WIN_SCORE; //the opponent can never move again, and the mover has a move left - so the mover wins
+        }else{
+            long key = theBoard.getZobristKey(mover);
+            int originalAlpha = alpha;
+            int originalBeta = beta;
+            long entry = transpositionTable.probe(key);
+            boolean tableCutoff = false;
+            if((entry != 0L) && (TranspositionTable.getDepth(entry) >= depth)){
+                int storedScore = TranspositionTable.getScore(entry);
+                int bound = TranspositionTable.getBound(entry);
+                if(bound == TranspositionTable.BOUND_EXACT){
+                    tableCutoff = true;
+                }else if(bound == TranspositionTable.BOUND_LOWER){
+                    alpha = Math.max(alpha, storedScore);
+                }else{
+                    beta = Math.min(beta, storedScore);
+                }
+                if(tableCutoff || (alpha >= beta)){
+                    tableCutoff = true;
+                    currentScore = storedScore;
+                }
+            }
+            
+            //with few enough squares left the result can be looked up instead of searched - like the partition check, not worth it next to the leaves
+            if(!tableCutoff && (tablebase != null) && (depth >= ENDGAME_CHECK_DEPTH)){
+                int tableResult = tablebase.probe(theBoard, mover);
+                if(tableResult != EndgameTablebase.NOT_FOUND){
+                    currentScore = EndgameTablebase.isMoverWin(tableResult) ? GameBoard.WIN_SCORE : -GameBoard.WIN_SCORE;
+                    transpositionTable.store(key, MAX_DEPTH, TranspositionTable.BOUND_EXACT, currentScore, TranspositionTable.NO_MOVE);
+                    tableCutoff = true;
+                }
+            }
+            
+            if(!tableCutoff && (depth >= ENDGAME_CHECK_DEPTH)){ //once the players are walled off the position can be solved exactly
+                int endgameResult = solvePartitionedEndgame(theBoard, mover, opponent);
+                if(endgameResult != EndgameSolver.UNKNOWN){
+                    currentScore = (endgameResult == MOVER_WINS) ? GameBoard.WIN_SCORE : -GameBoard.WIN_SCORE;
+                    transpositionTable.store(key, MAX_DEPTH, TranspositionTable.BOUND_EXACT, currentScore, TranspositionTable.NO_MOVE);
+                    tableCutoff = true;
+                }
+            }
+            
+            if(!tableCutoff){
+                int bestSquare = TranspositionTable.NO_MOVE;
+                int[] possibleMoves = moveBuffers[ply];
+                int numMoves = theBoard.generateMoves(mover, possibleMoves);
+                moveOrderer.orderMoves(possibleMoves, numMoves, (entry != 0L) ? TranspositionTable.getBestMove(entry) : TranspositionTable.NO_MOVE, ply);
+                for(int i = 0; i < numMoves; i++){
+                    int move = possibleMoves[i];
+                    if(!stopped){
+                        theBoard.makePackedMove(move);
+                        int moveScore;
+                        if(i == 0){
+                            moveScore = -negamax(theBoard, opponent, (depth - 1), (ply + 1), -beta, -alpha, timer);
+                        }else{
+                            moveScore = -negamax(theBoard, opponent, (depth - 1), (ply + 1), -alpha - 1, -alpha, timer);
+                            if((moveScore > alpha) && (moveScore < beta) && !stopped){
+                                moveScore = -negamax(theBoard, opponent, (depth - 1), (ply + 1), -beta, -alpha, timer);
+                            }
+                        }
+                        theBoard.unmakePackedMove(move);
+                        if((moveScore > currentScore) || (bestSquare == TranspositionTable.NO_MOVE)){
+                            bestSquare = PackedMove.getToSquare(move);
+                        }
+                        currentScore = Math.max(currentScore, moveScore);
+                        
+                        //pruning
+                        if(currentScore >= beta){
+                            moveOrderer.recordCutoff(move, ply, depth);
+                            betaCutoffs++;
+                            if(i == 0){
+                                firstMoveCutoffs++;
+                            }
+                            break;
+                        }
+                        alpha = Math.max(alpha, currentScore);
+                    }else{
+                        break; //stop searching when time is elapsed
+                    }
+                }
+                
+                if(!stopped){ //a search cut short by the timer is incomplete, so it must not be stored
+                    transpositionTable.store(key, depth, getBoundType(currentScore, originalAlpha, originalBeta), currentScore, bestSquare);
+                }
+            }
+        }
+        
+        //System.out.println("negamax is returning score of " + currentScore);
+        return currentScore;
+    }
+    
+    
+    //Scores a leaf for the player to move. Leaves are most of the nodes searched, so each player's moves are counted just once and the counts also serve
+    //as the win/loss check (a player with no moves has lost) - the separate loss checks made at interior nodes are skipped.
+    //Other leaves are scored by the evaluator. Its score needn't be symmetric (the mobility score counts the opponents moves double), so it's always
+    //worked out for the searching player and negated when it's the opponents turn - that way every leaf in the tree is judged the same way.
+    private int evaluateLeaf(GameBoard theBoard, BoardVals mover, BoardVals opponent){
+        int score;
+        int moverMoves = theBoard.countPossibleMoves(mover);
+        if(moverMoves == 0){
+            score = -GameBoard.WIN_SCORE;
+        }else{
+            int opponentMoves = theBoard.countPossibleMoves(opponent);
+            if(opponentMoves == 0){
+                score = GameBoard.WIN_SCORE;
+            }else if(mover == rootPlayer){
+                score = evaluator.evaluate(theBoard, mover, moverMoves, opponentMoves);
+            }else{
+                score = -evaluator.evaluate(theBoard, opponent, opponentMoves, moverMoves);
+            }
+        }
+        return score;
+    }
+    
+    
+    //Helper giving the other player
+    private static BoardVals getOpponent(BoardVals player){
+        BoardVals opponent;
+        if(player == BoardVals.PLAYER_O){
+            opponent = BoardVals.PLAYER_X;
+        }else{
+            opponent = BoardVals.PLAYER_O;
+        }
+        return opponent;
+    }
+    
+    
+    //Works out what kind of bound a completed search result is, given the alpha-beta window the node was originally searched with
+    private int getBoundType(int score, int alpha, int beta){
+        int bound;
+        if(score <= alpha){
+            bound = TranspositionTable.BOUND_UPPER;
+        }else if(score >= beta){
+            bound = TranspositionTable.BOUND_LOWER;
+        }else{
+            bound = TranspositionTable.BOUND_EXACT;
+        }
+        return bound;
+    }
+    
+    //Solves a position exactly if the players are walled off from each other, by comparing the longest walks each can make in their own region (the mover
+    //wins only with a strictly longer walk). Returns MOVER_WINS or MOVER_LOSES, or EndgameSolver.UNKNOWN if the board isn't partitioned or the regions
+    //are too big to solve within the node budget.
+    private int solvePartitionedEndgame(GameBoard theBoard, BoardVals mover, BoardVals other){
+        int result = EndgameSolver.UNKNOWN;
+        if(theBoard.isPartitioned()){
+            int moverWalk = nodeSolver.solveLongestWalk(theBoard, mover);
+            if(moverWalk != EndgameSolver.UNKNOWN){
+                int otherWalk = nodeSolver.solveLongestWalk(theBoard, other);
+                if(otherWalk != EndgameSolver.UNKNOWN){
+                    result = (moverWalk > otherWalk) ? MOVER_WINS : MOVER_LOSES;
+                }
+            }
+        }
+        return result;
+    }
+    
+    
+    //Picks the root move from the tablebase, if there is one and the position is in it - the fastest win if the position is won, and otherwise the move
+    //which holds out longest, giving the opponent the most chances to go wrong. Returns NO_ROOT_MOVE if the position isn't in the tablebase.
+    private int getTablebaseMove(GameBoard theBoard, BoardVals player, int[] possibleMoves, int numMoves){
+        int bestMove = NO_ROOT_MOVE;
+        if((tablebase != null) && (tablebase.probe(theBoard, player) != EndgameTablebase.NOT_FOUND)){
+            BoardVals opponent = getOpponent(player);
+            int bestScore = -INFINITE_SCORE;
+            for(int i = 0; i < numMoves; i++){
+                theBoard.makePackedMove(possibleMoves[i]);
+                int result = tablebase.probe(theBoard, opponent); //a move always shrinks the region, so the position it leads to is in the tablebase too
+                theBoard.unmakePackedMove(possibleMoves[i]);
+                //scored for us, with the distance to the end of the game breaking ties between wins (sooner is better) and losses (later is better)
+                int distance = EndgameTablebase.getDistance(result);
+                int score = EndgameTablebase.isMoverWin(result) ? (distance - GameBoard.WIN_SCORE) : (GameBoard.WIN_SCORE - distance);
+                if(score > bestScore){
+                    bestScore = score;
+                    bestMove = possibleMoves[i];
+                }
+            }
+        }
+        return bestMove;
+    }
+    
+    
+    //Checks whether the search has to stop, counting the node. The timer's stop flag (set by its hard stop, or by another thread) is checked every time
+    //since it's only a flag read, while the clock is read directly every 1024 nodes in case the hard stop thread is running late. The ply of the node
+    //where the search was stopped is remembered for the search statistics. Running into the node limit stops the search the same way the timer does.
+    private boolean isSearchStopped(MoveTimer timer, int ply){
+        if(!stopped){
+            nodes++;
+            if(timer.isStopRequested() || (nodes > nodeLimit) || (((nodes & TIME_CHECK_MASK) == 0) && timer.isTimeElapsed())){
+                stopped = true;
+                abortPly = ply;
+            }
+        }
+        return stopped;
+    }
+    
+    
+    //getter for the number of nodes visited by the last search
+    public long getNodes(){
+        return nodes;
+    }
+    
+    
+    //getter for the deepest iteration completed by the last search
+    public int getCompletedDepth(){
+        return completedDepth;
+    }
+    
+    
+    //getter for the score of the deepest iteration completed by the last search, for the player searching (0 if no iteration completed)
+    public int getCompletedScore(){
+        return completedScore;
+    }
+    
+    
+    //setter for the most nodes a search may visit (Long.MAX_VALUE for no limit)
+    public void setNodeLimit(long nodeLimit){
+        this.nodeLimit = nodeLimit;
+    }
+    
+    
+    //Forgets the move ordering learned from earlier searches, so the next search from this worker starts from scratch (the transposition table is
+    //cleared by its owner)
+    public void newGame(){
+        moveOrderer.clear();
+    }
+    
+    
+    //setter for the heuristic used to score leaves
+    public void setEvaluator(PositionEvaluator evaluator){
+        this.evaluator = evaluator;
+    }
+    
+    
+    //setter for the endgame tablebase looked up during the search (null for none)
+    public void setTablebase(EndgameTablebase tablebase){
+        this.tablebase = tablebase;
+    }
+    
+    
+    //getter for the number of beta cutoffs in the last search
+    public long getBetaCutoffs(){
+        return betaCutoffs;
+    }
+    
+    
+    //getter for the number of beta cutoffs in the last search caused by the first move tried
+    public long getFirstMoveCutoffs(){
+        return firstMoveCutoffs;
+    }
+    
+    
+    //getter for the time (in nanoseconds) each iteration of the last search took, in order - the last one is partial if the search was stopped
+    public long[] getIterationNanos(){
+        return Arrays.copyOf(iterationNanos, numIterations);
+    }
+    
+    
+    //getter for the ply the last search was stopped at by the timer, or -1 if it finished on its own
+    public int getAbortPly(){
+        return abortPly;
+    }
+    
+}
@@ -0,0 +1,115 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+//Evaluator which scores a position by territory - how many open squares each player can get to before their opponent can (a Voronoi partition of the
+//open squares by distance in king steps), on top of the mobility score. A player who is walled into a small area or cut off from the open part of the
+//board scores badly long before their move count shows it.
+//Territory is found with a flood fill from both players at once, a whole ring of squares at a time: each player's frontier is shifted one step in all
+//eight directions and masked with the open squares not already reached. Squares first reached by just one player are theirs, squares reached by both
+//in the same ring belong to neither. On boards of up to 64 squares every ring is a handful of shifts and masks on a single long; larger boards shift
+//multi-word bitsets (BoardGeometry.expandWords) instead.
+public class TerritoryEvaluator implements PositionEvaluator {
+    private static final int TERRITORY_WEIGHT = 2; //weight of each square of territory difference, relative to one move of mobility score
+    //scratch bitsets for the fill on larger boards - one set per search thread, since the evaluator is shared between them
+    private final ThreadLocal<long[][]> scratchWords = new ThreadLocal<>();
+    
+    
+    @Override
+    public int evaluate(GameBoard theBoard, BoardVals player, int playerMoves, int opponentMoves){
+        BoardVals opponent = (player == BoardVals.PLAYER_O) ? BoardVals.PLAYER_X : BoardVals.PLAYER_O;
+        int territory;
+        if(theBoard.getGeometry().isSingleWord()){
+            territory = getTerritoryDifference(theBoard, player, opponent);
+        }else{
+            territory = getTerritoryDifferenceWords(theBoard, player, opponent);
+        }
+        return (TERRITORY_WEIGHT * territory) + GameBoard.getMobilityScore(playerMoves, opponentMoves);
+    }
+    
+    
+    //Returns the number of squares the player reaches first minus the number of squares the opponent reaches first (boards of up to 64 squares)
+    public int getTerritoryDifference(GameBoard theBoard, BoardVals player, BoardVals opponent){
+        BoardGeometry geometry = theBoard.getGeometry();
+        long openSquares = ~theBoard.getUsedSquares() & geometry.getBoardMask();
+        long playerFrontier = geometry.getAdjacentMask(theBoard.getPlayerSquare(player)) & openSquares;
+        long opponentFrontier = geometry.getAdjacentMask(theBoard.getPlayerSquare(opponent)) & openSquares;
+        long reached = 0L;
+        int territory = 0;
+        
+        while((playerFrontier | opponentFrontier) != 0L){
+            territory += Long.bitCount(playerFrontier & ~opponentFrontier) - Long.bitCount(opponentFrontier & ~playerFrontier);
+            reached |= playerFrontier | opponentFrontier;
+            long unreached = openSquares & ~reached;
+            playerFrontier = geometry.expand(playerFrontier) & unreached;
+            opponentFrontier = geometry.expand(opponentFrontier) & unreached;
+        }
+        
+        return territory;
+    }
+    
+    
+    //Version of getTerritoryDifference for larger boards, with every set of squares held as a multi-word bitset
+    public int getTerritoryDifferenceWords(GameBoard theBoard, BoardVals player, BoardVals opponent){
+        BoardGeometry geometry = theBoard.getGeometry();
+        int numWords = geometry.getNumWords();
+        long[][] scratch = scratchWords.get();
+        if((scratch == null) || (scratch[0].length != numWords)){
+            scratch = new long[6][numWords];
+            scratchWords.set(scratch);
+        }
+        long[] openSquares = scratch[0];
+        long[] reached = scratch[1];
+        long[] playerFrontier = scratch[2];
+        long[] opponentFrontier = scratch[3];
+        long[] playerExpanded = scratch[4];
+        long[] opponentExpanded = scratch[5];
+        
+        theBoard.getOpenWords(openSquares);
+        for(int i = 0; i < numWords; i++){
+            reached[i] = 0L;
+            playerFrontier[i] = 0L;
+            opponentFrontier[i] = 0L;
+        }
+        for(int adjacent : geometry.getAdjacentSquares(theBoard.getPlayerSquare(player))){
+            playerFrontier[adjacent >>> 6] |= 1L << adjacent;
+        }
+        for(int adjacent : geometry.getAdjacentSquares(theBoard.getPlayerSquare(opponent))){
+            opponentFrontier[adjacent >>> 6] |= 1L << adjacent;
+        }
+        
+        int territory = 0;
+        boolean growing = true;
+        while(growing){
+            growing = false;
+            for(int i = 0; i < numWords; i++){
+                playerFrontier[i] &= openSquares[i] & ~reached[i];
+                opponentFrontier[i] &= openSquares[i] & ~reached[i];
+                territory += Long.bitCount(playerFrontier[i] & ~opponentFrontier[i]) - Long.bitCount(opponentFrontier[i] & ~playerFrontier[i]);
+                reached[i] |= playerFrontier[i] | opponentFrontier[i];
+                growing |= ((playerFrontier[i] | opponentFrontier[i]) != 0L);
+            }
+            if(growing){
+                geometry.expandWords(playerFrontier, playerExpanded);
+                geometry.expandWords(opponentFrontier, opponentExpanded);
+                long[] swap = playerFrontier; //the expanded sets become the next frontiers (masked at the top of the loop)
+                playerFrontier = playerExpanded;
+                playerExpanded = swap;
+                swap = opponentFrontier;
+                opponentFrontier = opponentExpanded;
+                opponentExpanded = swap;
+            }
+        }
+        
+        return territory;
+    }
+    
+    
+    @Override
+    public String toString(){
+        return "territory";
+    }
+    
+}
@@ -0,0 +1,106 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+//Class which decides whether an iterative deepening search should start another iteration. The MoveTimer only says when time has run out - an iteration
+//started just before then is cut off almost at once and mostly wasted, so the time manager keeps track of how long each completed iteration took and how
+//fast the tree is growing (the effective branching factor - the ratio of the nodes searched by one iteration to those of the one before it), and won't
+//start an iteration it predicts can't finish in the time left.
+//It also lets the search return early when more searching is unlikely to change the move:
+//1) the result is proven (a won or lost score doesn't change with depth)
+//2) the best move has stayed the same for several iterations in a row - the search is then only allowed half of the time limit
+//A timer with no time limit (pondering, fixed-depth searches) is only ever ended early by a proven result.
+//One time manager is used for a single search, by the one thread running it.
+public class TimeManager {
+    private static final double DEFAULT_BRANCHING_FACTOR = 4.0; //used until two iterations have been completed
+    private static final double MIN_BRANCHING_FACTOR = 1.5; //measured branching factors are kept inside these bounds - early iterations
+    private static final double MAX_BRANCHING_FACTOR = 16.0; //answered mostly from the transposition table can give wild ratios
+    private static final int STABLE_ITERATIONS = 6; //the best move counts as stable once this many completed iterations in a row agree on it
+    private static final long STABLE_TIME_DIVISOR = 2; //a stable search only gets this fraction (1 / divisor) of the time limit
+    private final MoveTimer timer;
+    private long lastIterationNanos; //time taken by the last completed iteration
+    private long lastIterationNodes; //nodes searched by the last two completed iterations
+    private long previousIterationNodes;
+    private double branchingFactor;
+    private int numIterations; //completed iterations
+    private int lastBestMove; //best move (packed) of the last completed iteration
+    private int stableIterations; //completed iterations in a row which ended with the same best move
+    private boolean resultProven;
+    
+    
+    //Constructor - the timer is the one the search runs on, and is read again before every iteration (so it can be restarted while the search runs)
+    public TimeManager(MoveTimer timer){
+        this.timer = timer;
+        branchingFactor = DEFAULT_BRANCHING_FACTOR;
+    }
+    
+    
+    //Records an iteration which searched every root move (or pruned them) - how long it took, how many nodes it searched, the best move it ended on
+    //and its score
+    public void iterationCompleted(long iterationNanos, long iterationNodes, int bestMove, int score){
+        if((numIterations > 0) && (bestMove == lastBestMove)){
+            stableIterations++;
+        }else{
+            stableIterations = 1;
+        }
+        lastBestMove = bestMove;
+        resultProven = (Math.abs(score) >= GameBoard.WIN_SCORE);
+        
+        //the tree doesn't grow evenly - whoever moves last at the leaves has used up a square, so odd and even depths alternate. Measuring over two
+        //iterations (the square root of the growth from two iterations back) smooths that out.
+        if((numIterations >= 2) && (previousIterationNodes > 0)){
+            branchingFactor = Math.sqrt((double)iterationNodes / previousIterationNodes);
+        }else if((numIterations == 1) && (lastIterationNodes > 0)){
+            branchingFactor = (double)iterationNodes / lastIterationNodes;
+        }
+        branchingFactor = Math.max(MIN_BRANCHING_FACTOR, Math.min(branchingFactor, MAX_BRANCHING_FACTOR));
+        
+        previousIterationNodes = lastIterationNodes;
+        lastIterationNodes = iterationNodes;
+        lastIterationNanos = iterationNanos;
+        numIterations++;
+    }
+    
+    
+    //Returns true if the next iteration is worth starting - the result isn't proven yet, and the next iteration is predicted to finish in the time left
+    //(half the time limit once the best move is stable)
+    public boolean shouldStartIteration(){
+        boolean startIteration = !resultProven;
+        if(startIteration && timer.hasTimeLimit()){
+            long timeLeft = timer.getRemainingNanos();
+            if(stableIterations >= STABLE_ITERATIONS){
+                timeLeft = Math.min(timeLeft, (timer.getLimitNanos() / STABLE_TIME_DIVISOR) - timer.getElapsedNanos());
+            }
+            startIteration = (getPredictedIterationNanos() <= timeLeft);
+        }
+        return startIteration;
+    }
+    
+    
+    //Returns the predicted time of the next iteration in nanoseconds - the last iteration's time grown by the branching factor (0 before any iteration
+    //has completed, so the first iteration is always started)
+    public long getPredictedIterationNanos(){
+        return (long)(lastIterationNanos * branchingFactor);
+    }
+    
+    
+    //getter for the current estimate of the effective branching factor
+    public double getBranchingFactor(){
+        return branchingFactor;
+    }
+    
+    
+    //getter for the number of completed iterations in a row which have ended with the same best move
+    public int getStableIterations(){
+        return stableIterations;
+    }
+    
+    
+    //getter for whether the last completed iteration found a won or lost score
+    public boolean isResultProven(){
+        return resultProven;
+    }
+    
+}
@@ -0,0 +1,385 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//Headless engine-vs-engine tournament. Plays a match between two engine settings ("A" and "B"), many games at once on a thread pool, and reports the
+//result as an Elo difference with a 95% error bar. A sequential probability ratio test (SPRT) can end the match as soon as the result is statistically
+//clear either way, which usually takes far fewer games than a fixed-length match.
+//Games are played in pairs: both games of a pair start with the same random opening moves, and engine A moves first in one and second in the other, so
+//neither engine gains from the first move or a lucky opening. Isolation can't be drawn, so every game is a win or a loss.
+//Every finished game can also be recorded in a GameJournal, to use as self-play data.
+//Usage: TournamentRunner [options]
+//  -games N               most games to play (default 1000)
+//  -size RxC              board size in rows x columns (default 8x8)
+//  -threads N             games played at once (default: number of processors)
+//  -a time:MS|nodes:N[,EVAL]   limit per move for engine A, and optionally its evaluator - mobility or territory (default time:100,mobility)
+//  -b time:MS|nodes:N[,EVAL]   limit per move and evaluator for engine B (default time:100,mobility)
+//  -hash MB               transposition table size of each engine (default 4)
+//  -opening N             random moves played from the start of each pair before the engines take over (default 2)
+//  -sprt ELO0,ELO1        stop once A is shown to be ELO0 (H0) or ELO1 (H1) stronger than B (default: play every game)
+//  -seed N                seed for the random openings
+//  -journal FILE          record every finished game in this game journal (games are added to any already in it)
+//  -tablebase FILE        endgame tablebase for engine A only, so the match measures what the tablebase is worth (see EndgameTablebaseGenerator)
+public class TournamentRunner {
+    private static final double SPRT_ERROR_RATE = 0.05; //chance of accepting the wrong hypothesis, used for both alpha and beta
+    private static final int PROGRESS_INTERVAL = 20; //games between progress reports
+    private final EngineSettings engineA;
+    private final EngineSettings engineB;
+    private final int openingPlies;
+    private final long seed;
+    private BoardGeometry geometry = BoardGeometry.STANDARD;
+    private final ThreadLocal<AIPlayer[]> engines; //each pool thread reuses its own pair of engines, cleared between games
+    private final AtomicBoolean stopRequested = new AtomicBoolean(false);
+    private GameJournal journal; //null if the games aren't recorded
+    private EndgameTablebase tablebase; //engine A's endgame tablebase, null if it has none
+    
+    
+    //settings for one side of the match - the per-move limit (either a time limit or a node limit) and the evaluator
+    public static class EngineSettings {
+        private final long timeLimitMillis;
+        private final long nodeLimit;
+        private final PositionEvaluator evaluator;
+        
+        //Constructor - a node limit greater than 0 is used instead of the time limit
+        public EngineSettings(long timeLimitMillis, long nodeLimit){
+            this(timeLimitMillis, nodeLimit, new MobilityEvaluator());
+        }
+        
+        //Constructor which also sets the evaluator the engine searches with
+        public EngineSettings(long timeLimitMillis, long nodeLimit, PositionEvaluator evaluator){
+            this.timeLimitMillis = timeLimitMillis;
+            this.nodeLimit = nodeLimit;
+            this.evaluator = evaluator;
+        }
+        
+        //Parses "time:MS" or "nodes:N", optionally followed by ",mobility" or ",territory"
+        public static EngineSettings parse(String setting){
+            String[] settingParts = setting.split(",");
+            String[] parts = settingParts[0].split(":");
+            if((parts.length != 2) || !parts[1].matches("\\d+") || (settingParts.length > 2)){
+                throw new IllegalArgumentException("Engine setting must be time:MS or nodes:N (and optionally ,EVALUATOR), not " + setting);
+            }
+            long value = Long.parseLong(parts[1]);
+            PositionEvaluator evaluator = new MobilityEvaluator();
+            if(settingParts.length == 2){
+                if(settingParts[1].equalsIgnoreCase("territory")){
+                    evaluator = new TerritoryEvaluator();
+                }else if(!settingParts[1].equalsIgnoreCase("mobility")){
+                    throw new IllegalArgumentException("Unknown evaluator " + settingParts[1] + " - must be mobility or territory");
+                }
+            }
+            EngineSettings settings;
+            if(parts[0].equalsIgnoreCase("nodes")){
+                settings = new EngineSettings(Long.MAX_VALUE, value, evaluator);
+            }else if(parts[0].equalsIgnoreCase("time")){
+                settings = new EngineSettings(value, 0, evaluator);
+            }else{
+                throw new IllegalArgumentException("Engine setting must be time:MS or nodes:N, not " + setting);
+            }
+            return settings;
+        }
+        
+        @Override
+        public String toString(){
+            return ((nodeLimit > 0) ? (nodeLimit + " nodes/move") : (timeLimitMillis + " ms/move")) + " " + evaluator;
+        }
+    }
+    
+    
+    //running score of the match, with the Elo and SPRT calculations
+    public static class MatchResult {
+        private int winsA;
+        private int winsB;
+        
+        //records one finished game
+        public synchronized void addGame(boolean engineAWon){
+            if(engineAWon){
+                winsA++;
+            }else{
+                winsB++;
+            }
+        }
+        
+        //getter for the number of games engine A won
+        public synchronized int getWinsA(){
+            return winsA;
+        }
+        
+        //getter for the number of games engine B won
+        public synchronized int getWinsB(){
+            return winsB;
+        }
+        
+        //Elo difference of A over B implied by the score so far (infinite if one side has won every game)
+        public synchronized double getElo(){
+            return scoreToElo((double)winsA / (winsA + winsB));
+        }
+        
+        //half the width of the 95% confidence interval of the Elo estimate
+        public synchronized double getEloErrorMargin(){
+            int games = winsA + winsB;
+            double score = (double)winsA / games;
+            double scoreError = 1.96 * Math.sqrt(score * (1.0 - score) / games);
+            return (scoreToElo(Math.min(score + scoreError, 1.0)) - scoreToElo(Math.max(score - scoreError, 0.0))) / 2.0;
+        }
+        
+        //SPRT log-likelihood ratio of H1 (A is elo1 stronger) against H0 (A is elo0 stronger) - every game is a win or a loss, so it's a Bernoulli test
+        public synchronized double getLogLikelihoodRatio(double elo0, double elo1){
+            double score0 = eloToScore(elo0);
+            double score1 = eloToScore(elo1);
+            return (winsA * Math.log(score1 / score0)) + (winsB * Math.log((1.0 - score1) / (1.0 - score0)));
+        }
+        
+        @Override
+        public synchronized String toString(){
+            return String.format("%d games: A %d - B %d, Elo %+.1f +/- %.1f", winsA + winsB, winsA, winsB, getElo(), getEloErrorMargin());
+        }
+    }
+    
+    
+    //Constructor - the opening plies are random moves played before the engines take over, the seed fixes which random openings are played
+    public TournamentRunner(EngineSettings engineA, EngineSettings engineB, final int tableSizeMB, int openingPlies, long seed){
+        this.engineA = engineA;
+        this.engineB = engineB;
+        this.openingPlies = openingPlies;
+        this.seed = seed;
+        engines = new ThreadLocal<AIPlayer[]>(){
+            @Override
+            protected AIPlayer[] initialValue(){
+                return new AIPlayer[]{new AIPlayer(tableSizeMB), new AIPlayer(tableSizeMB)};
+            }
+        };
+    }
+    
+    
+    public static void main(String[] args) throws IOException{
+        int numGames = 1000;
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        EngineSettings engineA = EngineSettings.parse("time:100");
+        EngineSettings engineB = EngineSettings.parse("time:100");
+        int tableSizeMB = 4;
+        int openingPlies = 2;
+        double[] sprtBounds = null;
+        long seed = System.nanoTime();
+        BoardGeometry geometry = BoardGeometry.STANDARD;
+        String journalName = null;
+        String tablebaseName = null;
+        for(int i = 0; i < args.length; i++){
+            String option = args[i];
+            String value = (i + 1 < args.length) ? args[i + 1] : "";
+            i++;
+            if(option.equals("-games")){
+                numGames = Integer.parseInt(value);
+            }else if(option.equals("-threads")){
+                numThreads = Integer.parseInt(value);
+            }else if(option.equals("-a")){
+                engineA = EngineSettings.parse(value);
+            }else if(option.equals("-b")){
+                engineB = EngineSettings.parse(value);
+            }else if(option.equals("-size")){
+                String[] dimensions = value.split("[xX]");
+                geometry = BoardGeometry.get(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[dimensions.length - 1]));
+            }else if(option.equals("-hash")){
+                tableSizeMB = Integer.parseInt(value);
+            }else if(option.equals("-opening")){
+                openingPlies = Integer.parseInt(value);
+            }else if(option.equals("-sprt")){
+                String[] bounds = value.split(",");
+                sprtBounds = new double[]{Double.parseDouble(bounds[0]), Double.parseDouble(bounds[1])};
+            }else if(option.equals("-seed")){
+                seed = Long.parseLong(value);
+            }else if(option.equals("-journal")){
+                journalName = value;
+            }else if(option.equals("-tablebase")){
+                tablebaseName = value;
+            }else{
+                System.out.println("Unknown option: " + option);
+                System.exit(2);
+            }
+        }
+        
+        System.out.println("Engine A: " + engineA + ", engine B: " + engineB + ", " + numGames + " games on " + numThreads + " threads, " + geometry + " board"
+                + ((sprtBounds != null) ? (", SPRT elo0=" + sprtBounds[0] + " elo1=" + sprtBounds[1]) : ""));
+        TournamentRunner runner = new TournamentRunner(engineA, engineB, tableSizeMB, openingPlies, seed);
+        runner.setBoardGeometry(geometry);
+        GameJournal journal = (journalName != null) ? new GameJournal(Paths.get(journalName)) : null;
+        runner.setJournal(journal);
+        if(tablebaseName != null){
+            runner.setTablebase(new EndgameTablebase(tablebaseName));
+        }
+        MatchResult result = runner.runMatch(numGames, numThreads, sprtBounds);
+        System.out.println("Final: " + result);
+        if(journal != null){
+            journal.close();
+            System.out.println(journal.getNumGames() + " games in the journal " + journalName);
+        }
+    }
+    
+    
+    //Plays the match and returns the final score. If SPRT bounds (elo0, elo1) are given the match stops early as soon as the test accepts either one.
+    public MatchResult runMatch(int numGames, int numThreads, double[] sprtBounds){
+        MatchResult result = new MatchResult();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(numThreads, 1));
+        CompletionService<Boolean> games = new ExecutorCompletionService<>(pool);
+        double lowerBound = Math.log(SPRT_ERROR_RATE / (1.0 - SPRT_ERROR_RATE));
+        double upperBound = Math.log((1.0 - SPRT_ERROR_RATE) / SPRT_ERROR_RATE);
+        
+        for(int i = 0; i < numGames; i++){
+            final int gameNumber = i;
+            games.submit(new Callable<Boolean>(){
+                @Override
+                public Boolean call(){
+                    return playGame(gameNumber);
+                }
+            });
+        }
+        
+        int finished = 0;
+        boolean decided = false;
+        while((finished < numGames) && !decided){
+            Boolean engineAWon = waitForGame(games);
+            finished++;
+            if(engineAWon != null){
+                result.addGame(engineAWon);
+                int played = result.getWinsA() + result.getWinsB();
+                if(sprtBounds != null){
+                    double llr = result.getLogLikelihoodRatio(sprtBounds[0], sprtBounds[1]);
+                    if((llr <= lowerBound) || (llr >= upperBound)){
+                        decided = true;
+                        System.out.println(String.format("SPRT: LLR %.2f crossed [%.2f, %.2f] - %s accepted", llr, lowerBound, upperBound,
+                                (llr >= upperBound) ? "H1" : "H0"));
+                    }
+                }
+                if((played % PROGRESS_INTERVAL) == 0){
+                    System.out.println(result + ((sprtBounds != null)
+                            ? String.format(", LLR %.2f [%.2f, %.2f]", result.getLogLikelihoodRatio(sprtBounds[0], sprtBounds[1]), lowerBound, upperBound) : ""));
+                }
+            }
+        }
+        
+        stopRequested.set(true); //games still running are abandoned once the match is over
+        pool.shutdownNow();
+        return result;
+    }
+    
+    
+    //Helper which waits for the next game to finish and returns whether engine A won it, or null if it was abandoned or failed
+    private Boolean waitForGame(CompletionService<Boolean> games){
+        Boolean engineAWon = null;
+        try{
+            Future<Boolean> game = games.take();
+            engineAWon = game.get();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }catch(ExecutionException e){
+            System.out.println("A game failed: " + e.getCause());
+        }
+        return engineAWon;
+    }
+    
+    
+    //Plays one game and returns true if engine A won. Engine A is always player X - what alternates is who moves first. Games 2k and 2k+1 share their
+    //random opening moves. Returns null if the match was stopped before the game finished.
+    public Boolean playGame(int gameNumber){
+        BoardVals startingPlayer = ((gameNumber % 2) == 0) ? BoardVals.PLAYER_X : BoardVals.PLAYER_O;
+        GameBoard board = new GameBoard(startingPlayer, geometry);
+        BoardVals playerToMove = startingPlayer;
+        Random openingRandom = new Random(seed + (gameNumber / 2));
+        AIPlayer[] players = engines.get();
+        for(AIPlayer player : players){
+            player.newGame();
+        }
+        players[0].setTablebase(tablebase);
+        int[] moveSquares = new int[geometry.getNumSquares()]; //destination of every move, for the journal
+        int numMoves = 0;
+        
+        for(int ply = 0; (ply < openingPlies) && !board.checkIfPlayerLose(playerToMove); ply++){
+            List<GameMove> moves = board.getPossibleMoves(playerToMove);
+            board.makeMove(moves.get(openingRandom.nextInt(moves.size())));
+            moveSquares[numMoves++] = board.getPlayerSquare(playerToMove);
+            playerToMove = opponentOf(playerToMove);
+        }
+        
+        while(!stopRequested.get() && !board.checkIfPlayerLose(playerToMove)){
+            boolean engineAToMove = (playerToMove == BoardVals.PLAYER_X);
+            EngineSettings settings = engineAToMove ? engineA : engineB;
+            AIPlayer engine = engineAToMove ? players[0] : players[1];
+            engine.setNodeLimit(settings.nodeLimit);
+            engine.setEvaluator(settings.evaluator);
+            board.makeMove(engine.getAIMove(board, playerToMove, settings.timeLimitMillis));
+            moveSquares[numMoves++] = board.getPlayerSquare(playerToMove);
+            playerToMove = opponentOf(playerToMove);
+        }
+        
+        Boolean engineAWon = null;
+        if(!stopRequested.get()){
+            engineAWon = (playerToMove == BoardVals.PLAYER_O); //whoever is to move with no moves left has lost
+            recordGame(startingPlayer, opponentOf(playerToMove), moveSquares, numMoves);
+        }
+        return engineAWon;
+    }
+    
+    
+    //Helper which records a finished game in the journal, if there is one and the board isn't too big for it
+    private void recordGame(BoardVals startingPlayer, BoardVals winner, int[] moveSquares, int numMoves){
+        if((journal != null) && GameJournal.canRecord(geometry)){
+            try{
+                journal.recordGame(geometry, startingPlayer, winner, moveSquares, numMoves);
+            }catch(IOException e){
+                System.out.println("A game couldn't be recorded in the journal: " + e);
+            }
+        }
+    }
+    
+    
+    //setter for the journal every finished game is recorded in (null to not record them)
+    public void setJournal(GameJournal journal){
+        this.journal = journal;
+    }
+    
+    
+    //setter for engine A's endgame tablebase (null for none)
+    public void setTablebase(EndgameTablebase tablebase){
+        this.tablebase = tablebase;
+    }
+    
+    
+    //setter for the size of board the games are played on (standard 8x8 unless set)
+    public void setBoardGeometry(BoardGeometry geometry){
+        this.geometry = geometry;
+    }
+    
+    
+    //Helper giving the other player
+    private static BoardVals opponentOf(BoardVals player){
+        return (player == BoardVals.PLAYER_X) ? BoardVals.PLAYER_O : BoardVals.PLAYER_X;
+    }
+    
+    
+    //Helper converting an expected score (0 to 1) into an Elo difference
+    private static double scoreToElo(double score){
+        return -400.0 * Math.log10((1.0 / score) - 1.0);
+    }
+    
+    
+    //Helper converting an Elo difference into an expected score
+    private static double eloToScore(double elo){
+        return 1.0 / (1.0 + Math.pow(10.0, -elo / 400.0));
+    }
+    
+}
@@ -0,0 +1,125 @@
+//Christopher Kilian
+//CS 420 - Spring 2018
+//Programming Project #3 - Isolation Game
+
+package isolationgame;
+
+//Fixed-size transposition table for the minimax search. Each slot holds the Zobrist key of a position and one packed long with the search result for it:
+//the score, the depth it was searched to, what kind of bound the score is (exact, lower or upper) and the best move found. Slots are picked by the low bits
+//of the key, and a slot is only overwritten by a search at least as deep as the one already stored there (depth-preferred), unless the stored entry is
+//left over from an earlier search.
+//The table is shared by every search thread without any locking. Instead of the key itself, each slot stores the key XORed with its data, so an entry
+//is only accepted if the key and data read back belong together - if two threads write the same slot at once the mismatched pair simply reads as a miss.
+public class TranspositionTable {
+    public static final int BOUND_EXACT = 0; //score is the true minimax value
+    public static final int BOUND_LOWER = 1; //search failed high - true value is at least the score
+    public static final int BOUND_UPPER = 2; //search failed low - true value is at most the score
+    public static final int NO_MOVE = 1023; //stored as the best move when there isn't one (leaves and fail-low nodes)
+    private static final int ENTRY_BYTES = 16; //one key long plus one data long per slot
+    
+    //layout of the packed data long - score in the low 32 bits, then depth, bound, best move square and search generation
+    private static final int DEPTH_SHIFT = 32;
+    private static final int BOUND_SHIFT = 40;
+    private static final int MOVE_SHIFT = 42;
+    private static final int GENERATION_SHIFT = 52;
+    private static final long VALID_BIT = 1L << 63; //set on every stored entry so an empty slot (0) can never look like a hit
+    
+    private final long[] keys; //key XOR data for each slot
+    private final long[] data;
+    private final int indexMask;
+    private int generation;
+    
+    
+    //Constructor - size is given in megabytes and rounded down to a power of two number of slots (with a minimum of one slot)
+    public TranspositionTable(int sizeMB){
+        long slots = Math.max(1L, ((long)Math.max(sizeMB, 0) * 1024L * 1024L) / ENTRY_BYTES);
+        int numSlots = Integer.highestOneBit((int)Math.min(slots, 1L << 30));
+        keys = new long[numSlots];
+        data = new long[numSlots];
+        indexMask = numSlots - 1;
+    }
+    
+    
+    //Must be called at the start of each new search - entries from earlier searches are then always allowed to be replaced
+    public void newSearch(){
+        generation = (generation + 1) & 0xFF;
+    }
+    
+    
+    //Empties the whole table
+    public void clear(){
+        for(int i = 0; i < keys.length; i++){
+            keys[i] = 0L;
+            data[i] = 0L;
+        }
+        generation = 0;
+    }
+    
+    
+    //Looks up a position - returns the packed entry if the position is stored, or 0 if it isn't. Use the static getters below to read the entry.
+    public long probe(long key){
+        int index = (int)key & indexMask;
+        long entry = data[index];
+        if((entry == 0L) || ((keys[index] ^ entry) != key)){
+            entry = 0L;
+        }
+        return entry;
+    }
+    
+    
+    //Stores a search result for a position, following the depth-preferred replacement policy. If the same position is already stored and no best move
+    //is given, the old best move is kept since it's still the best guess for move ordering.
+    public void store(long key, int depth, int bound, int score, int bestMove){
+        int index = (int)key & indexMask;
+        long oldEntry = data[index];
+        boolean sameKey = ((keys[index] ^ oldEntry) == key);
+        
+        if((oldEntry == 0L) || sameKey || (getGeneration(oldEntry) != generation) || (depth >= getDepth(oldEntry))){
+            if((bestMove == NO_MOVE) && sameKey && (oldEntry != 0L)){
+                bestMove = getBestMove(oldEntry);
+            }
+            long newEntry = (score & 0xFFFFFFFFL)
+                    | ((long)(depth & 0xFF) << DEPTH_SHIFT)
+                    | ((long)(bound & 0x3) << BOUND_SHIFT)
+                    | ((long)(bestMove & 0x3FF) << MOVE_SHIFT)
+                    | ((long)generation << GENERATION_SHIFT)
+                    | VALID_BIT;
+            keys[index] = key ^ newEntry;
+            data[index] = newEntry;
+        }
+    }
+    
+    
+    //Getters for the fields of a packed entry returned by probe
+    //score stored for the position
+    public static int getScore(long entry){
+        return (int)entry;
+    }
+    
+    //depth the position was searched to
+    public static int getDepth(long entry){
+        return (int)((entry >>> DEPTH_SHIFT) & 0xFF);
+    }
+    
+    //bound type of the stored score (BOUND_EXACT, BOUND_LOWER or BOUND_UPPER)
+    public static int getBound(long entry){
+        return (int)((entry >>> BOUND_SHIFT) & 0x3);
+    }
+    
+    //square of the best move found, or NO_MOVE
+    public static int getBestMove(long entry){
+        return (int)((entry >>> MOVE_SHIFT) & 0x3FF);
+    }
+    
+    //search generation the entry was stored in
+    private static int getGeneration(long entry){
+        return (int)((entry >>> GENERATION_SHIFT) & 0xFF);
+    }
+    
+    
+    //getter for the number of slots in the table
+    public int getNumSlots(){
+        return keys.length;
+    }
+    
+}